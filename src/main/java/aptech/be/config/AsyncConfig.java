@@ -0,0 +1,71 @@
+package aptech.be.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Thread pool cho các tác vụ nền (tách khỏi thread xử lý request)
+ */
+@Configuration
+public class AsyncConfig {
+
+    // Worker xử lý inbox webhook thanh toán; hàng đợi có giới hạn, đầy thì sự kiện nằm lại trong inbox
+    @Bean(name = "paymentWebhookExecutor")
+    public ThreadPoolTaskExecutor paymentWebhookExecutor(
+            @Value("${app.payment-webhook.workers:4}") int workers,
+            @Value("${app.payment-webhook.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("payment-webhook-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    // Gửi email outbox qua SMTP; SMTP chậm chỉ chiếm worker này, không chặn luồng @Scheduled
+    @Bean(name = "emailOutboxExecutor")
+    public ThreadPoolTaskExecutor emailOutboxExecutor(
+            @Value("${app.email-outbox.workers:2}") int workers,
+            @Value("${app.email-outbox.queue-capacity:50}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("email-outbox-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    // Sinh câu trả lời chatbot (build prompt + gửi request LLM); giới hạn hàng đợi do ChatReplyPipeline kiểm soát
+    @Bean(name = "chatReplyExecutor")
+    public ThreadPoolTaskExecutor chatReplyExecutor(
+            @Value("${app.chat.reply-workers:8}") int workers,
+            @Value("${app.chat.max-pending:200}") int maxPending) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(maxPending);
+        executor.setThreadNamePrefix("chat-reply-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Job phát voucher hàng loạt: 1 luồng, các job chạy lần lượt
+    @Bean(name = "voucherDistributionExecutor")
+    public ThreadPoolTaskExecutor voucherDistributionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("voucher-distribution-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,124 @@
+package aptech.be.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Cầu nối simple broker của các node qua Redis pub/sub (app.websocket.broker=redis):
+ * - interceptor trên brokerChannel: mọi MESSAGE app gửi tới /topic, /queue (SimpMessagingTemplate, @SendTo...)
+ *   được publish lên Redis, đồng thời vẫn giao cho subscriber trên node hiện tại
+ * - listener Redis: nhận message của node khác và đưa vào brokerChannel cục bộ (đánh dấu RELAYED_HEADER để không publish lại)
+ * Mỗi node chỉ giữ subscription của client kết nối tới nó; Redis chỉ chuyển tiếp message.
+ */
+public class RedisBrokerBridge implements ChannelInterceptor, MessageListener {
+
+    static final String RELAYED_HEADER = "x-broker-relayed";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final String channel;
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile MessageChannel localBrokerChannel;
+
+    public RedisBrokerBridge(StringRedisTemplate redisTemplate, ObjectMapper objectMapper, String channel) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.channel = channel;
+    }
+
+    public void setLocalBrokerChannel(MessageChannel localBrokerChannel) {
+        this.localBrokerChannel = localBrokerChannel;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    @Override
+    public org.springframework.messaging.Message<?> preSend(org.springframework.messaging.Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String destination = accessor.getDestination();
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE || destination == null
+                || message.getHeaders().containsKey(RELAYED_HEADER)
+                || !(destination.startsWith("/topic") || destination.startsWith("/queue"))) {
+            return message;
+        }
+        try {
+            Map<String, Object> envelope = new HashMap<>();
+            envelope.put("origin", nodeId);
+            envelope.put("destination", destination);
+            MimeType contentType = accessor.getContentType();
+            if (contentType != null) {
+                envelope.put("contentType", contentType.toString());
+            }
+            // Giữ native header (seq, seq-epoch...) cho client ở node khác
+            Map<String, List<String>> nativeHeaders = accessor.toNativeHeaderMap();
+            if (!nativeHeaders.isEmpty()) {
+                envelope.put("nativeHeaders", nativeHeaders);
+            }
+            envelope.put("payload", Base64.getEncoder().encodeToString(payloadBytes(message.getPayload())));
+            redisTemplate.convertAndSend(this.channel, objectMapper.writeValueAsString(envelope));
+        } catch (Exception e) {
+            // Subscriber trên node này vẫn nhận được; chỉ node khác bị lỡ message
+            System.err.println("[WS-REDIS] Failed to publish " + destination + ": " + e.getMessage());
+        }
+        return message;
+    }
+
+    @Override
+    public void onMessage(Message redisMessage, byte[] pattern) {
+        MessageChannel target = localBrokerChannel;
+        if (target == null) {
+            return;
+        }
+        try {
+            Map<?, ?> envelope = objectMapper.readValue(redisMessage.getBody(), Map.class);
+            if (nodeId.equals(envelope.get("origin"))) {
+                return;
+            }
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setDestination((String) envelope.get("destination"));
+            if (envelope.get("contentType") != null) {
+                accessor.setContentType(MimeType.valueOf((String) envelope.get("contentType")));
+            }
+            if (envelope.get("nativeHeaders") instanceof Map<?, ?> nativeHeaders) {
+                nativeHeaders.forEach((name, values) -> {
+                    for (Object value : (List<?>) values) {
+                        accessor.addNativeHeader((String) name, String.valueOf(value));
+                    }
+                });
+            }
+            accessor.setHeader(RELAYED_HEADER, Boolean.TRUE);
+            accessor.setLeaveMutable(true);
+            byte[] payload = Base64.getDecoder().decode((String) envelope.get("payload"));
+            target.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+        } catch (Exception e) {
+            System.err.println("[WS-REDIS] Failed to deliver relayed message: " + e.getMessage());
+        }
+    }
+
+    private byte[] payloadBytes(Object payload) throws Exception {
+        if (payload instanceof byte[]) {
+            return (byte[]) payload;
+        }
+        if (payload instanceof String) {
+            return ((String) payload).getBytes(StandardCharsets.UTF_8);
+        }
+        return objectMapper.writeValueAsBytes(payload);
+    }
+}
@@ -243,10 +243,12 @@ public class SecurityConfig {
                         .requestMatchers("/api/orders/{id}/admin-confirm").hasAuthority("ROLE_ADMIN")
                         .requestMatchers("/api/attendance/face-scan").permitAll()
                         .requestMatchers("/api/dinein/orders/all").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
+                        .requestMatchers("/api/dinein/orders/page").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
                         .requestMatchers("/api/dinein/orders/*/status").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
                         .requestMatchers("/api/dinein/table/*/all-orders").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
                         .requestMatchers("/api/dinein/table/*/summary").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
                         .requestMatchers("/api/dinein/sessions/all").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
+                        .requestMatchers("/api/dinein/events/replay").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
                         .requestMatchers("/api/dinein/staff-calls/**").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
                         .requestMatchers("/api/dinein/payment-requests/**").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
                         .requestMatchers("/api/dinein/tables/*/bill").hasAnyAuthority("ROLE_ADMIN", "ROLE_STAFF")
@@ -1,21 +1,62 @@
 package aptech.be.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+/**
+ * app.websocket.broker chọn broker cho /topic, /queue:
+ * - simple (mặc định): broker trong bộ nhớ, chỉ chạy được 1 node
+ * - redis: simple broker trên mỗi node + RedisBrokerBridge chuyển tiếp message giữa các node (xem WebSocketRedisBridgeConfig)
+ * - relay: chuyển toàn bộ subscription/message sang STOMP broker ngoài (RabbitMQ/ActiveMQ)
+ */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Value("${app.websocket.broker:simple}")
+    private String brokerMode;
+
+    @Value("${app.websocket.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${app.websocket.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${app.websocket.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${app.websocket.relay.passcode:guest}")
+    private String relayPasscode;
+
+    @Autowired(required = false)
+    private RedisBrokerBridge redisBrokerBridge;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // Enable a simple memory-based message broker to carry the messages back to the client
-        config.enableSimpleBroker("/topic", "/queue");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            // External STOMP broker: mọi node dùng chung subscription trên broker
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode);
+        } else {
+            // Enable a simple memory-based message broker to carry the messages back to the client
+            config.enableSimpleBroker("/topic", "/queue");
+            if (redisBrokerBridge != null) {
+                config.configureBrokerChannel().interceptors(redisBrokerBridge);
+            }
+        }
         // Prefix for messages that are bound for @MessageMapping methods
         config.setApplicationDestinationPrefixes("/app");
+        System.out.println("[WEBSOCKET] Broker mode: " + brokerMode);
     }
 
     @Override
@@ -28,4 +69,4 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws-native")
                 .setAllowedOriginPatterns("*");
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package aptech.be.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.MessageChannel;
+
+/**
+ * Bean cho app.websocket.broker=redis: bridge + listener container nhận message từ các node khác
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.websocket.broker", havingValue = "redis")
+public class WebSocketRedisBridgeConfig {
+
+    @Bean
+    public RedisBrokerBridge redisBrokerBridge(StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+                                               @Value("${app.websocket.redis-channel:ws:broadcast}") String channel) {
+        return new RedisBrokerBridge(redisTemplate, objectMapper, channel);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer webSocketRedisListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                         RedisBrokerBridge bridge,
+                                                                         @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel) {
+        bridge.setLocalBrokerChannel(brokerChannel);
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(bridge, new ChannelTopic(bridge.getChannel()));
+        return container;
+    }
+}
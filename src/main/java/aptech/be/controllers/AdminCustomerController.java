@@ -80,7 +80,7 @@ public class AdminCustomerController {
             response.put("customer", convertToDetailDTO(customer));
             
             // Lịch sử đơn hàng
-            List<OrderEntity> orders = orderRepository.findByCustomerId(customerId);
+            List<OrderEntity> orders = orderRepository.findWithDetailsByCustomerId(customerId);
             response.put("orders", orders.stream()
                     .map(this::convertOrderToDTO)
                     .collect(Collectors.toList()));
@@ -186,7 +186,7 @@ public class AdminCustomerController {
         
         if (customer.getCustomerDetail() != null) {
             dto.setPhoneNumber(customer.getCustomerDetail().getPhoneNumber());
-            dto.setPoint(customer.getCustomerDetail().getPoint());
+            dto.setPoint(String.valueOf(customer.getCustomerDetail().getPoint()));
         }
         
         return dto;
@@ -202,7 +202,7 @@ public class AdminCustomerController {
         
         if (customer.getCustomerDetail() != null) {
             dto.setPhoneNumber(customer.getCustomerDetail().getPhoneNumber());
-            dto.setPoint(customer.getCustomerDetail().getPoint());
+            dto.setPoint(String.valueOf(customer.getCustomerDetail().getPoint()));
             dto.setVoucher(customer.getCustomerDetail().getVoucher());
         }
         
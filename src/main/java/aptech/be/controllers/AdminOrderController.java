@@ -25,7 +25,7 @@ public class AdminOrderController {
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<List<OrderEntity>> getDineInOrders() {
         try {
-            List<OrderEntity> orders = orderRepository.findByOrderTypeOrderByCreatedAtDesc("DINE_IN");
+            List<OrderEntity> orders = orderRepository.findWithDetailsByOrderTypeOrderByCreatedAtDesc("DINE_IN");
             return ResponseEntity.ok(orders);
         } catch (Exception e) {
             System.err.println("[ADMIN ERROR] Failed to fetch dine-in orders: " + e.getMessage());
@@ -40,7 +40,7 @@ public class AdminOrderController {
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<List<OrderEntity>> getTakeAwayOrders() {
         try {
-            List<OrderEntity> orders = orderRepository.findByOrderTypeOrderByCreatedAtDesc("TAKE_AWAY");
+            List<OrderEntity> orders = orderRepository.findWithDetailsByOrderTypeOrderByCreatedAtDesc("TAKE_AWAY");
             return ResponseEntity.ok(orders);
         } catch (Exception e) {
             System.err.println("[ADMIN ERROR] Failed to fetch take-away orders: " + e.getMessage());
@@ -73,7 +73,7 @@ public class AdminOrderController {
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<List<OrderEntity>> getOrdersByStatus(@PathVariable String status) {
         try {
-            List<OrderEntity> orders = orderRepository.findByStatusOrderByCreatedAtDesc(status);
+            List<OrderEntity> orders = orderRepository.findWithDetailsByStatusOrderByCreatedAtDesc(status);
             return ResponseEntity.ok(orders);
         } catch (Exception e) {
             System.err.println("[ADMIN ERROR] Failed to fetch orders by status: " + e.getMessage());
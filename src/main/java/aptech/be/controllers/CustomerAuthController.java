@@ -200,7 +200,7 @@ public class CustomerAuthController {
         dto.setEmail(customer.getEmail());
         dto.setFullName(customer.getFullName());
         dto.setPhoneNumber(detail.getPhoneNumber());
-        dto.setPoint(detail.getPoint());
+        dto.setPoint(String.valueOf(detail.getPoint()));
         dto.setVoucher(detail.getVoucher());
         // Không nhúng entity Customer vào DTO để tránh vòng lặp serialize
         
@@ -279,7 +279,7 @@ public class CustomerAuthController {
         // if (imageFile == null) {
         //     detail.setImageUrl(detailDto.getImageUrl()); // Đã loại bỏ imageUrl
         // }
-        detail.setPoint(detailDto.getPoint());
+        // Điểm không sửa qua hồ sơ, chỉ thay đổi qua CustomerPointService
         detail.setVoucher(detailDto.getVoucher());
         customer.setFullName(detailDto.getFullName());
 
@@ -294,7 +294,7 @@ public class CustomerAuthController {
         responseDto.setEmail(customer.getEmail());
         responseDto.setFullName(customer.getFullName());
         responseDto.setPhoneNumber(detail.getPhoneNumber());
-        responseDto.setPoint(detail.getPoint());
+        responseDto.setPoint(String.valueOf(detail.getPoint()));
         responseDto.setVoucher(detail.getVoucher());
         // Không nhúng entity Customer vào DTO để tránh vòng lặp serialize
         java.util.List<aptech.be.models.CustomerAddress> addrList2 = detail.getAddresses();
@@ -12,10 +12,12 @@ import aptech.be.repositories.TableRepository;
 import aptech.be.services.ClaimTokenService;
 import aptech.be.services.TableSessionService;
 import aptech.be.services.OrderService;
+import aptech.be.services.WebSocketEventLog;
 import aptech.be.services.WebSocketNotificationService;
 import aptech.be.models.UserEntity;
 import aptech.be.repositories.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -58,6 +60,23 @@ public class DineInController {
     
     @Autowired
     private UserRepository userRepository;
+    
+    @Autowired
+    private WebSocketEventLog webSocketEventLog;
+
+    /**
+     * Bù sự kiện WebSocket bị lỡ khi reconnect: since = header "seq" cuối cùng đã nhận, epoch = header "seq-epoch".
+     * complete=false → gap nằm ngoài buffer (hoặc server đã khởi động lại), client cần reload toàn bộ.
+     */
+    @GetMapping("/events/replay")
+    public ResponseEntity<?> replayEvents(@RequestParam String topic,
+                                          @RequestParam(defaultValue = "0") long since,
+                                          @RequestParam(required = false) String epoch) {
+        if (!WebSocketEventLog.isReplayable(topic)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Topic is not replayable: " + topic));
+        }
+        return ResponseEntity.ok(webSocketEventLog.replay(topic, since, epoch));
+    }
 
     @GetMapping("/sessions/all")
     public ResponseEntity<?> getAllSessions() {
@@ -246,7 +265,7 @@ public class DineInController {
     @GetMapping("/orders/all")
     public ResponseEntity<?> getAllOrders() {
         try {
-            List<OrderEntity> orders = orderRepository.findAll();
+            List<OrderEntity> orders = orderRepository.findAllWithDetails();
             return ResponseEntity.ok(orders);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -254,6 +273,24 @@ public class DineInController {
         }
     }
 
+    @GetMapping("/orders/page")
+    public ResponseEntity<?> getOrderPage(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(orderService.getOrderPage(status, OrderService.ORDER_TYPE_DINE_IN,
+                    null, from, to, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error fetching orders: " + e.getMessage());
+        }
+    }
+
     @PutMapping("/orders/{orderId}/status")
     public ResponseEntity<?> updateOrderStatus(
             @PathVariable Long orderId,
@@ -3,19 +3,25 @@ package aptech.be.controllers;
 import aptech.be.dto.*;
 import aptech.be.models.*;
 import aptech.be.repositories.*;
+import aptech.be.services.CustomerPointService;
+import aptech.be.services.EmailOutboxService;
+import aptech.be.services.OrderPricingService;
+import aptech.be.services.PaymentWebhookService;
+import aptech.be.services.OrderService;
 import aptech.be.services.PayOSService;
 import aptech.be.services.AddressValidationService;
-import aptech.be.services.EmailService;
 import aptech.be.services.VoucherService;
-import aptech.be.services.InvoiceEmailService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
@@ -28,8 +34,9 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "http://localhost:3000")
 public class OrderController {
 
-    @Autowired
-    private FoodRepository foodRepository;
+    // Số order id tối đa trong 1 câu IN (...) khi nạp lịch sử trạng thái
+    private static final int HISTORY_BATCH_SIZE = 1000;
+
     @Autowired
     private OrderRepository orderRepository;
     @Autowired
@@ -43,54 +50,33 @@ public class OrderController {
     private AddressValidationService addressValidationService;
     
     @Autowired
-    private CustomerDetailRepository customerDetailRepository;
+    private CustomerPointService customerPointService;
     
     @Autowired
-    private EmailService emailService;
+    private VoucherService voucherService;
     
     @Autowired
-    private VoucherService voucherService;
+    private UserRepository userRepository;
     
     @Autowired
-    private InvoiceEmailService invoiceEmailService;
+    private OrderService orderService;
     
     @Autowired
-    private UserRepository userRepository;
+    private OrderPricingService orderPricingService;
+
+    @Autowired
+    private PaymentWebhookService paymentWebhookService;
 
-    // Helper method to add points to customer
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Helper method to add points to customer (idempotent theo orderId)
     private int addPointsToCustomer(OrderEntity order) {
         try {
-            Customer customer = order.getCustomer();
-            if (customer != null && customer.getCustomerDetail() != null) {
-                CustomerDetail customerDetail = customer.getCustomerDetail();
-                
-                // Calculate points: 10$ = 10 points (round down)
-                double totalPrice = order.getTotalPrice();
-                int pointsToAdd = (int) Math.floor(totalPrice / 10.0) * 10;
-                
-                // Get current points
-                String currentPointsStr = customerDetail.getPoint();
-                int currentPoints = 0;
-                if (currentPointsStr != null && !currentPointsStr.isEmpty()) {
-                    try {
-                        currentPoints = Integer.parseInt(currentPointsStr);
-                    } catch (NumberFormatException e) {
-                        currentPoints = 0;
-                    }
-                }
-                
-                // Add new points
-                int newPoints = currentPoints + pointsToAdd;
-                customerDetail.setPoint(String.valueOf(newPoints));
-                
-                // Save customer detail
-                customerDetailRepository.save(customerDetail);
-                
-                System.out.println("[POINTS] Added " + pointsToAdd + " points to customer " + customer.getId() + 
-                                 ". Total points: " + newPoints + " (Order total: $" + totalPrice + ")");
-                
-                return pointsToAdd;
-            }
+            return customerPointService.awardOrderPoints(order);
         } catch (Exception e) {
             System.err.println("[POINTS ERROR] Failed to add points: " + e.getMessage());
             e.printStackTrace();
@@ -98,33 +84,66 @@ public class OrderController {
         return 0;
     }
 
+    // Helper method to resolve an order from the PayOS orderCode (point lookup on unique index)
+    private Optional<OrderEntity> findOrderByPaymentOrderCode(String orderCode) {
+        if (orderCode == null || orderCode.isBlank()) {
+            return Optional.empty();
+        }
+        return orderRepository.findByPaymentOrderCode(Long.valueOf(orderCode.trim()));
+    }
+
     // Helper method to send payment success email
     private void sendPaymentSuccessEmail(OrderEntity order, int pointsEarned) {
+        // Gửi qua outbox (kèm hóa đơn điện tử nếu khách yêu cầu), không chặn request bởi SMTP
         try {
-            Customer customer = order.getCustomer();
-            if (customer != null && customer.getEmail() != null && !customer.getEmail().isEmpty()) {
-                emailService.sendPaymentSuccessEmail(customer.getEmail(), order, pointsEarned);
-                System.out.println("[EMAIL] Payment success email queued for: " + customer.getEmail());
-                
-                // Gửi hóa đơn điện tử nếu khách hàng yêu cầu
-                if (order.getNeedInvoice() != null && order.getNeedInvoice()) {
-                    invoiceEmailService.sendInvoiceEmail(order);
-                    System.out.println("[INVOICE] Electronic invoice processing initiated for: " + customer.getEmail());
-                }
-            } else {
-                System.out.println("[EMAIL] No email address found for customer: " + (customer != null ? customer.getId() : "null"));
-            }
+            emailOutboxService.enqueuePaymentSuccess(order, pointsEarned);
         } catch (Exception e) {
-            System.err.println("[EMAIL ERROR] Failed to send payment success email: " + e.getMessage());
+            System.err.println("[EMAIL ERROR] Failed to queue payment success email: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
     @GetMapping
     public List<OrderResponseDTO> getAllOrders() {
-        return orderRepository.findAll().stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return convertToDTOs(orderRepository.findAllWithDetails());
+    }
+
+    /**
+     * Danh sách đơn hàng phân trang theo cursor (createdAt,id), filter phía server
+     */
+    @GetMapping("/page")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('STAFF')")
+    public OrderPageDTO getOrderPage(@RequestParam(required = false) String status,
+                                     @RequestParam(required = false) String orderType,
+                                     @RequestParam(required = false) Long customerId,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                     @RequestParam(required = false) String cursor,
+                                     @RequestParam(required = false) Integer size) {
+        try {
+            return orderService.getOrderPage(status, orderType, customerId, from, to, cursor, size);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Đơn hàng của khách hàng hiện tại, phân trang theo cursor
+     */
+    @GetMapping("/my/page")
+    @PreAuthorize("hasRole('CUSTOMER')")
+    public OrderPageDTO getMyOrderPage(@RequestParam(required = false) String status,
+                                       @RequestParam(required = false) String cursor,
+                                       @RequestParam(required = false) Integer size,
+                                       Authentication authentication) {
+        String email = authentication.getName();
+        Customer customer = customerRepository.findByEmail(email)
+                .orElseThrow(() -> new RuntimeException("Not found!"));
+        try {
+            return orderService.getOrderPage(status, null, customer.getId(), null, null, cursor, size);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
     }
 
     @GetMapping("/{id}")
@@ -185,38 +204,28 @@ public class OrderController {
         order.setOrderType("DELIVERY");
 
 
-        // Gộp các foodId trùng, cộng dồn quantity
-        Map<Long, Integer> foodIdToQuantity = orderDto.getFoods().stream()
-                .collect(Collectors.toMap(
-                        FoodOrderItemDTO::getId,
-                        FoodOrderItemDTO::getQuantity,
-                        Integer::sum // nếu trùng thì cộng số lượng
-                ));
+        // Gộp các foodId trùng, load toàn bộ món trong 1 query và tính tổng
+        OrderPricingService.PricedOrder priced = orderPricingService.price(orderDto.getFoods());
 
         List<OrderFood> orderFoods = new ArrayList<>();
-        double total = 0.0;
-        for (Map.Entry<Long, Integer> entry : foodIdToQuantity.entrySet()) {
-            Long foodId = entry.getKey();
-            Integer quantity = entry.getValue();
-            Food food = foodRepository.findById(foodId)
-                    .orElseThrow(() -> new RuntimeException("Food not found: " + foodId));
+        for (OrderPricingService.PricedLine line : priced.getLines()) {
             OrderFood orderFood = new OrderFood();
             orderFood.setOrder(order);
-            orderFood.setFood(food);
-            orderFood.setQuantity(quantity);
+            orderFood.setFood(line.getFood());
+            orderFood.setQuantity(line.getQuantity());
             orderFoods.add(orderFood);
-            total += food.getPrice() * quantity;
         }
+        double total = priced.getSubtotal();
         order.setOrderFoods(orderFoods);
 
-        // Xử lý voucher nếu có
+        // Xử lý voucher nếu có: chỉ validate ở đây, trừ lượt sau khi lưu đơn (cùng transaction)
         double finalTotal = total;
+        Long customerVoucherId = null;
         if (orderDto.getVoucherCode() != null && !orderDto.getVoucherCode().trim().isEmpty()) {
             try {
                 System.out.println("[VOUCHER] Processing voucher: " + orderDto.getVoucherCode() + " for customer: " + customer.getId());
                 System.out.println("[VOUCHER] Order total before voucher: $" + total);
                 
-                // Validate voucher
                 Map<String, Object> voucherResult = voucherService.validateVoucherForOrder(
                     orderDto.getVoucherCode(), 
                     customer.getId(), 
@@ -225,6 +234,7 @@ public class OrderController {
                 
                 if ((Boolean) voucherResult.get("valid")) {
                     Double discount = (Double) voucherResult.get("discount");
+                    customerVoucherId = (Long) voucherResult.get("customerVoucherId");
                     order.setVoucherCode(orderDto.getVoucherCode());
                     order.setVoucherDiscount(discount);
                     finalTotal = Math.max(0, total - discount);
@@ -232,9 +242,6 @@ public class OrderController {
                     System.out.println("[VOUCHER] Voucher applied successfully!");
                     System.out.println("[VOUCHER] Discount amount: $" + discount);
                     System.out.println("[VOUCHER] Final total after discount: $" + finalTotal);
-                    
-                    // Mark voucher as used
-                    voucherService.markVoucherAsUsed(orderDto.getVoucherCode(), customer.getId());
                 } else {
                     System.out.println("[VOUCHER] Voucher validation failed: " + voucherResult.get("message"));
                 }
@@ -277,15 +284,27 @@ public class OrderController {
         }
         order.setRejectReason(null);
 
-        // SAVE, cascade ALL sẽ tự lưu luôn orderFoods
-        OrderEntity savedOrder = orderRepository.save(order);
-
-        if ("CASH".equals(method)) {
-            // Chỉ thêm mốc PREPARING, KHÔNG cộng điểm/ gửi mail tại thời điểm tạo đơn
-            addOrderStatusHistory(savedOrder, "PREPARING", null, "system");
-        } else {
-            addOrderStatusHistory(savedOrder, "WAITING_PAYMENT", null, "system");
-        }
+        // SAVE, cascade ALL sẽ tự lưu luôn orderFoods; trừ lượt voucher trong cùng transaction
+        // → voucher hết lượt / bị dùng ở request khác thì đơn không được tạo, đơn lỗi thì voucher không bị mất
+        Long redeemVoucherId = customerVoucherId;
+        OrderEntity savedOrder = new TransactionTemplate(transactionManager).execute(status -> {
+            OrderEntity saved = orderRepository.save(order);
+            if (redeemVoucherId != null) {
+                try {
+                    voucherService.redeemForOrder(redeemVoucherId, saved.getId());
+                } catch (RuntimeException e) {
+                    System.err.println("[VOUCHER ERROR] Voucher redemption failed, order not created: " + e.getMessage());
+                    throw new ResponseStatusException(HttpStatus.CONFLICT, "Voucher is no longer available: " + e.getMessage());
+                }
+            }
+            if ("CASH".equals(method)) {
+                // Chỉ thêm mốc PREPARING, KHÔNG cộng điểm/ gửi mail tại thời điểm tạo đơn
+                addOrderStatusHistory(saved, "PREPARING", null, "system");
+            } else {
+                addOrderStatusHistory(saved, "WAITING_PAYMENT", null, "system");
+            }
+            return saved;
+        });
         return convertToDTO(savedOrder);
     }
 
@@ -353,27 +372,18 @@ public class OrderController {
         }
 
 
-        // Gộp lại các món trùng id
-        Map<Long, Integer> foodIdToQuantity = orderDto.getFoods().stream()
-                .collect(Collectors.toMap(
-                        FoodOrderItemDTO::getId,
-                        FoodOrderItemDTO::getQuantity,
-                        Integer::sum
-                ));
+        // Gộp lại các món trùng id, resolve giá trong 1 query (trước khi xoá món cũ)
+        OrderPricingService.PricedOrder priced = orderPricingService.price(orderDto.getFoods());
 
         order.getOrderFoods().clear();
         orderRepository.saveAndFlush(order);
         List<OrderFood> orderFoods = new ArrayList<>();
-        double total = 0.0;
-        for (Map.Entry<Long, Integer> entry : foodIdToQuantity.entrySet()) {
-            Long foodId = entry.getKey();
-            Integer quantity = entry.getValue();
-            Food food = foodRepository.findById(foodId)
-                    .orElseThrow(() -> new RuntimeException("Food not found: " + foodId));
+        for (OrderPricingService.PricedLine line : priced.getLines()) {
+            Food food = line.getFood();
             OrderFood orderFood = new OrderFood();
             orderFood.setOrder(order);
             orderFood.setFood(food);
-            orderFood.setQuantity(quantity);
+            orderFood.setQuantity(line.getQuantity());
 
             // Phải set lại composite id nếu dùng EmbeddedId (rất quan trọng)
             OrderFoodId ofId = new OrderFoodId();
@@ -382,13 +392,12 @@ public class OrderController {
             orderFood.setId(ofId);
 
             orderFoods.add(orderFood);
-            total += food.getPrice() * quantity;
         }
 
 
         order.getOrderFoods().addAll(orderFoods);
 
-        order.setTotalPrice(total);
+        order.setTotalPrice(priced.getSubtotal());
 
         // Validate và cập nhật địa chỉ giao hàng
         if (orderDto.getDeliveryAddress() != null) {
@@ -443,16 +452,39 @@ public class OrderController {
                                                @RequestParam(required = false) Long customerId) {
         List<OrderEntity> orders;
         if (status != null) {
-            orders = orderRepository.findByStatus(status);
+            orders = orderRepository.findWithDetailsByStatus(status);
         } else if (customerId != null) {
-            orders = orderRepository.findByCustomerId(customerId);
+            orders = orderRepository.findWithDetailsByCustomerId(customerId);
         } else {
-            orders = orderRepository.findAll();
+            orders = orderRepository.findAllWithDetails();
+        }
+        return convertToDTOs(orders);
+    }
+
+    // Convert danh sách đơn: lịch sử trạng thái của tất cả đơn lấy bằng 1 query IN (...)
+    private List<OrderResponseDTO> convertToDTOs(List<OrderEntity> orders) {
+        if (orders.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> orderIds = orders.stream().map(OrderEntity::getId).collect(Collectors.toList());
+        // Chia IN (...) thành từng lô: PostgreSQL giới hạn 65.535 tham số bind mỗi câu lệnh
+        Map<Long, List<OrderStatusHistory>> historyByOrder = new HashMap<>();
+        for (int from = 0; from < orderIds.size(); from += HISTORY_BATCH_SIZE) {
+            List<Long> batch = orderIds.subList(from, Math.min(from + HISTORY_BATCH_SIZE, orderIds.size()));
+            for (OrderStatusHistory history : orderStatusHistoryRepository.findByOrderIdsOrderByChangedAtAsc(batch)) {
+                historyByOrder.computeIfAbsent(history.getOrder().getId(), id -> new ArrayList<>()).add(history);
+            }
         }
-        return orders.stream().map(this::convertToDTO).collect(Collectors.toList());
+        return orders.stream()
+                .map(order -> convertToDTO(order, historyByOrder.getOrDefault(order.getId(), Collections.emptyList())))
+                .collect(Collectors.toList());
     }
 
     private OrderResponseDTO convertToDTO(OrderEntity order) {
+        return convertToDTO(order, orderStatusHistoryRepository.findByOrderIdOrderByChangedAtAsc(order.getId()));
+    }
+
+    private OrderResponseDTO convertToDTO(OrderEntity order, List<OrderStatusHistory> historyList) {
         OrderResponseDTO dto = new OrderResponseDTO();
         dto.setId(order.getId());
         dto.setOrderNumber(order.getOrderNumber());
@@ -500,14 +532,13 @@ public class OrderController {
                 customerDTO.setPhoneNumber(customer.getCustomerDetail().getPhoneNumber());
                 // customerDTO.setAddress(customer.getCustomerDetail().getAddress()); // Đã loại bỏ
                 // customerDTO.setImageUrl(customer.getCustomerDetail().getImageUrl()); // Đã loại bỏ
-                customerDTO.setPoint(customer.getCustomerDetail().getPoint());
+                customerDTO.setPoint(String.valueOf(customer.getCustomerDetail().getPoint()));
                 customerDTO.setVoucher(customer.getCustomerDetail().getVoucher());
             }
             dto.setCustomer(customerDTO);
         }
 
         // Lịch sử trạng thái
-        List<OrderStatusHistory> historyList = orderStatusHistoryRepository.findByOrderIdOrderByChangedAtAsc(order.getId());
         List<OrderStatusHistoryDTO> historyDTOs = historyList.stream().map(history -> {
             OrderStatusHistoryDTO statusDto = new OrderStatusHistoryDTO();
             statusDto.setStatus(history.getStatus());
@@ -680,8 +711,8 @@ public class OrderController {
         Customer customer = customerRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("Not found!"));
         // Trả về tất cả orders của customer
-        List<OrderEntity> orders = orderRepository.findByCustomerId(customer.getId());
-        return orders.stream().map(this::convertToDTO).collect(Collectors.toList());
+        List<OrderEntity> orders = orderRepository.findWithDetailsByCustomerId(customer.getId());
+        return convertToDTOs(orders);
     }
 
     // Endpoint này đã được gộp vào /myorder
@@ -811,73 +842,11 @@ public class OrderController {
             return ResponseEntity.ok(response);
         }
         
+        // Ghi vào inbox và trả lời ngay; worker xử lý đơn hàng, điểm và email ở nền
         try {
-            String orderCode = (String) webhookData.get("orderCode");
-            String status = (String) webhookData.get("status");
-            
-            // orderCode là timestamp, tìm order theo thời gian tạo gần nhất
-            Long orderCodeLong = Long.valueOf(orderCode);
-            
-            // Tìm order có status WAITING_PAYMENT và thời gian tạo gần với orderCode
-            List<OrderEntity> waitingOrders = orderRepository.findByStatus("WAITING_PAYMENT");
-            
-            
-            OrderEntity order = null;
-            
-            for (OrderEntity waitingOrder : waitingOrders) {
-                if (waitingOrder.getCreatedAt() != null) {
-                    long orderTime = waitingOrder.getCreatedAt().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    
-                    // Kiểm tra nếu orderCode gần với thời gian tạo order (trong khoảng 5 phút)
-                    if (Math.abs(orderTime - orderCodeLong) < 300000) { // 5 phút = 300,000 ms
-                        order = waitingOrder;
-                        
-                        break;
-                    }
-                }
-            }
-            
-            if (order == null) {
-                
-                throw new RuntimeException("Order not found with orderCode: " + orderCode);
-            }
-            
-            if ("PAID".equals(order.getStatus())) {
-                response.put("code", "02");
-                response.put("message", "Order already confirmed");
-                return ResponseEntity.ok(response);
-            }
-            
-            
-            
-            if ("PAID".equals(status)) {
-                
-            order.setStatus("PAID");
-            order.setConfirmStatus("PAID");
-                order.setDeliveryStatus("PREPARING");
-            orderRepository.save(order);
-            addOrderStatusHistory(order, "PAID", "Thanh toán thành công qua PayOS", "system");
-                
-                // Add points to customer
-                int pointsAdded = addPointsToCustomer(order);
-                
-                // Send payment success email
-                sendPaymentSuccessEmail(order, pointsAdded);
-                
-                
-            } else {
-                
-                order.setStatus("CANCELLED");
-                order.setConfirmStatus("CANCELLED");
-                order.setDeliveryStatus("CANCELLED");
-                orderRepository.save(order);
-                addOrderStatusHistory(order, "FAILED", "Thanh toán thất bại qua PayOS", "system");
-                
-            }
-            
+            boolean accepted = paymentWebhookService.receive(webhookData);
             response.put("code", "00");
-            response.put("message", "Confirm Success");
-            
+            response.put("message", accepted ? "Received" : "Already received");
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             response.put("code", "99");
@@ -904,19 +873,9 @@ public class OrderController {
             try {
                 System.out.println("[PAYOS RETURN] Processing successful payment for orderCode: " + orderCode);
                 
-                Long orderCodeLong = Long.valueOf(orderCode);
-                List<OrderEntity> waitingOrders = orderRepository.findByStatus("WAITING_PAYMENT");
-                
-                OrderEntity order = null;
-                for (OrderEntity waitingOrder : waitingOrders) {
-                    if (waitingOrder.getCreatedAt() != null) {
-                        long orderTime = waitingOrder.getCreatedAt().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                        if (Math.abs(orderTime - orderCodeLong) < 300000) { // 5 phút
-                            order = waitingOrder;
-                            break;
-                        }
-                    }
-                }
+                OrderEntity order = findOrderByPaymentOrderCode(orderCode)
+                        .filter(o -> "WAITING_PAYMENT".equals(o.getStatus()))
+                        .orElse(null);
                 
                 if (order != null) {
                     System.out.println("[PAYOS RETURN] Found order: " + order.getId() + ", updating status to PAID");
@@ -1011,7 +970,7 @@ public class OrderController {
     }
 
     /**
-     * Tìm order theo orderCode (timestamp)
+     * Tìm order theo orderCode PayOS đã lưu trên đơn
      */
     @GetMapping("/payment/find-by-ordercode")
     @PreAuthorize("hasRole('CUSTOMER')")
@@ -1020,23 +979,12 @@ public class OrderController {
             Authentication authentication) {
         try {
             String customerEmail = authentication.getName();
-            Long orderCodeLong = Long.valueOf(orderCode);
             
-            // Tìm order có status PAID và thời gian tạo gần với orderCode
-            List<OrderEntity> paidOrders = orderRepository.findByStatus("PAID");
-            OrderEntity order = null;
-            
-            for (OrderEntity paidOrder : paidOrders) {
-                if (paidOrder.getCustomer().getEmail().equalsIgnoreCase(customerEmail) && 
-                    paidOrder.getCreatedAt() != null) {
-                    long orderTime = paidOrder.getCreatedAt().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    // Kiểm tra nếu orderCode gần với thời gian tạo order (trong khoảng 5 phút)
-                    if (Math.abs(orderTime - orderCodeLong) < 300000) { // 5 phút = 300,000 ms
-                        order = paidOrder;
-                        break;
-                    }
-                }
-            }
+            // Tìm order PAID của chính khách hàng theo orderCode đã lưu
+            OrderEntity order = findOrderByPaymentOrderCode(orderCode)
+                    .filter(o -> "PAID".equals(o.getStatus()))
+                    .filter(o -> o.getCustomer() != null && o.getCustomer().getEmail().equalsIgnoreCase(customerEmail))
+                    .orElse(null);
             
             if (order == null) {
                 Map<String, Object> response = new HashMap<>();
@@ -1107,23 +1055,9 @@ public class OrderController {
             
             System.out.println("[MANUAL UPDATE] Updating order with orderCode: " + orderCode + ", status: " + status);
             
-            Long orderCodeLong = Long.valueOf(orderCode);
-            List<OrderEntity> waitingOrders = orderRepository.findByStatus("WAITING_PAYMENT");
-            
-            OrderEntity order = null;
-            for (OrderEntity waitingOrder : waitingOrders) {
-                if (waitingOrder.getCreatedAt() != null) {
-                    long orderTime = waitingOrder.getCreatedAt().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    if (Math.abs(orderTime - orderCodeLong) < 300000) {
-                        order = waitingOrder;
-                        break;
-                    }
-                }
-            }
-            
-            if (order == null) {
-                throw new RuntimeException("Order not found with orderCode: " + orderCode);
-            }
+            OrderEntity order = findOrderByPaymentOrderCode(orderCode)
+                    .filter(o -> "WAITING_PAYMENT".equals(o.getStatus()))
+                    .orElseThrow(() -> new RuntimeException("Order not found with orderCode: " + orderCode));
             
             if ("PAID".equals(status)) {
                 order.setStatus("PAID");
@@ -1163,23 +1097,9 @@ public class OrderController {
         try {
             System.out.println("[FORCE UPDATE] Updating order with orderCode: " + orderCode + ", status: " + status);
             
-            Long orderCodeLong = Long.valueOf(orderCode);
-            List<OrderEntity> waitingOrders = orderRepository.findByStatus("WAITING_PAYMENT");
-            
-            OrderEntity order = null;
-            for (OrderEntity waitingOrder : waitingOrders) {
-                if (waitingOrder.getCreatedAt() != null) {
-                    long orderTime = waitingOrder.getCreatedAt().atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
-                    if (Math.abs(orderTime - orderCodeLong) < 300000) {
-                        order = waitingOrder;
-                        break;
-                    }
-                }
-            }
-            
-            if (order == null) {
-                throw new RuntimeException("Order not found with orderCode: " + orderCode);
-            }
+            OrderEntity order = findOrderByPaymentOrderCode(orderCode)
+                    .filter(o -> "WAITING_PAYMENT".equals(o.getStatus()))
+                    .orElseThrow(() -> new RuntimeException("Order not found with orderCode: " + orderCode));
             
             if ("PAID".equals(status)) {
             order.setStatus("PAID");
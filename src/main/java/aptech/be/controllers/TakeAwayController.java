@@ -2,8 +2,10 @@ package aptech.be.controllers;
 
 import aptech.be.models.*;
 import aptech.be.repositories.*;
+import aptech.be.services.CustomerPointService;
 import aptech.be.services.CustomerService;
 import aptech.be.services.EmailService;
+import aptech.be.services.OrderPricingService;
 import aptech.be.config.JwtUtil;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,13 +34,13 @@ public class TakeAwayController {
     private OrderRepository orderRepository;
     
     @Autowired
-    private FoodRepository foodRepository;
+    private OrderPricingService orderPricingService;
     
     @Autowired
     private CustomerRepository customerRepository;
     
     @Autowired
-    private CustomerDetailRepository customerDetailRepository;
+    private CustomerPointService customerPointService;
     
     @Autowired
     private UserRepository userRepository;
@@ -101,37 +103,7 @@ public class TakeAwayController {
     // Helper method to add points to customer (same logic as OrderController)
     private int addPointsToCustomer(OrderEntity order) {
         try {
-            Customer customer = order.getCustomer();
-            if (customer != null && customer.getCustomerDetail() != null) {
-                CustomerDetail customerDetail = customer.getCustomerDetail();
-                
-                // Calculate points: 10$ = 10 points (round down)
-                double totalPrice = order.getTotalPrice();
-                int pointsToAdd = (int) Math.floor(totalPrice / 10.0) * 10;
-                
-                // Get current points
-                String currentPointsStr = customerDetail.getPoint();
-                int currentPoints = 0;
-                if (currentPointsStr != null && !currentPointsStr.isEmpty()) {
-                    try {
-                        currentPoints = Integer.parseInt(currentPointsStr);
-                    } catch (NumberFormatException e) {
-                        currentPoints = 0;
-                    }
-                }
-                
-                // Add new points
-                int newPoints = currentPoints + pointsToAdd;
-                customerDetail.setPoint(String.valueOf(newPoints));
-                
-                // Save customer detail
-                customerDetailRepository.save(customerDetail);
-                
-                System.out.println("[TAKEAWAY POINTS] Added " + pointsToAdd + " points to customer " + customer.getId() + 
-                                 ". Total points: " + newPoints + " (Order total: $" + totalPrice + ")");
-                
-                return pointsToAdd;
-            }
+            return customerPointService.awardOrderPoints(order);
         } catch (Exception e) {
             System.err.println("[TAKEAWAY POINTS ERROR] Failed to add points: " + e.getMessage());
             e.printStackTrace();
@@ -203,32 +175,37 @@ public class TakeAwayController {
             order.setRecipientName(customerName);
             order.setRecipientPhone(customerPhone);
 
-            // Calculate total and create order foods
-            double totalPrice = 0.0;
-            List<OrderFood> orderFoods = new ArrayList<>();
-
+            // Gộp món trùng và resolve giá toàn bộ món trong 1 query
+            Map<Long, Integer> foodIdToQuantity = new LinkedHashMap<>();
             for (Map<String, Object> item : items) {
                 Long foodId = Long.valueOf(item.get("foodId").toString());
                 Integer quantity = Integer.valueOf(item.get("quantity").toString());
+                foodIdToQuantity.merge(foodId, quantity, Integer::sum);
+            }
 
-                Optional<Food> foodOpt = foodRepository.findById(foodId);
-                if (foodOpt.isEmpty()) {
-                    return ResponseEntity.badRequest().body("Food not found: " + foodId);
-                }
+            OrderPricingService.PricedOrder priced;
+            try {
+                priced = orderPricingService.price(foodIdToQuantity);
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(e.getMessage());
+            }
+
+            // Create order foods
+            double totalPrice = priced.getSubtotal();
+            List<OrderFood> orderFoods = new ArrayList<>();
 
-                Food food = foodOpt.get();
-                double itemTotal = food.getPrice() * quantity;
-                totalPrice += itemTotal;
+            for (OrderPricingService.PricedLine line : priced.getLines()) {
+                Food food = line.getFood();
 
                 // Create OrderFood
                 OrderFood orderFood = new OrderFood();
                 OrderFoodId orderFoodId = new OrderFoodId();
                 orderFoodId.setOrderId(null); // Will be set after order is saved
-                orderFoodId.setFoodId(foodId);
+                orderFoodId.setFoodId(food.getId());
                 
                 orderFood.setId(orderFoodId);
                 orderFood.setFood(food);
-                orderFood.setQuantity(quantity);
+                orderFood.setQuantity(line.getQuantity());
                 orderFood.setOrder(order);
                 
                 orderFoods.add(orderFood);
@@ -468,15 +445,7 @@ public class TakeAwayController {
                 Customer customer = customerOpt.get();
                 
                 // Get current points
-                int currentPoints = 0;
-                if (customer.getCustomerDetail() != null && 
-                    customer.getCustomerDetail().getPoint() != null) {
-                    try {
-                        currentPoints = Integer.parseInt(customer.getCustomerDetail().getPoint());
-                    } catch (NumberFormatException e) {
-                        currentPoints = 0;
-                    }
-                }
+                int currentPoints = customerPointService.getPoints(customer.getCustomerDetail());
                 
                 // Create customer response map with null safety
                 Map<String, Object> customerData = new HashMap<>();
@@ -3,6 +3,9 @@ package aptech.be.controllers;
 import aptech.be.dto.VoucherDTO;
 import aptech.be.dto.CreateVoucherRequest;
 import aptech.be.services.VoucherService;
+import aptech.be.services.VoucherDistributionService;
+import aptech.be.services.VoucherCleanupService;
+import aptech.be.models.VoucherDistributionJob;
 import aptech.be.services.CustomerService;
 import aptech.be.models.Customer;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,6 +30,12 @@ public class VoucherController {
     @Autowired
     private CustomerService customerService;
     
+    @Autowired
+    private VoucherDistributionService voucherDistributionService;
+    
+    @Autowired
+    private VoucherCleanupService voucherCleanupService;
+    
     // Lấy tất cả voucher
     @GetMapping
     public ResponseEntity<List<VoucherDTO>> getAllVouchers() {
@@ -172,7 +181,7 @@ public class VoucherController {
     @PostMapping("/cleanup")
     public ResponseEntity<Map<String, Object>> triggerCleanup() {
         try {
-            voucherService.cleanupExpiredVouchers();
+            voucherCleanupService.cleanupExpiredVouchers();
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -223,14 +232,8 @@ public class VoucherController {
                     
                     // Add point information
                     if (customer.getCustomerDetail() != null) {
-                        String pointStr = customer.getCustomerDetail().getPoint();
-                        int points = 0;
-                        try {
-                            points = pointStr != null && !pointStr.isEmpty() ? Integer.parseInt(pointStr) : 0;
-                        } catch (NumberFormatException e) {
-                            points = 0;
-                        }
-                        customerMap.put("points", points);
+                        Integer points = customer.getCustomerDetail().getPoint();
+                        customerMap.put("points", points != null ? points : 0);
                         customerMap.put("phoneNumber", customer.getCustomerDetail().getPhoneNumber());
                     } else {
                         customerMap.put("points", 0);
@@ -248,19 +251,15 @@ public class VoucherController {
         }
     }
     
-    // Tặng voucher cho top customers theo points
+    // Tặng voucher cho top customers theo points (chạy nền, trả về jobId để theo dõi tiến độ)
     @PostMapping("/{voucherId}/give-to-top-customers")
     public ResponseEntity<Map<String, Object>> giveVoucherToTopCustomers(
             @PathVariable Long voucherId,
-            @RequestParam int topCount) {
+            @RequestParam int topCount,
+            Authentication authentication) {
         try {
-            String result = voucherService.giveVoucherToTopCustomers(voucherId, topCount);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("message", result);
-            
-            return ResponseEntity.ok(response);
+            VoucherDistributionJob job = voucherDistributionService.startTopCustomers(voucherId, topCount, authentication.getName());
+            return ResponseEntity.accepted().body(jobStartedResponse(job));
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -270,17 +269,13 @@ public class VoucherController {
         }
     }
     
-    // Tặng voucher cho tất cả customers
+    // Tặng voucher cho tất cả customers (chạy nền)
     @PostMapping("/{voucherId}/give-to-all-customers")
-    public ResponseEntity<Map<String, Object>> giveVoucherToAllCustomers(@PathVariable Long voucherId) {
+    public ResponseEntity<Map<String, Object>> giveVoucherToAllCustomers(@PathVariable Long voucherId,
+                                                                         Authentication authentication) {
         try {
-            String result = voucherService.giveVoucherToAllCustomers(voucherId);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("message", result);
-            
-            return ResponseEntity.ok(response);
+            VoucherDistributionJob job = voucherDistributionService.startAllCustomers(voucherId, authentication.getName());
+            return ResponseEntity.accepted().body(jobStartedResponse(job));
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
@@ -290,25 +285,65 @@ public class VoucherController {
         }
     }
     
-    // Tặng voucher cho multiple customers
+    // Tặng voucher cho multiple customers (chạy nền)
     @PostMapping("/{voucherId}/give-to-multiple-customers")
     public ResponseEntity<Map<String, Object>> giveVoucherToMultipleCustomers(
             @PathVariable Long voucherId,
-            @RequestBody List<Long> customerIds) {
+            @RequestBody List<Long> customerIds,
+            Authentication authentication) {
         try {
-            String result = voucherService.giveVoucherToMultipleCustomers(voucherId, customerIds);
-            
+            VoucherDistributionJob job = voucherDistributionService.startSelectedCustomers(voucherId, customerIds, authentication.getName());
+            return ResponseEntity.accepted().body(jobStartedResponse(job));
+        } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("message", result);
+            response.put("success", false);
+            response.put("message", "Failed to give voucher to multiple customers: " + e.getMessage());
             
-            return ResponseEntity.ok(response);
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    // Tiến độ job phát voucher
+    @GetMapping("/distribution-jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getDistributionJob(@PathVariable Long jobId) {
+        try {
+            return ResponseEntity.ok(VoucherDistributionService.toProgress(voucherDistributionService.getJob(jobId)));
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    // Danh sách job phát voucher của 1 voucher
+    @GetMapping("/{voucherId}/distribution-jobs")
+    public ResponseEntity<List<Map<String, Object>>> getDistributionJobs(@PathVariable Long voucherId) {
+        List<Map<String, Object>> jobs = voucherDistributionService.getJobsForVoucher(voucherId).stream()
+                .map(VoucherDistributionService::toProgress)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(jobs);
+    }
+    
+    // Chạy tiếp job bị lỗi từ vị trí đã xử lý
+    @PostMapping("/distribution-jobs/{jobId}/resume")
+    public ResponseEntity<Map<String, Object>> resumeDistributionJob(@PathVariable Long jobId) {
+        try {
+            VoucherDistributionJob job = voucherDistributionService.resume(jobId);
+            return ResponseEntity.accepted().body(jobStartedResponse(job));
         } catch (Exception e) {
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
-            response.put("message", "Failed to give voucher to multiple customers: " + e.getMessage());
+            response.put("message", "Failed to resume distribution job: " + e.getMessage());
             
             return ResponseEntity.badRequest().body(response);
         }
     }
-} 
\ No newline at end of file
+    
+    private Map<String, Object> jobStartedResponse(VoucherDistributionJob job) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Voucher distribution job " + job.getId() + " started for "
+                + job.getTotalCandidates() + " customers");
+        response.put("jobId", job.getId());
+        response.put("job", VoucherDistributionService.toProgress(job));
+        return response;
+    }
+}
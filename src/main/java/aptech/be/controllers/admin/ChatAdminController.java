@@ -3,6 +3,7 @@ package aptech.be.controllers.admin;
 import aptech.be.models.chat.ChatSession;
 import aptech.be.repositories.chat.ChatSessionRepository;
 import aptech.be.repositories.chat.ChatMessageRepository;
+import aptech.be.services.chat.ChatResponseCache;
 import aptech.be.services.chat.ChatService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -20,13 +21,16 @@ public class ChatAdminController {
 	private final ChatSessionRepository chatSessionRepository;
 	private final ChatMessageRepository messageRepo;
 	private final ChatService chatService;
+	private final ChatResponseCache chatResponseCache;
 
 	public ChatAdminController(ChatSessionRepository chatSessionRepository,
 							   ChatMessageRepository messageRepo,
-							   ChatService chatService) {
+							   ChatService chatService,
+							   ChatResponseCache chatResponseCache) {
 		this.chatSessionRepository = chatSessionRepository;
 		this.messageRepo = messageRepo;
 		this.chatService = chatService;
+		this.chatResponseCache = chatResponseCache;
 	}
 
 	// Sessions Management
@@ -56,6 +60,13 @@ public class ChatAdminController {
 		return ResponseEntity.accepted().build();
 	}
 
+	// Xóa cache câu trả lời chatbot
+	@PostMapping("/response-cache/flush")
+	public Map<String, Object> flushResponseCache() {
+		int flushed = chatResponseCache.flush();
+		return Map.of("success", true, "flushed", flushed);
+	}
+
 	@GetMapping("/analytics/basic")
 	public Map<String, Object> analyticsBasic() {
 		Map<String, Object> m = new HashMap<>();
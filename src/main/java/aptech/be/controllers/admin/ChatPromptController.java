@@ -3,7 +3,9 @@ package aptech.be.controllers.admin;
 import aptech.be.dto.chat.ChatPromptDTO;
 import aptech.be.models.chat.ChatPrompt;
 import aptech.be.repositories.chat.ChatPromptRepository;
+import aptech.be.services.chat.ChatPromptsChangedEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -18,6 +20,9 @@ public class ChatPromptController {
     @Autowired
     private ChatPromptRepository chatPromptRepository;
     
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     @GetMapping
     public ResponseEntity<List<ChatPromptDTO>> getAllPrompts() {
         List<ChatPrompt> prompts = chatPromptRepository.findAll();
@@ -40,6 +45,7 @@ public class ChatPromptController {
         ChatPrompt prompt = convertToEntity(promptDTO);
         prompt.setId(null); // Ensure new entity
         ChatPrompt saved = chatPromptRepository.save(prompt);
+        eventPublisher.publishEvent(new ChatPromptsChangedEvent(saved.getId()));
         return ResponseEntity.ok(convertToDTO(saved));
     }
     
@@ -49,6 +55,7 @@ public class ChatPromptController {
             .map(existing -> {
                 updateEntityFromDTO(existing, promptDTO);
                 ChatPrompt saved = chatPromptRepository.save(existing);
+                eventPublisher.publishEvent(new ChatPromptsChangedEvent(saved.getId()));
                 return ResponseEntity.ok(convertToDTO(saved));
             })
             .orElse(ResponseEntity.notFound().build());
@@ -58,6 +65,7 @@ public class ChatPromptController {
     public ResponseEntity<Void> deletePrompt(@PathVariable Long id) {
         if (chatPromptRepository.existsById(id)) {
             chatPromptRepository.deleteById(id);
+            eventPublisher.publishEvent(new ChatPromptsChangedEvent(id));
             return ResponseEntity.ok().build();
         }
         return ResponseEntity.notFound().build();
@@ -78,6 +86,7 @@ public class ChatPromptController {
             .map(prompt -> {
                 prompt.setActive(!prompt.getActive());
                 ChatPrompt saved = chatPromptRepository.save(prompt);
+                eventPublisher.publishEvent(new ChatPromptsChangedEvent(saved.getId()));
                 return ResponseEntity.ok(convertToDTO(saved));
             })
             .orElse(ResponseEntity.notFound().build());
@@ -118,6 +127,7 @@ public class ChatPromptController {
             generalPrompt.setActive(true);
             generalPrompt.setPriority(2);
             chatPromptRepository.save(generalPrompt);
+            eventPublisher.publishEvent(new ChatPromptsChangedEvent(null));
             
             return ResponseEntity.ok("Demo data created successfully! Created 3 prompt templates.");
         } catch (Exception e) {
@@ -4,8 +4,10 @@ import aptech.be.models.chat.ChatMessage;
 import aptech.be.models.chat.ChatSession;
 import aptech.be.models.chat.ChatPrompt;
 import aptech.be.repositories.chat.ChatPromptRepository;
+import aptech.be.services.chat.ChatPromptsChangedEvent;
 import aptech.be.services.chat.ChatService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -20,6 +22,9 @@ public class ChatController {
 	
 	@Autowired
 	private ChatPromptRepository chatPromptRepository;
+	
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
 
 	public ChatController(ChatService chatService) {
 		this.chatService = chatService;
@@ -88,6 +93,7 @@ public class ChatController {
 			// Save prompts
 			chatPromptRepository.save(englishPrompt);
 			chatPromptRepository.save(vietnamesePrompt);
+			eventPublisher.publishEvent(new ChatPromptsChangedEvent(null));
 			
 			return ResponseEntity.ok("Demo prompts created successfully!");
 		} catch (Exception e) {
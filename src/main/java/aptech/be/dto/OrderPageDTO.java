@@ -0,0 +1,31 @@
+package aptech.be.dto;
+
+import java.util.List;
+
+public class OrderPageDTO {
+    private List<OrderSummaryView> items;
+    private String nextCursor; // null nếu đã hết dữ liệu
+    private boolean hasMore;
+    private int size;
+
+    public OrderPageDTO() {}
+
+    public OrderPageDTO(List<OrderSummaryView> items, String nextCursor, boolean hasMore) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+        this.size = items.size();
+    }
+
+    public List<OrderSummaryView> getItems() { return items; }
+    public void setItems(List<OrderSummaryView> items) { this.items = items; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+
+    public int getSize() { return size; }
+    public void setSize(int size) { this.size = size; }
+}
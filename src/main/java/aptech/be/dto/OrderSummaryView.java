@@ -0,0 +1,28 @@
+package aptech.be.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * Interface projection dùng cho danh sách đơn hàng phân trang.
+ * Chỉ select các cột cần hiển thị, không load orderFoods / history.
+ */
+public interface OrderSummaryView {
+    Long getId();
+    String getOrderNumber();
+    String getOrderType();
+    String getStatus();
+    String getConfirmStatus();
+    String getDeliveryStatus();
+    String getPaymentMethod();
+    Double getTotalPrice();
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    LocalDateTime getCreatedAt();
+
+    Long getCustomerId();
+    String getCustomerName();
+    Long getTableId();
+    Integer getTableNumber();
+}
@@ -10,6 +10,7 @@ public class RevenueAnalytics {
     private BigDecimal dineInRevenue;
     private BigDecimal takeAwayRevenue;
     private String timeRange;
+    private String granularity; // HOUR, DAY, WEEK, MONTH
     private List<RevenueDataPoint> revenueOverTime;
     private Map<String, BigDecimal> revenueByOrderType;
     private BigDecimal revenueGrowth;
@@ -58,6 +59,9 @@ public class RevenueAnalytics {
     public String getTimeRange() { return timeRange; }
     public void setTimeRange(String timeRange) { this.timeRange = timeRange; }
     
+    public String getGranularity() { return granularity; }
+    public void setGranularity(String granularity) { this.granularity = granularity; }
+    
     public List<RevenueDataPoint> getRevenueOverTime() { return revenueOverTime; }
     public void setRevenueOverTime(List<RevenueDataPoint> revenueOverTime) { this.revenueOverTime = revenueOverTime; }
     
@@ -2,9 +2,11 @@ package aptech.be.dto.dashboard;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 public class RevenueDataPoint {
     private LocalDate date;
+    private LocalDateTime bucketStart; // đầu bucket (giờ / ngày / tuần / tháng)
     private BigDecimal revenue;
     private int orderCount;
     private BigDecimal deliveryRevenue;
@@ -28,6 +30,9 @@ public class RevenueDataPoint {
     public LocalDate getDate() { return date; }
     public void setDate(LocalDate date) { this.date = date; }
     
+    public LocalDateTime getBucketStart() { return bucketStart; }
+    public void setBucketStart(LocalDateTime bucketStart) { this.bucketStart = bucketStart; }
+    
     public BigDecimal getRevenue() { return revenue; }
     public void setRevenue(BigDecimal revenue) { this.revenue = revenue; }
     
@@ -1,5 +1,6 @@
 package aptech.be.models;
 
+import aptech.be.services.CustomerPointListener;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
@@ -8,7 +9,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "customerdetails")
+@EntityListeners(CustomerPointListener.class)
+@Table(name = "customerdetails", indexes = {
+        @Index(name = "idx_customerdetails_point", columnList = "point")
+})
 public class CustomerDetail {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -17,7 +21,9 @@ public class CustomerDetail {
     private String phoneNumber;
     // private String address; // Đã loại bỏ, thay bằng addresses list
 //    private String imageUrl;
-    private String point;
+    // Chỉ thay đổi qua CustomerPointService (UPDATE point = point + :delta), không ghi đè từ entity
+    @Column(nullable = false, updatable = false)
+    private Integer point = 0;
     private String voucher;
 
     @OneToOne
@@ -70,11 +76,11 @@ public class CustomerDetail {
 //        this.imageUrl = imageUrl;
 //    }
 
-    public String getPoint() {
+    public Integer getPoint() {
         return point;
     }
 
-    public void setPoint(String point) {
+    public void setPoint(Integer point) {
         this.point = point;
     }
 
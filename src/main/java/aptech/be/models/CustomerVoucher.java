@@ -4,7 +4,11 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "customer_vouchers")
+@Table(name = "customer_vouchers", indexes = {
+        @Index(name = "idx_customer_vouchers_customer_voucher", columnList = "customer_id, voucher_id"),
+        @Index(name = "idx_customer_vouchers_customer_valid", columnList = "customer_id, is_used, expires_at"),
+        @Index(name = "idx_customer_vouchers_expiry", columnList = "is_used, expires_at")
+})
 public class CustomerVoucher {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
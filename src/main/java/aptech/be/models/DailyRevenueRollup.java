@@ -0,0 +1,39 @@
+package aptech.be.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Doanh thu cộng dồn theo (ngày tạo đơn, orderType, paymentMethod).
+ * Được cập nhật mỗi khi đơn đạt PAID / COMPLETED / DELIVERED và đối soát lại hằng đêm.
+ */
+@Entity
+@Table(name = "daily_revenue_rollup")
+@Getter
+@Setter
+@NoArgsConstructor
+public class DailyRevenueRollup {
+
+    @EmbeddedId
+    private DailyRevenueRollupId id;
+
+    @Column(nullable = false)
+    private Double revenue;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public DailyRevenueRollup(DailyRevenueRollupId id, Double revenue, Long orderCount) {
+        this.id = id;
+        this.revenue = revenue;
+        this.orderCount = orderCount;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
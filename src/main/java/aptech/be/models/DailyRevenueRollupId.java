@@ -0,0 +1,67 @@
+package aptech.be.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+@Embeddable
+public class DailyRevenueRollupId implements Serializable {
+    @Column(name = "revenue_date", nullable = false)
+    private LocalDate revenueDate;
+
+    @Column(name = "order_type", nullable = false, length = 50)
+    private String orderType;
+
+    @Column(name = "payment_method", nullable = false, length = 50)
+    private String paymentMethod;
+
+    public DailyRevenueRollupId() {}
+
+    public DailyRevenueRollupId(LocalDate revenueDate, String orderType, String paymentMethod) {
+        this.revenueDate = revenueDate;
+        this.orderType = orderType;
+        this.paymentMethod = paymentMethod;
+    }
+
+    public LocalDate getRevenueDate() {
+        return revenueDate;
+    }
+
+    public void setRevenueDate(LocalDate revenueDate) {
+        this.revenueDate = revenueDate;
+    }
+
+    public String getOrderType() {
+        return orderType;
+    }
+
+    public void setOrderType(String orderType) {
+        this.orderType = orderType;
+    }
+
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    public void setPaymentMethod(String paymentMethod) {
+        this.paymentMethod = paymentMethod;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DailyRevenueRollupId)) return false;
+        DailyRevenueRollupId that = (DailyRevenueRollupId) o;
+        return Objects.equals(getRevenueDate(), that.getRevenueDate()) &&
+                Objects.equals(getOrderType(), that.getOrderType()) &&
+                Objects.equals(getPaymentMethod(), that.getPaymentMethod());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getRevenueDate(), getOrderType(), getPaymentMethod());
+    }
+}
@@ -0,0 +1,70 @@
+package aptech.be.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox email: ghi cùng transaction với thay đổi nghiệp vụ, gửi SMTP ở luồng nền.
+ * dedup_key unique (VD: PAYMENT_SUCCESS:{orderId}) để không gửi trùng khi sự kiện được xử lý lại.
+ */
+@Entity
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "idx_email_outbox_dedup_key", columnList = "dedup_key", unique = true),
+        @Index(name = "idx_email_outbox_state", columnList = "state, next_attempt_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class EmailOutboxMessage {
+    public static final String TYPE_PAYMENT_SUCCESS = "PAYMENT_SUCCESS";
+    public static final String TYPE_INVOICE = "INVOICE";
+
+    public static final String STATE_PENDING = "PENDING";
+    public static final String STATE_SENDING = "SENDING";
+    public static final String STATE_SENT = "SENT";
+    public static final String STATE_FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "dedup_key", nullable = false, length = 150)
+    private String dedupKey;
+
+    @Column(nullable = false, length = 50)
+    private String type; // PAYMENT_SUCCESS, INVOICE
+
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(name = "points_earned")
+    private Integer pointsEarned;
+
+    @Column(nullable = false, length = 20)
+    private String state = STATE_PENDING; // PENDING, SENDING, SENT, FAILED
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "locked_at")
+    private LocalDateTime lockedAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
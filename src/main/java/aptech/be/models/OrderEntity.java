@@ -1,5 +1,6 @@
 package aptech.be.models;
 
+import aptech.be.services.OrderRevenueListener;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
@@ -13,7 +14,25 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@EntityListeners(OrderRevenueListener.class)
+@NamedEntityGraph(name = "OrderEntity.details",
+        attributeNodes = {
+                @NamedAttributeNode(value = "orderFoods", subgraph = "orderFoods"),
+                @NamedAttributeNode(value = "customer", subgraph = "customer"),
+                @NamedAttributeNode("shipper"),
+                @NamedAttributeNode("staff"),
+                @NamedAttributeNode("table")
+        },
+        subgraphs = {
+                @NamedSubgraph(name = "orderFoods", attributeNodes = @NamedAttributeNode("food")),
+                @NamedSubgraph(name = "customer", attributeNodes = @NamedAttributeNode("customerDetail"))
+        })
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_payment_order_code", columnList = "payment_order_code", unique = true),
+        @Index(name = "idx_orders_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_orders_status_created_at", columnList = "status, created_at"),
+        @Index(name = "idx_orders_customer_created_at", columnList = "customer_id, created_at")
+})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -67,8 +86,12 @@ public class OrderEntity {
     
     // Take-away specific fields
     private String paymentMethod; // CASH, QR_BANKING
+    @Column(name = "payment_order_code")
+    private Long paymentOrderCode; // orderCode gửi sang PayOS, dùng để tra cứu webhook/return
     private String billImageUrl; // For QR banking payment proof
     private LocalDateTime updatedAt; // Last update timestamp
+    @Column(name = "revenue_recorded_at")
+    private LocalDateTime revenueRecordedAt; // Thời điểm đơn được cộng vào daily_revenue_rollup
 
     // Voucher information
     private String voucherCode; // Mã voucher được áp dụng
@@ -331,6 +354,14 @@ public class OrderEntity {
         this.paymentMethod = paymentMethod;
     }
 
+    public Long getPaymentOrderCode() {
+        return paymentOrderCode;
+    }
+
+    public void setPaymentOrderCode(Long paymentOrderCode) {
+        this.paymentOrderCode = paymentOrderCode;
+    }
+
     public String getBillImageUrl() {
         return billImageUrl;
     }
@@ -347,6 +378,14 @@ public class OrderEntity {
         this.updatedAt = updatedAt;
     }
 
+    public LocalDateTime getRevenueRecordedAt() {
+        return revenueRecordedAt;
+    }
+
+    public void setRevenueRecordedAt(LocalDateTime revenueRecordedAt) {
+        this.revenueRecordedAt = revenueRecordedAt;
+    }
+
     public UserEntity getStaff() {
         return staff;
     }
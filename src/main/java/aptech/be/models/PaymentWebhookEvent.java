@@ -0,0 +1,67 @@
+package aptech.be.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Inbox webhook thanh toán: webhook được ghi lại và trả lời PayOS ngay, worker xử lý sau.
+ * delivery_key là unique nên PayOS gửi lại cùng 1 sự kiện chỉ tạo 1 dòng.
+ */
+@Entity
+@Table(name = "payment_webhook_inbox", indexes = {
+        @Index(name = "idx_payment_webhook_inbox_delivery_key", columnList = "delivery_key", unique = true),
+        @Index(name = "idx_payment_webhook_inbox_state", columnList = "state, next_attempt_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class PaymentWebhookEvent {
+    public static final String STATE_PENDING = "PENDING";
+    public static final String STATE_PROCESSING = "PROCESSING";
+    public static final String STATE_DONE = "DONE";
+    public static final String STATE_FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "delivery_key", nullable = false, length = 150)
+    private String deliveryKey; // PAYOS:{orderCode}:{status}
+
+    @Column(nullable = false, length = 30)
+    private String provider; // PAYOS
+
+    @Column(name = "order_code", length = 50)
+    private String orderCode;
+
+    @Column(name = "payment_status", length = 30)
+    private String paymentStatus;
+
+    @Column(columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false, length = 20)
+    private String state = STATE_PENDING; // PENDING, PROCESSING, DONE, FAILED
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "locked_at")
+    private LocalDateTime lockedAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
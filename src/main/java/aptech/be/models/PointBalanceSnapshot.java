@@ -0,0 +1,40 @@
+package aptech.be.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Số dư điểm đã cộng dồn từ các dòng point_ledger có snapshotted = true.
+ * Số dư hiện tại = balance + tổng delta của các dòng ledger chưa snapshot.
+ * last_ledger_id chỉ để tham khảo (id lớn nhất đã cộng vào); id không tăng theo thứ tự commit nên không dùng làm mốc.
+ */
+@Entity
+@Table(name = "point_balance_snapshot")
+@Getter
+@Setter
+@NoArgsConstructor
+public class PointBalanceSnapshot {
+    @Id
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    @Column(nullable = false)
+    private Long balance;
+
+    @Column(name = "last_ledger_id", nullable = false)
+    private Long lastLedgerId;
+
+    @Column(name = "snapshot_at", nullable = false)
+    private LocalDateTime snapshotAt;
+
+    public PointBalanceSnapshot(Long customerId) {
+        this.customerId = customerId;
+        this.balance = 0L;
+        this.lastLedgerId = 0L;
+        this.snapshotAt = LocalDateTime.now();
+    }
+}
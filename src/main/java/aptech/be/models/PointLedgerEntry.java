@@ -0,0 +1,54 @@
+package aptech.be.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sổ cái điểm (append-only): mỗi lần cộng/trừ điểm là 1 dòng.
+ * idempotency_key là unique (VD: ORDER:123, CLAIM_TOKEN:uuid) nên cùng 1 sự kiện không thể cộng điểm 2 lần.
+ * snapshotted = true khi delta của dòng đã được cộng vào point_balance_snapshot (cùng transaction với snapshot).
+ */
+@Entity
+@Table(name = "point_ledger", indexes = {
+        @Index(name = "idx_point_ledger_idempotency_key", columnList = "idempotency_key", unique = true),
+        @Index(name = "idx_point_ledger_customer_id", columnList = "customer_id, id"),
+        @Index(name = "idx_point_ledger_customer_snapshotted", columnList = "customer_id, snapshotted")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class PointLedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Column(nullable = false)
+    private Integer delta;
+
+    @Column(nullable = false, length = 50)
+    private String reason; // OPENING, ORDER, CLAIM_TOKEN, ...
+
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    private String idempotencyKey;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private Boolean snapshotted = false;
+
+    public PointLedgerEntry(Long customerId, Integer delta, String reason, String idempotencyKey) {
+        this.customerId = customerId;
+        this.delta = delta;
+        this.reason = reason;
+        this.idempotencyKey = idempotencyKey;
+        this.createdAt = LocalDateTime.now();
+    }
+}
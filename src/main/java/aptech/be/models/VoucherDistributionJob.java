@@ -0,0 +1,74 @@
+package aptech.be.models;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Job phát voucher hàng loạt chạy nền, xử lý theo từng lô customerId tăng dần.
+ * last_customer_id là con trỏ để chạy tiếp sau khi server khởi động lại.
+ */
+@Entity
+@Table(name = "voucher_distribution_jobs", indexes = {
+        @Index(name = "idx_voucher_distribution_jobs_voucher", columnList = "voucher_id"),
+        @Index(name = "idx_voucher_distribution_jobs_state", columnList = "state")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class VoucherDistributionJob {
+    public static final String MODE_ALL = "ALL";
+    public static final String MODE_TOP = "TOP";
+    public static final String MODE_SELECTED = "SELECTED";
+
+    public static final String STATE_PENDING = "PENDING";
+    public static final String STATE_RUNNING = "RUNNING";
+    public static final String STATE_COMPLETED = "COMPLETED";
+    public static final String STATE_FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "voucher_id", nullable = false)
+    private Long voucherId;
+
+    @Column(nullable = false, length = 20)
+    private String mode; // ALL, TOP, SELECTED
+
+    @Column(name = "customer_ids", columnDefinition = "TEXT")
+    private String customerIds; // TOP / SELECTED: danh sách id (phân tách bằng dấu phẩy, tăng dần)
+
+    @Column(nullable = false, length = 20)
+    private String state = STATE_PENDING;
+
+    @Column(name = "last_customer_id", nullable = false)
+    private Long lastCustomerId = 0L;
+
+    @Column(name = "total_candidates", nullable = false)
+    private Long totalCandidates = 0L;
+
+    @Column(name = "processed_count", nullable = false)
+    private Long processedCount = 0L;
+
+    @Column(name = "inserted_count", nullable = false)
+    private Long insertedCount = 0L;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_by")
+    private String createdBy;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
@@ -9,7 +9,9 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_sessions")
+@Table(name = "chat_sessions", indexes = {
+		@Index(name = "idx_chat_sessions_status_last_activity", columnList = "status, last_activity_at")
+})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -40,6 +42,10 @@ public class ChatSession {
 	@Column(name = "last_activity_at")
 	private LocalDateTime lastActivityAt;
 
+	// Lần gửi cảnh báo "sắp tự đóng" gần nhất; còn hiệu lực khi >= lastActivityAt
+	@Column(name = "warned_at")
+	private LocalDateTime warnedAt;
+
 	@Column(name = "rating")
 	private Integer rating; // 1-5 nullable
 
@@ -62,6 +68,8 @@ public class ChatSession {
 	public void setEndedAt(LocalDateTime endedAt) { this.endedAt = endedAt; }
 	public LocalDateTime getLastActivityAt() { return lastActivityAt; }
 	public void setLastActivityAt(LocalDateTime lastActivityAt) { this.lastActivityAt = lastActivityAt; }
+	public LocalDateTime getWarnedAt() { return warnedAt; }
+	public void setWarnedAt(LocalDateTime warnedAt) { this.warnedAt = warnedAt; }
 	public Integer getRating() { return rating; }
 	public void setRating(Integer rating) { this.rating = rating; }
 	public String getRatingNote() { return ratingNote; }
@@ -2,9 +2,11 @@ package aptech.be.repositories;
 
 import aptech.be.models.ClaimToken;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -17,8 +19,17 @@ public interface ClaimTokenRepository extends JpaRepository<ClaimToken, Long> {
     
     List<ClaimToken> findByClaimedByEmail(String email);
     
-    @Query("SELECT ct FROM ClaimToken ct WHERE ct.expiresAt < :now AND ct.claimed = false")
-    List<ClaimToken> findExpiredTokens(@Param("now") LocalDateTime now);
+    // Xóa 1 token khi tới hạn; trả về 0 nếu token đã được nhận / gia hạn / xóa trước đó
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ClaimToken ct WHERE ct.id = :id AND ct.claimed = false AND ct.expiresAt <= :now")
+    int deleteExpiredById(@Param("id") Long id, @Param("now") LocalDateTime now);
+    
+    // Dọn hàng loạt token hết hạn chưa nhận (lưới an toàn cho hẹn giờ bị mất khi restart)
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ClaimToken ct WHERE ct.expiresAt < :now AND ct.claimed = false")
+    int deleteExpiredUnclaimed(@Param("now") LocalDateTime now);
     
     @Query("SELECT ct FROM ClaimToken ct WHERE ct.claimed = false AND ct.expiresAt > :now")
     List<ClaimToken> findValidUnclaimedTokens(@Param("now") LocalDateTime now);
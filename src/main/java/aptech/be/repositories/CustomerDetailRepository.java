@@ -2,7 +2,21 @@ package aptech.be.repositories;
 
 import aptech.be.models.CustomerDetail;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface CustomerDetailRepository extends JpaRepository<CustomerDetail, Long> {
     CustomerDetail findByCustomerId(Long customerId);
+
+    // Cộng/trừ điểm nguyên tử; trả về 0 nếu không tìm thấy hoặc điểm sẽ bị âm
+    @Modifying
+    @Query("UPDATE CustomerDetail cd SET cd.point = cd.point + :delta WHERE cd.id = :detailId AND cd.point + :delta >= 0")
+    int addPoints(@Param("detailId") Long detailId, @Param("delta") int delta);
+
+    @Query("SELECT cd.point FROM CustomerDetail cd WHERE cd.id = :detailId")
+    Integer findPointById(@Param("detailId") Long detailId);
+
+    @Query("SELECT cd.point FROM CustomerDetail cd WHERE cd.customer.id = :customerId")
+    Integer findPointByCustomerId(@Param("customerId") Long customerId);
 }
@@ -1,12 +1,14 @@
 package aptech.be.repositories;
 
 import aptech.be.models.Customer;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,12 +18,40 @@ public interface CustomerRepository extends JpaRepository<Customer, Long> {
     List<Customer> findByIsActive(Boolean isActive); // Thêm method tìm theo active status
     
     // Dashboard Analytics Methods
-    @Query("SELECT COUNT(c) FROM Customer c WHERE EXISTS (SELECT 1 FROM CustomerDetail cd WHERE cd.customer = c AND CAST(cd.point AS integer) > 100)")
+    @Query("SELECT COUNT(c) FROM Customer c WHERE EXISTS (SELECT 1 FROM CustomerDetail cd WHERE cd.customer = c AND cd.point > 100)")
     long countVIPCustomers();
     
-    @Query("SELECT COALESCE(AVG(CAST(cd.point AS double)), 0) FROM CustomerDetail cd")
+    @Query("SELECT COALESCE(AVG(cd.point), 0) FROM CustomerDetail cd")
     double getAveragePointsPerCustomer();
     
     @Query("SELECT c FROM Customer c JOIN FETCH c.customerDetail")
     List<Customer> findAllWithDetail();
+
+    // Id khách theo lô (keyset theo id tăng dần) cho job phát voucher
+    @Query("SELECT c.id FROM Customer c WHERE c.id > :afterId ORDER BY c.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Lọc trong 1 query các khách đủ điều kiện nhận voucher: chưa có voucher này (chưa dùng) và số voucher còn hạn < giới hạn
+    @Query("SELECT c.id FROM Customer c WHERE c.id IN :customerIds " +
+           "AND NOT EXISTS (SELECT 1 FROM CustomerVoucher cv WHERE cv.customer = c AND cv.voucher.id = :voucherId AND cv.isUsed = false) " +
+           "AND (SELECT COUNT(cv2) FROM CustomerVoucher cv2 WHERE cv2.customer = c AND cv2.isUsed = false AND cv2.expiresAt > :now) < :maxVouchers " +
+           "ORDER BY c.id")
+    List<Long> findVoucherEligibleIdsIn(@Param("voucherId") Long voucherId, @Param("customerIds") Collection<Long> customerIds,
+                                        @Param("now") LocalDateTime now, @Param("maxVouchers") long maxVouchers);
+
+    // Top khách theo điểm: [customerId, point]
+    @Query("SELECT cd.customer.id, cd.point FROM CustomerDetail cd WHERE cd.customer IS NOT NULL " +
+           "ORDER BY cd.point DESC, cd.customer.id ASC")
+    List<Object[]> findTopCustomerPoints(Pageable pageable);
+
+    // Bảng xếp hạng VIP: thông tin khách + tổng hợp đơn hàng trong 1 query
+    // [id, fullName, email, phoneNumber, point, totalSpent, totalOrders, lastOrderDate, firstOrderDate]
+    @Query("SELECT c.id, c.fullName, c.email, cd.phoneNumber, cd.point, " +
+           "COALESCE(SUM(o.totalPrice), 0), COUNT(o), MAX(o.createdAt), MIN(o.createdAt) " +
+           "FROM Customer c JOIN c.customerDetail cd " +
+           "LEFT JOIN OrderEntity o ON o.customer = c " +
+           "AND (o.deliveryStatus = 'DELIVERED' OR o.status IN ('PAID','COMPLETED') OR o.confirmStatus = 'CONFIRMED') " +
+           "WHERE c.id IN :customerIds " +
+           "GROUP BY c.id, c.fullName, c.email, cd.phoneNumber, cd.point")
+    List<Object[]> getVipLeaderboardRows(@Param("customerIds") Collection<Long> customerIds);
 }
@@ -3,12 +3,15 @@ package aptech.be.repositories;
 import aptech.be.models.Customer;
 import aptech.be.models.CustomerVoucher;
 import aptech.be.models.Voucher;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,9 +39,25 @@ public interface CustomerVoucherRepository extends JpaRepository<CustomerVoucher
     @Query("SELECT cv FROM CustomerVoucher cv WHERE cv.expiresAt < :now AND cv.isUsed = false")
     List<CustomerVoucher> findExpiredVouchers(@Param("now") LocalDateTime now);
     
+    // Id voucher hết hạn theo lô (dọn dẹp)
+    @Query("SELECT cv.id FROM CustomerVoucher cv WHERE cv.expiresAt < :now AND cv.isUsed = false ORDER BY cv.id")
+    List<Long> findExpiredIds(@Param("now") LocalDateTime now, Pageable pageable);
+    
+    @Modifying
+    @Query("DELETE FROM CustomerVoucher cv WHERE cv.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+    
     // Tìm voucher đã sử dụng
     List<CustomerVoucher> findByIsUsedTrueOrderByUsedAtDesc();
     
+    // Đánh dấu đã dùng, chỉ khi chưa dùng (trả về 0 nếu đã bị dùng bởi request khác)
+    @Modifying
+    @Query("UPDATE CustomerVoucher cv SET cv.isUsed = true, cv.usedAt = :now, cv.orderId = :orderId WHERE cv.id = :id AND cv.isUsed = false")
+    int markUsed(@Param("id") Long id, @Param("orderId") Long orderId, @Param("now") LocalDateTime now);
+    
+    // Voucher của khách theo voucherId (chưa dùng, còn hạn) - dùng khi checkout
+    Optional<CustomerVoucher> findFirstByCustomerIdAndVoucherIdAndIsUsedFalseAndExpiresAtAfterOrderByExpiresAtAsc(Long customerId, Long voucherId, LocalDateTime now);
+    
     // Tìm voucher của khách hàng theo code
     @Query("SELECT cv FROM CustomerVoucher cv WHERE cv.customer.id = :customerId AND cv.voucher.code = :code AND cv.isUsed = false AND cv.expiresAt > :now")
     Optional<CustomerVoucher> findValidVoucherByCustomerIdAndCode(@Param("customerId") Long customerId, @Param("code") String code, @Param("now") LocalDateTime now);
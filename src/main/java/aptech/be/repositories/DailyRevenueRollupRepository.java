@@ -0,0 +1,49 @@
+package aptech.be.repositories;
+
+import aptech.be.models.DailyRevenueRollup;
+import aptech.be.models.DailyRevenueRollupId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface DailyRevenueRollupRepository extends JpaRepository<DailyRevenueRollup, DailyRevenueRollupId> {
+
+    // Cộng dồn nguyên tử vào dòng đã có; trả về 0 nếu dòng chưa tồn tại
+    @Modifying
+    @Query("UPDATE DailyRevenueRollup r SET r.revenue = r.revenue + :amount, r.orderCount = r.orderCount + :count, " +
+           "r.updatedAt = :now WHERE r.id.revenueDate = :revenueDate AND r.id.orderType = :orderType " +
+           "AND r.id.paymentMethod = :paymentMethod")
+    int increment(@Param("revenueDate") LocalDate revenueDate, @Param("orderType") String orderType,
+                  @Param("paymentMethod") String paymentMethod, @Param("amount") Double amount,
+                  @Param("count") Long count, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM DailyRevenueRollup r WHERE r.id.revenueDate BETWEEN :fromDate AND :toDate")
+    int deleteByRevenueDateBetween(@Param("fromDate") LocalDate fromDate, @Param("toDate") LocalDate toDate);
+
+    // [orderType, revenue, orderCount]
+    @Query("SELECT r.id.orderType, COALESCE(SUM(r.revenue), 0), COALESCE(SUM(r.orderCount), 0) " +
+           "FROM DailyRevenueRollup r WHERE r.id.revenueDate BETWEEN :fromDate AND :toDate GROUP BY r.id.orderType")
+    List<Object[]> getTotalsByOrderType(@Param("fromDate") LocalDate fromDate, @Param("toDate") LocalDate toDate);
+
+    // [date, orderType, revenue, orderCount] - cùng dạng với OrderRepository.getRevenueByDateAndOrderType
+    @Query("SELECT r.id.revenueDate, r.id.orderType, COALESCE(SUM(r.revenue), 0), COALESCE(SUM(r.orderCount), 0) " +
+           "FROM DailyRevenueRollup r WHERE r.id.revenueDate BETWEEN :fromDate AND :toDate " +
+           "GROUP BY r.id.revenueDate, r.id.orderType")
+    List<Object[]> getRevenueByDateAndOrderType(@Param("fromDate") LocalDate fromDate, @Param("toDate") LocalDate toDate);
+
+    // [year, month, orderType, revenue, orderCount] - cùng dạng với OrderRepository.getRevenueByMonthAndOrderType
+    @Query("SELECT year(r.id.revenueDate), month(r.id.revenueDate), r.id.orderType, COALESCE(SUM(r.revenue), 0), " +
+           "COALESCE(SUM(r.orderCount), 0) FROM DailyRevenueRollup r WHERE r.id.revenueDate BETWEEN :fromDate AND :toDate " +
+           "GROUP BY year(r.id.revenueDate), month(r.id.revenueDate), r.id.orderType")
+    List<Object[]> getRevenueByMonthAndOrderType(@Param("fromDate") LocalDate fromDate, @Param("toDate") LocalDate toDate);
+
+    @Query("SELECT COALESCE(SUM(r.revenue), 0) FROM DailyRevenueRollup r")
+    BigDecimal getTotalRevenueAllTime();
+}
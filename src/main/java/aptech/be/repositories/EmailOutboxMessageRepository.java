@@ -0,0 +1,43 @@
+package aptech.be.repositories;
+
+import aptech.be.models.EmailOutboxMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface EmailOutboxMessageRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    boolean existsByDedupKey(String dedupKey);
+
+    @Query("SELECT m.id FROM EmailOutboxMessage m WHERE m.state = 'PENDING' AND m.nextAttemptAt <= :now ORDER BY m.id")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Nhận gửi 1 email; trả về 0 nếu node khác đã nhận
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutboxMessage m SET m.state = 'SENDING', m.lockedAt = :now, m.attempts = m.attempts + 1 " +
+           "WHERE m.id = :id AND m.state = 'PENDING'")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // Trả lại email bị kẹt ở SENDING (node chết giữa chừng)
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutboxMessage m SET m.state = 'PENDING', m.lockedAt = NULL " +
+           "WHERE m.state = 'SENDING' AND m.lockedAt < :lockedBefore")
+    int releaseStale(@Param("lockedBefore") LocalDateTime lockedBefore);
+
+    // Trả lại email vừa nhận nhưng chưa gửi (worker pool đầy); lần nhận đó không tính là 1 lần thử
+    @Modifying
+    @Transactional
+    @Query("UPDATE EmailOutboxMessage m SET m.state = 'PENDING', m.lockedAt = NULL, m.attempts = m.attempts - 1 " +
+           "WHERE m.id = :id AND m.state = 'SENDING'")
+    int release(@Param("id") Long id);
+
+    long countByState(String state);
+}
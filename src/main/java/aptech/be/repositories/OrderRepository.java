@@ -2,7 +2,9 @@ package aptech.be.repositories;
 
 import aptech.be.models.Customer;
 import aptech.be.models.OrderEntity;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -11,7 +13,7 @@ import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
-public interface OrderRepository extends JpaRepository<OrderEntity,Long> {
+public interface OrderRepository extends JpaRepository<OrderEntity,Long>, OrderRepositoryCustom {
     List<OrderEntity> findByStatus(String status);
     List<OrderEntity> findByCustomerId(Long customerId);
     List<OrderEntity> findByConfirmStatus(String confirmStatus);
@@ -20,6 +22,26 @@ public interface OrderRepository extends JpaRepository<OrderEntity,Long> {
 
     Optional<OrderEntity> findFirstByCustomerAndConfirmStatus(Customer customer, String confirmStatus);
 
+    // Danh sách kèm orderFoods/food, customer, shipper, staff, table trong 1 query (tránh N+1)
+    @EntityGraph("OrderEntity.details")
+    @Query("SELECT o FROM OrderEntity o")
+    List<OrderEntity> findAllWithDetails();
+
+    @EntityGraph("OrderEntity.details")
+    List<OrderEntity> findWithDetailsByStatus(String status);
+
+    @EntityGraph("OrderEntity.details")
+    List<OrderEntity> findWithDetailsByCustomerId(Long customerId);
+
+    @EntityGraph("OrderEntity.details")
+    List<OrderEntity> findWithDetailsByOrderTypeOrderByCreatedAtDesc(String orderType);
+
+    @EntityGraph("OrderEntity.details")
+    List<OrderEntity> findWithDetailsByStatusOrderByCreatedAtDesc(String status);
+
+    // PayOS: tra cứu theo orderCode đã lưu (unique index)
+    Optional<OrderEntity> findByPaymentOrderCode(Long paymentOrderCode);
+
     List<OrderEntity> findByStatusAndCreatedAtBefore(String status, LocalDateTime before);
 
     List<OrderEntity> findByCustomerIdAndStatus(Long customerId, String status);
@@ -88,6 +110,38 @@ public interface OrderRepository extends JpaRepository<OrderEntity,Long> {
                                             @Param("startDate") LocalDateTime startDate,
                                             @Param("endDate") LocalDateTime endDate);
 
+    // Time-series doanh thu: 1 query GROUP BY bucket, orderType (cùng điều kiện với getTotalRevenueByDateRange)
+    @Query("SELECT cast(o.createdAt as LocalDate), extract(hour from o.createdAt), o.orderType, COALESCE(SUM(o.totalPrice), 0), COUNT(o) " +
+           "FROM OrderEntity o WHERE (o.deliveryStatus = 'DELIVERED' OR o.status IN ('PAID','COMPLETED')) " +
+           "AND o.createdAt >= :startDate AND o.createdAt < :endDate " +
+           "GROUP BY cast(o.createdAt as LocalDate), extract(hour from o.createdAt), o.orderType")
+    List<Object[]> getRevenueByHourAndOrderType(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+
+    // Đánh dấu đơn đã được cộng vào daily_revenue_rollup; trả về 0 nếu đã cộng hoặc chưa đủ điều kiện doanh thu
+    @Modifying
+    @Query("UPDATE OrderEntity o SET o.revenueRecordedAt = :now WHERE o.id = :orderId AND o.revenueRecordedAt IS NULL " +
+           "AND (o.deliveryStatus = 'DELIVERED' OR o.status IN ('PAID','COMPLETED'))")
+    int markRevenueRecorded(@Param("orderId") Long orderId, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE OrderEntity o SET o.revenueRecordedAt = :now WHERE o.revenueRecordedAt IS NULL " +
+           "AND (o.deliveryStatus = 'DELIVERED' OR o.status IN ('PAID','COMPLETED')) " +
+           "AND o.createdAt >= :startDate AND o.createdAt < :endDate")
+    int markRevenueRecordedBetween(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate,
+                                   @Param("now") LocalDateTime now);
+
+    // Dữ liệu gốc để đối soát rollup: [date, orderType, paymentMethod, revenue, orderCount]
+    @Query("SELECT cast(o.createdAt as LocalDate), o.orderType, o.paymentMethod, COALESCE(SUM(o.totalPrice), 0), COUNT(o) " +
+           "FROM OrderEntity o WHERE o.revenueRecordedAt IS NOT NULL " +
+           "AND (o.status IS NULL OR o.status NOT IN ('CANCELLED','REJECTED')) " +
+           "AND o.createdAt >= :startDate AND o.createdAt < :endDate " +
+           "GROUP BY cast(o.createdAt as LocalDate), o.orderType, o.paymentMethod")
+    List<Object[]> getRevenueRollupRows(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+
+    // Số khách hàng có đơn trong khoảng thời gian
+    @Query("SELECT COUNT(DISTINCT o.customer) FROM OrderEntity o WHERE o.createdAt >= :startDate AND o.createdAt < :endDate")
+    long getActiveCustomerCountBetween(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+
     // New customers since date based on first order time
     @Query("SELECT COUNT(DISTINCT o.customer) FROM OrderEntity o WHERE o.createdAt > :since")
     long getNewCustomerCountSince(@Param("since") LocalDateTime since);
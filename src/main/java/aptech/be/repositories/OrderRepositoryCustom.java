@@ -0,0 +1,17 @@
+package aptech.be.repositories;
+
+import aptech.be.dto.OrderSummaryView;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface OrderRepositoryCustom {
+
+    /**
+     * Keyset pagination (createdAt DESC, id DESC) trả về projection, không load entity graph.
+     * Filter null bị bỏ khỏi câu truy vấn; cursorCreatedAt/cursorId null = trang đầu.
+     */
+    List<OrderSummaryView> findOrderSummaries(String status, String orderType, Long customerId,
+                                              LocalDateTime fromDate, LocalDateTime toDate,
+                                              LocalDateTime cursorCreatedAt, Long cursorId, int limit);
+}
@@ -0,0 +1,88 @@
+package aptech.be.repositories;
+
+import aptech.be.dto.OrderSummaryView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Câu truy vấn được ghép chỉ với các filter có giá trị (mỗi tổ hợp filter là 1 câu riêng) thay vì
+ * "(:x IS NULL OR ...)": với generic plan của PostgreSQL, dạng OR đó không dùng được index (status, created_at),
+ * (customer_id, created_at), (created_at, id) để quét theo khoảng. Cursor viết dạng so sánh bộ (createdAt, id) < (..).
+ */
+public class OrderRepositoryImpl implements OrderRepositoryCustom {
+
+    private static final String SELECT =
+            "SELECT o.id AS id, o.orderNumber AS orderNumber, o.orderType AS orderType, o.status AS status, " +
+            "o.confirmStatus AS confirmStatus, o.deliveryStatus AS deliveryStatus, o.paymentMethod AS paymentMethod, " +
+            "o.totalPrice AS totalPrice, o.createdAt AS createdAt, c.id AS customerId, c.fullName AS customerName, " +
+            "t.id AS tableId, t.number AS tableNumber " +
+            "FROM OrderEntity o LEFT JOIN o.customer c LEFT JOIN o.table t " +
+            // Đơn không có createdAt không có vị trí trong thứ tự keyset → loại khỏi danh sách
+            "WHERE o.createdAt IS NOT NULL";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
+
+    @Override
+    public List<OrderSummaryView> findOrderSummaries(String status, String orderType, Long customerId,
+                                                     LocalDateTime fromDate, LocalDateTime toDate,
+                                                     LocalDateTime cursorCreatedAt, Long cursorId, int limit) {
+        StringBuilder jpql = new StringBuilder(SELECT);
+        Map<String, Object> params = new HashMap<>();
+        if (status != null) {
+            jpql.append(" AND o.status = :status");
+            params.put("status", status);
+        }
+        if (orderType != null) {
+            jpql.append(" AND o.orderType = :orderType");
+            params.put("orderType", orderType);
+        }
+        if (customerId != null) {
+            jpql.append(" AND o.customer.id = :customerId");
+            params.put("customerId", customerId);
+        }
+        if (fromDate != null) {
+            jpql.append(" AND o.createdAt >= :fromDate");
+            params.put("fromDate", fromDate);
+        }
+        if (toDate != null) {
+            jpql.append(" AND o.createdAt < :toDate");
+            params.put("toDate", toDate);
+        }
+        if (cursorCreatedAt != null && cursorId != null) {
+            jpql.append(" AND (o.createdAt, o.id) < (:cursorCreatedAt, :cursorId)");
+            params.put("cursorCreatedAt", cursorCreatedAt);
+            params.put("cursorId", cursorId);
+        }
+        jpql.append(" ORDER BY o.createdAt DESC, o.id DESC");
+
+        TypedQuery<Tuple> query = entityManager.createQuery(jpql.toString(), Tuple.class);
+        params.forEach(query::setParameter);
+        query.setMaxResults(limit);
+
+        return query.getResultList().stream()
+                .map(this::toView)
+                .collect(Collectors.toList());
+    }
+
+    private OrderSummaryView toView(Tuple tuple) {
+        Map<String, Object> values = new HashMap<>();
+        for (TupleElement<?> element : tuple.getElements()) {
+            values.put(element.getAlias(), tuple.get(element));
+        }
+        return projectionFactory.createProjection(OrderSummaryView.class, values);
+    }
+}
@@ -5,12 +5,18 @@ import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface OrderStatusHistoryRepository extends JpaRepository<OrderStatusHistory, Long> {
 
     List<OrderStatusHistory> findByOrderIdOrderByChangedAtAsc(Long orderId);
+
+    // Lấy lịch sử của nhiều đơn trong 1 query IN (...), group theo order ở tầng gọi
+    @Query("SELECT h FROM OrderStatusHistory h WHERE h.order.id IN :orderIds ORDER BY h.changedAt ASC")
+    List<OrderStatusHistory> findByOrderIdsOrderByChangedAtAsc(@Param("orderIds") Collection<Long> orderIds);
     @Modifying
     @Transactional
     @Query("DELETE FROM OrderStatusHistory o WHERE o.order.id = :orderId")
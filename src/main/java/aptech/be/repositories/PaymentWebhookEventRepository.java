@@ -0,0 +1,46 @@
+package aptech.be.repositories;
+
+import aptech.be.models.PaymentWebhookEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface PaymentWebhookEventRepository extends JpaRepository<PaymentWebhookEvent, Long> {
+
+    boolean existsByDeliveryKey(String deliveryKey);
+
+    @Query("SELECT e.id FROM PaymentWebhookEvent e WHERE e.state = 'PENDING' AND e.nextAttemptAt <= :now ORDER BY e.id")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Nhận xử lý 1 sự kiện; trả về 0 nếu worker khác đã nhận
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentWebhookEvent e SET e.state = 'PROCESSING', e.lockedAt = :now, e.attempts = e.attempts + 1 " +
+           "WHERE e.id = :id AND e.state = 'PENDING'")
+    int claim(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // Trả lại sự kiện bị kẹt ở PROCESSING (worker chết giữa chừng)
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentWebhookEvent e SET e.state = 'PENDING', e.lockedAt = NULL " +
+           "WHERE e.state = 'PROCESSING' AND e.lockedAt < :lockedBefore")
+    int releaseStale(@Param("lockedBefore") LocalDateTime lockedBefore);
+
+    // Trả lại sự kiện vừa nhận nhưng chưa xử lý (worker pool đầy); lần nhận đó không tính là 1 lần thử
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentWebhookEvent e SET e.state = 'PENDING', e.lockedAt = NULL, e.attempts = e.attempts - 1 " +
+           "WHERE e.id = :id AND e.state = 'PROCESSING'")
+    int release(@Param("id") Long id);
+
+    long countByState(String state);
+
+    @Query("SELECT MIN(e.receivedAt) FROM PaymentWebhookEvent e WHERE e.state IN ('PENDING','PROCESSING')")
+    LocalDateTime findOldestUnprocessedReceivedAt();
+}
@@ -0,0 +1,7 @@
+package aptech.be.repositories;
+
+import aptech.be.models.PointBalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PointBalanceSnapshotRepository extends JpaRepository<PointBalanceSnapshot, Long> {
+}
@@ -0,0 +1,44 @@
+package aptech.be.repositories;
+
+import aptech.be.models.PointLedgerEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface PointLedgerRepository extends JpaRepository<PointLedgerEntry, Long> {
+
+    boolean existsByIdempotencyKey(String idempotencyKey);
+
+    // Số dư = snapshot + các dòng chưa snapshot, trong 1 câu lệnh để không lệch khi job snapshot commit giữa chừng
+    @Query(value = "SELECT COALESCE((SELECT s.balance FROM point_balance_snapshot s WHERE s.customer_id = :customerId), 0) " +
+                   "+ COALESCE((SELECT SUM(l.delta) FROM point_ledger l WHERE l.customer_id = :customerId AND l.snapshotted = FALSE), 0)",
+           nativeQuery = true)
+    Long findBalance(@Param("customerId") Long customerId);
+
+    // Chỉ thấy dòng đã commit; dòng của transaction đang chạy được lấy ở lần snapshot sau
+    @Query("SELECT l.id FROM PointLedgerEntry l WHERE l.snapshotted = false ORDER BY l.id")
+    List<Long> findUnsnapshottedIds(Pageable pageable);
+
+    // Trả về số dòng thực sự được đánh dấu; ít hơn ids.size() nghĩa là node khác đã snapshot cùng lúc
+    @Modifying
+    @Query("UPDATE PointLedgerEntry l SET l.snapshotted = true WHERE l.id IN :ids AND l.snapshotted = false")
+    int markSnapshotted(@Param("ids") Collection<Long> ids);
+
+    // [customerId, SUM(delta), MAX(id)] cho các dòng trong ids
+    @Query("SELECT l.customerId, SUM(l.delta), MAX(l.id) FROM PointLedgerEntry l WHERE l.id IN :ids GROUP BY l.customerId")
+    List<Object[]> sumDeltaByCustomerIn(@Param("ids") Collection<Long> ids);
+
+    // Số dư mở đầu = điểm hiện có cho khách chưa có dòng ledger nào (dữ liệu trước khi có sổ cái)
+    @Modifying
+    @Query("INSERT INTO PointLedgerEntry (customerId, delta, reason, idempotencyKey, createdAt) " +
+           "SELECT cd.customer.id, cd.point, 'OPENING', concat('OPENING:', cast(cd.customer.id as String)), :now " +
+           "FROM CustomerDetail cd WHERE cd.customer IS NOT NULL AND cd.point <> 0 " +
+           "AND NOT EXISTS (SELECT 1 FROM PointLedgerEntry l WHERE l.customerId = cd.customer.id)")
+    int insertOpeningBalances(@Param("now") LocalDateTime now);
+}
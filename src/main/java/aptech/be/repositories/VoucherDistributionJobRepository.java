@@ -0,0 +1,14 @@
+package aptech.be.repositories;
+
+import aptech.be.models.VoucherDistributionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface VoucherDistributionJobRepository extends JpaRepository<VoucherDistributionJob, Long> {
+
+    List<VoucherDistributionJob> findByStateInOrderByIdAsc(Collection<String> states);
+
+    List<VoucherDistributionJob> findByVoucherIdOrderByIdDesc(Long voucherId);
+}
@@ -1,12 +1,15 @@
 package aptech.be.repositories;
 
 import aptech.be.models.Voucher;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,10 +33,28 @@ public interface VoucherRepository extends JpaRepository<Voucher, Long> {
     @Query("SELECT v FROM Voucher v WHERE v.expiresAt IS NOT NULL AND v.expiresAt < :now")
     List<Voucher> findExpiredVouchers(@Param("now") LocalDateTime now);
     
+    // Id voucher còn active nhưng đã hết hạn / hết lượt, theo lô (dọn dẹp)
+    @Query("SELECT v.id FROM Voucher v WHERE v.isActive = true AND " +
+           "((v.expiresAt IS NOT NULL AND v.expiresAt < :now) OR v.usedQuantity >= v.totalQuantity) ORDER BY v.id")
+    List<Long> findUnavailableActiveIds(@Param("now") LocalDateTime now, Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE Voucher v SET v.isActive = false WHERE v.id IN :ids")
+    int deactivateByIdIn(@Param("ids") Collection<Long> ids);
+    
     // Tìm voucher đã hết số lượng
     @Query("SELECT v FROM Voucher v WHERE v.usedQuantity >= v.totalQuantity")
     List<Voucher> findFullyUsedVouchers();
     
+    // Trừ 1 lượt nguyên tử, chỉ khi còn lượt (trả về 0 nếu đã hết)
+    @Modifying
+    @Query("UPDATE Voucher v SET v.usedQuantity = v.usedQuantity + 1 WHERE v.id = :id AND v.usedQuantity < v.totalQuantity")
+    int incrementUsedQuantity(@Param("id") Long id);
+    
+    // Số lượt còn lại
+    @Query("SELECT v.totalQuantity - v.usedQuantity FROM Voucher v WHERE v.id = :id")
+    Integer findRemainingQuantity(@Param("id") Long id);
+    
     // Kiểm tra code đã tồn tại chưa
     boolean existsByCode(String code);
     
@@ -1,6 +1,7 @@
 package aptech.be.repositories.chat;
 
 import aptech.be.models.chat.ChatSession;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -18,6 +19,23 @@ public interface ChatSessionRepository extends JpaRepository<ChatSession, Long>
 	@Query("DELETE FROM ChatSession s WHERE s.sessionId = :sessionId")
 	void deleteBySessionId(@Param("sessionId") String sessionId);
 
-	@Query("SELECT s FROM ChatSession s WHERE s.status = 'active' AND s.lastActivityAt < :threshold")
-	List<ChatSession> findActiveSessionsIdleBefore(@Param("threshold") LocalDateTime threshold);
+	// Phiên cần đóng: range trên index (status, last_activity_at)
+	@Query("SELECT s.sessionId FROM ChatSession s WHERE s.status = 'active' AND s.lastActivityAt < :threshold ORDER BY s.lastActivityAt")
+	List<String> findActiveSessionIdsIdleBefore(@Param("threshold") LocalDateTime threshold, Pageable pageable);
+
+	// Phiên cần cảnh báo: idle trong [closeThreshold, warnThreshold) và chưa được cảnh báo kể từ lần hoạt động cuối
+	@Query("SELECT s FROM ChatSession s WHERE s.status = 'active' AND s.lastActivityAt < :warnThreshold " +
+		   "AND s.lastActivityAt >= :closeThreshold AND (s.warnedAt IS NULL OR s.warnedAt < s.lastActivityAt) " +
+		   "ORDER BY s.lastActivityAt")
+	List<ChatSession> findSessionsToWarn(@Param("warnThreshold") LocalDateTime warnThreshold,
+										 @Param("closeThreshold") LocalDateTime closeThreshold,
+										 Pageable pageable);
+
+	@Modifying
+	@Query("UPDATE ChatSession s SET s.status = 'ended', s.endedAt = :now WHERE s.sessionId IN :sessionIds AND s.status = 'active'")
+	int closeActiveBySessionIdIn(@Param("sessionIds") List<String> sessionIds, @Param("now") LocalDateTime now);
+
+	@Modifying
+	@Query("UPDATE ChatSession s SET s.warnedAt = :now WHERE s.id IN :ids")
+	int markWarned(@Param("ids") List<Long> ids, @Param("now") LocalDateTime now);
 } 
\ No newline at end of file
@@ -10,9 +10,13 @@ import aptech.be.repositories.CustomerDetailRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -30,10 +34,17 @@ public class ClaimTokenService {
     
     @Autowired
     private CustomerDetailRepository customerDetailRepository;
+
+    @Autowired
+    private CustomerPointService customerPointService;
     
     @Autowired
     private EmailService emailService;
     
+    // Xóa token chưa nhận đúng lúc hết hạn thay vì quét bảng mỗi giờ
+    @Autowired
+    private ExpiryScheduler expiryScheduler;
+    
     private final ObjectMapper objectMapper = new ObjectMapper();
     
     /**
@@ -73,6 +84,11 @@ public class ClaimTokenService {
         
         ClaimToken savedToken = claimTokenRepository.save(token);
         
+        // Hẹn giờ sau commit: rollback thì không có token để xóa
+        Long tokenId = savedToken.getId();
+        LocalDateTime expiresAt = savedToken.getExpiresAt();
+        afterCommit(() -> scheduleExpiry(tokenId, expiresAt));
+        
         System.out.println("[CLAIM TOKEN] Created token: " + savedToken.getToken() + 
                          " for " + orders.size() + " orders, " + pointsToEarn + " points");
         
@@ -93,7 +109,7 @@ public class ClaimTokenService {
             .orElseThrow(() -> new RuntimeException("Email không tồn tại trong hệ thống"));
         
         // Add points to customer
-        int pointsAdded = addPointsToCustomer(customer, token.getPointsToEarn());
+        int pointsAdded = addPointsToCustomer(customer, token);
         
         // Mark as claimed
         markTokenAsClaimed(token, email);
@@ -126,7 +142,7 @@ public class ClaimTokenService {
             .orElseThrow(() -> new RuntimeException("Customer not found: " + email));
         
         // Add points to customer
-        int pointsAdded = addPointsToCustomer(customer, token.getPointsToEarn());
+        int pointsAdded = addPointsToCustomer(customer, token);
         
         // Mark as claimed
         markTokenAsClaimed(token, email);
@@ -174,7 +190,9 @@ public class ClaimTokenService {
     /**
      * Add points to customer
      */
-    private int addPointsToCustomer(Customer customer, int pointsToAdd) {
+    private int addPointsToCustomer(Customer customer, ClaimToken token) {
+        int pointsToAdd = token.getPointsToEarn();
+        Integer newPoints;
         try {
             CustomerDetail customerDetail = customer.getCustomerDetail();
             if (customerDetail == null) {
@@ -183,53 +201,34 @@ public class ClaimTokenService {
                 customerDetail = createDefaultCustomerDetail(customer);
             }
             
-            // Get current points
-            String currentPointsStr = customerDetail.getPoint();
-            int currentPoints = 0;
-            if (currentPointsStr != null && !currentPointsStr.isEmpty()) {
-                try {
-                    currentPoints = Integer.parseInt(currentPointsStr);
-                } catch (NumberFormatException e) {
-                    currentPoints = 0;
-                }
-            }
-            
-            // Add new points
-            int newPoints = currentPoints + pointsToAdd;
-            customerDetail.setPoint(String.valueOf(newPoints));
-            
-            // Save customer detail
-            customerDetailRepository.save(customerDetail);
-            
-            System.out.println("[POINTS] Added " + pointsToAdd + " points to customer " + customer.getId() + 
-                             ". Total points: " + newPoints);
-            
-            return pointsToAdd;
+            // Cộng điểm nguyên tử, idempotent theo claim token
+            newPoints = customerPointService.addPoints(customerDetail, pointsToAdd,
+                    CustomerPointService.REASON_CLAIM_TOKEN, CustomerPointService.claimTokenKey(token.getToken()));
         } catch (Exception e) {
             System.err.println("[POINTS ERROR] Failed to add points: " + e.getMessage());
             throw new RuntimeException("Failed to add points to customer");
         }
+        if (newPoints == null) {
+            throw new RuntimeException("Đơn hàng này đã được nhận điểm trước đó.");
+        }
+
+        System.out.println("[POINTS] Added " + pointsToAdd + " points to customer " + customer.getId() + 
+                         ". Total points: " + newPoints);
+        
+        return pointsToAdd;
     }
     
     /**
      * Get current total points for customer
      */
     private int getCurrentTotalPoints(Customer customer) {
-        try {
-            CustomerDetail customerDetail = customer.getCustomerDetail();
-            if (customerDetail == null) {
-                // Auto-create CustomerDetail if not exists
-                System.out.println("[AUTO-CREATE] Creating CustomerDetail for getCurrentTotalPoints: " + customer.getId());
-                customerDetail = createDefaultCustomerDetail(customer);
-            }
-            
-            if (customerDetail.getPoint() == null || customerDetail.getPoint().isEmpty()) {
-                return 0;
-            }
-            return Integer.parseInt(customerDetail.getPoint());
-        } catch (NumberFormatException e) {
-            return 0;
+        CustomerDetail customerDetail = customer.getCustomerDetail();
+        if (customerDetail == null) {
+            // Auto-create CustomerDetail if not exists
+            System.out.println("[AUTO-CREATE] Creating CustomerDetail for getCurrentTotalPoints: " + customer.getId());
+            customerDetail = createDefaultCustomerDetail(customer);
         }
+        return customerPointService.getPoints(customerDetail);
     }
     
     /**
@@ -239,7 +238,7 @@ public class ClaimTokenService {
         try {
             CustomerDetail customerDetail = new CustomerDetail();
             customerDetail.setCustomer(customer);
-            customerDetail.setPoint("0"); // Start with 0 points
+            customerDetail.setPoint(0); // Start with 0 points
             customerDetail.setPhoneNumber(null); // Will be filled later
             customerDetail.setVoucher(null); // No vouchers initially
             
@@ -266,21 +265,62 @@ public class ClaimTokenService {
         token.setClaimedByEmail(email);
         token.setClaimedAt(LocalDateTime.now());
         claimTokenRepository.save(token);
+        expiryScheduler.cancel(expiryKey(token.getId()));
+    }
+    
+    /**
+     * Hẹn lại giờ xóa cho token còn hiệu lực khi khởi động (hẹn giờ chỉ nằm trong bộ nhớ)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rescheduleExpiries() {
+        try {
+            List<ClaimToken> tokens = claimTokenRepository.findValidUnclaimedTokens(LocalDateTime.now());
+            tokens.forEach(token -> scheduleExpiry(token.getId(), token.getExpiresAt()));
+            if (!tokens.isEmpty()) {
+                System.out.println("[CLAIM TOKEN] Scheduled expiry for " + tokens.size() + " unclaimed tokens");
+            }
+        } catch (Exception e) {
+            System.err.println("[CLAIM TOKEN ERROR] Failed to schedule token expiries: " + e.getMessage());
+        }
     }
     
     /**
-     * Clean up expired tokens (runs every hour)
+     * Lưới an toàn: xóa hàng loạt token hết hạn mà hẹn giờ bỏ sót (node tắt giữa chừng...), chạy mỗi 6 giờ
      */
-    @Scheduled(fixedRate = 3600000) // 1 hour
+    @Scheduled(fixedRate = 21600000) // 6 hours
     public void cleanupExpiredTokens() {
         try {
-            List<ClaimToken> expiredTokens = claimTokenRepository.findExpiredTokens(LocalDateTime.now());
-            if (!expiredTokens.isEmpty()) {
-                claimTokenRepository.deleteAll(expiredTokens);
-                System.out.println("[CLEANUP] Deleted " + expiredTokens.size() + " expired claim tokens");
+            int deleted = claimTokenRepository.deleteExpiredUnclaimed(LocalDateTime.now());
+            if (deleted > 0) {
+                System.out.println("[CLEANUP] Deleted " + deleted + " expired claim tokens");
             }
         } catch (Exception e) {
             System.err.println("[CLEANUP ERROR] Failed to cleanup expired tokens: " + e.getMessage());
         }
     }
+    
+    private void scheduleExpiry(Long tokenId, LocalDateTime expiresAt) {
+        expiryScheduler.schedule(expiryKey(tokenId), expiresAt, () -> {
+            if (claimTokenRepository.deleteExpiredById(tokenId, LocalDateTime.now()) > 0) {
+                System.out.println("[CLAIM TOKEN] Expired token " + tokenId);
+            }
+        });
+    }
+    
+    private static String expiryKey(Long tokenId) {
+        return "claim-token:" + tokenId;
+    }
+    
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
 } 
\ No newline at end of file
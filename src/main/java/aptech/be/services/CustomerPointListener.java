@@ -0,0 +1,50 @@
+package aptech.be.services;
+
+import aptech.be.models.CustomerDetail;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Đồng bộ bảng xếp hạng VIP trong bộ nhớ khi CustomerDetail được tạo / xóa.
+ * Thay đổi điểm đi qua UPDATE nguyên tử nên được CustomerPointService báo trực tiếp.
+ */
+@Component
+public class CustomerPointListener {
+
+    @Autowired
+    @Lazy
+    private VipLeaderboardService vipLeaderboardService;
+
+    @PostPersist
+    public void onCustomerDetailSaved(CustomerDetail detail) {
+        if (detail.getCustomer() == null) {
+            return;
+        }
+        Long customerId = detail.getCustomer().getId();
+        int points = detail.getPoint() != null ? detail.getPoint() : 0;
+        afterCommit(() -> vipLeaderboardService.onPointsChanged(customerId, points));
+    }
+
+    @PostRemove
+    public void onCustomerDetailRemoved(CustomerDetail detail) {
+        afterCommit(() -> vipLeaderboardService.invalidate());
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
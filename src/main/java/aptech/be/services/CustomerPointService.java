@@ -0,0 +1,240 @@
+package aptech.be.services;
+
+import aptech.be.models.Customer;
+import aptech.be.models.CustomerDetail;
+import aptech.be.models.OrderEntity;
+import aptech.be.models.PointBalanceSnapshot;
+import aptech.be.models.PointLedgerEntry;
+import aptech.be.repositories.CustomerDetailRepository;
+import aptech.be.repositories.PointBalanceSnapshotRepository;
+import aptech.be.repositories.PointLedgerRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Điểm tích lũy của khách hàng.
+ * - Mỗi lần cộng/trừ điểm ghi 1 dòng point_ledger với idempotency key (ORDER:{orderId}, CLAIM_TOKEN:{token}...)
+ *   rồi mới UPDATE point = point + :delta, cùng 1 transaction → webhook/return/tiền mặt chạy trùng không cộng 2 lần
+ * - Số dư đọc = point_balance_snapshot + các dòng ledger chưa snapshot; customerdetails.point vẫn được cập nhật
+ *   cho các DTO cũ và được đối chiếu với sổ cái mỗi lần snapshot
+ */
+@Service
+public class CustomerPointService {
+
+    public static final String REASON_OPENING = "OPENING";
+    public static final String REASON_ORDER = "ORDER";
+    public static final String REASON_CLAIM_TOKEN = "CLAIM_TOKEN";
+
+    // Số dòng ledger cộng vào snapshot trong 1 transaction
+    private static final int SNAPSHOT_BATCH_SIZE = 1000;
+
+    @Autowired
+    private CustomerDetailRepository customerDetailRepository;
+
+    @Autowired
+    private PointLedgerRepository pointLedgerRepository;
+
+    @Autowired
+    private PointBalanceSnapshotRepository pointBalanceSnapshotRepository;
+
+    @Autowired
+    private VipLeaderboardService vipLeaderboardService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Điểm thưởng cho đơn hàng: 10$ = 10 điểm (làm tròn xuống)
+     */
+    public static int pointsForOrderTotal(double totalPrice) {
+        return (int) Math.floor(totalPrice / 10.0) * 10;
+    }
+
+    public static String orderKey(Long orderId) {
+        return REASON_ORDER + ":" + orderId;
+    }
+
+    public static String claimTokenKey(String token) {
+        return REASON_CLAIM_TOKEN + ":" + token;
+    }
+
+    /**
+     * Cộng (hoặc trừ nếu delta âm) điểm và trả về tổng điểm mới.
+     * Trả về null nếu idempotencyKey đã được ghi nhận trước đó (không cộng lại).
+     * Hai request trùng key chạy song song: bên ghi sau vi phạm unique key và transaction của nó bị rollback.
+     */
+    @Transactional
+    public Integer addPoints(CustomerDetail customerDetail, int delta, String reason, String idempotencyKey) {
+        if (customerDetail.getId() == null || customerDetail.getCustomer() == null) {
+            throw new RuntimeException("Customer detail has not been saved");
+        }
+        if (pointLedgerRepository.existsByIdempotencyKey(idempotencyKey)) {
+            System.out.println("[POINTS] Skipped duplicate credit " + idempotencyKey);
+            return null;
+        }
+
+        Long customerId = customerDetail.getCustomer().getId();
+        pointLedgerRepository.saveAndFlush(new PointLedgerEntry(customerId, delta, reason, idempotencyKey));
+        if (customerDetailRepository.addPoints(customerDetail.getId(), delta) == 0) {
+            throw new RuntimeException("Cannot change points for customer detail " + customerDetail.getId());
+        }
+        int total = getPoints(customerDetail);
+
+        afterCommit(() -> vipLeaderboardService.onPointsChanged(customerId, total));
+        return total;
+    }
+
+    /**
+     * Cộng điểm cho đơn hàng đã thanh toán (1 lần cho mỗi đơn); trả về số điểm vừa cộng, 0 nếu không cộng
+     */
+    @Transactional
+    public int awardOrderPoints(OrderEntity order) {
+        Customer customer = order.getCustomer();
+        if (customer == null || customer.getCustomerDetail() == null || order.getTotalPrice() == null) {
+            return 0;
+        }
+        int pointsToAdd = pointsForOrderTotal(order.getTotalPrice());
+        Integer newPoints = addPoints(customer.getCustomerDetail(), pointsToAdd, REASON_ORDER, orderKey(order.getId()));
+        if (newPoints == null) {
+            return 0;
+        }
+        System.out.println("[POINTS] Added " + pointsToAdd + " points to customer " + customer.getId() +
+                ". Total points: " + newPoints + " (Order total: $" + order.getTotalPrice() + ")");
+        return pointsToAdd;
+    }
+
+    /**
+     * Điểm hiện tại tính từ sổ cái (entity trong persistence context có thể đã cũ sau UPDATE nguyên tử)
+     */
+    public int getPoints(CustomerDetail customerDetail) {
+        if (customerDetail == null || customerDetail.getId() == null) {
+            return 0;
+        }
+        if (customerDetail.getCustomer() == null) {
+            Integer points = customerDetailRepository.findPointById(customerDetail.getId());
+            return points != null ? points : 0;
+        }
+        return (int) getLedgerBalance(customerDetail.getCustomer().getId());
+    }
+
+    /**
+     * Số dư tính từ sổ cái: snapshot + các dòng ledger chưa snapshot (index customer_id, snapshotted)
+     */
+    public long getLedgerBalance(Long customerId) {
+        Long balance = pointLedgerRepository.findBalance(customerId);
+        return balance != null ? balance : 0;
+    }
+
+    /**
+     * Cộng dồn các dòng ledger chưa snapshot vào point_balance_snapshot (mặc định 5 phút/lần)
+     */
+    @Scheduled(fixedDelayString = "${app.points.snapshot-interval-ms:300000}")
+    public void snapshotBalances() {
+        try {
+            TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+            int updated = 0;
+            while (true) {
+                Integer customers = transactionTemplate.execute(status -> doSnapshot());
+                if (customers == null || customers == 0) {
+                    break;
+                }
+                updated += customers;
+            }
+            if (updated > 0) {
+                System.out.println("[POINTS] Snapshot updated for " + updated + " customers");
+            }
+        } catch (Exception e) {
+            System.err.println("[POINTS ERROR] Snapshot failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Đánh dấu snapshotted và cộng vào snapshot trong cùng 1 transaction: dòng commit muộn (id nhỏ hơn dòng đã snapshot)
+     * vẫn còn snapshotted = false nên được lấy ở lần sau, không bị bỏ sót như khi dùng mốc id.
+     * @return số khách được cập nhật, 0 nếu không còn dòng nào
+     */
+    private int doSnapshot() {
+        List<Long> ids = pointLedgerRepository.findUnsnapshottedIds(PageRequest.of(0, SNAPSHOT_BATCH_SIZE));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        if (pointLedgerRepository.markSnapshotted(ids) != ids.size()) {
+            // Node khác đang snapshot cùng các dòng này: rollback, lần chạy sau làm tiếp
+            throw new IllegalStateException("Ledger rows were snapshotted concurrently");
+        }
+
+        Map<Long, Long> deltas = new HashMap<>();
+        Map<Long, Long> lastIds = new HashMap<>();
+        for (Object[] row : pointLedgerRepository.sumDeltaByCustomerIn(ids)) {
+            deltas.put((Long) row[0], ((Number) row[1]).longValue());
+            lastIds.put((Long) row[0], ((Number) row[2]).longValue());
+        }
+
+        Map<Long, PointBalanceSnapshot> snapshots = pointBalanceSnapshotRepository.findAllById(deltas.keySet()).stream()
+                .collect(Collectors.toMap(PointBalanceSnapshot::getCustomerId, s -> s));
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+            PointBalanceSnapshot snapshot = snapshots.computeIfAbsent(entry.getKey(), PointBalanceSnapshot::new);
+            snapshot.setBalance(snapshot.getBalance() + entry.getValue());
+            snapshot.setLastLedgerId(Math.max(snapshot.getLastLedgerId(), lastIds.get(entry.getKey())));
+            snapshot.setSnapshotAt(now);
+        }
+        pointBalanceSnapshotRepository.saveAll(snapshots.values());
+        pointBalanceSnapshotRepository.flush();
+
+        // Đối chiếu với số dư trên customerdetails (chỉ log, không tự sửa)
+        for (Long customerId : deltas.keySet()) {
+            Integer point = customerDetailRepository.findPointByCustomerId(customerId);
+            long ledgerBalance = getLedgerBalance(customerId);
+            if (point != null && point != ledgerBalance) {
+                System.err.println("[POINTS WARNING] Customer " + customerId + " balance " + point
+                        + " differs from ledger " + ledgerBalance);
+            }
+        }
+        return deltas.size();
+    }
+
+    /**
+     * Ghi số dư mở đầu vào ledger cho điểm có từ trước khi có sổ cái (chạy 1 lần khi khởi động, idempotent)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOpeningBalances() {
+        try {
+            Integer inserted = new TransactionTemplate(transactionManager)
+                    .execute(status -> pointLedgerRepository.insertOpeningBalances(LocalDateTime.now()));
+            if (inserted != null && inserted > 0) {
+                System.out.println("[POINTS] Recorded opening balances for " + inserted + " customers");
+            }
+        } catch (Exception e) {
+            System.err.println("[POINTS ERROR] Opening balance backfill failed: " + e.getMessage());
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -190,7 +190,7 @@ public class CustomerService {
         try {
             CustomerDetail customerDetail = new CustomerDetail();
             customerDetail.setCustomer(customer);
-            customerDetail.setPoint("0"); // Start with 0 points
+            customerDetail.setPoint(0); // Start with 0 points
             customerDetail.setPhoneNumber(phone); // Set phone if provided
             customerDetail.setVoucher(null); // No vouchers initially
             
@@ -2,6 +2,7 @@ package aptech.be.services;
 
 import aptech.be.dto.dashboard.*;
 import aptech.be.repositories.CustomerRepository;
+import aptech.be.repositories.DailyRevenueRollupRepository;
 import aptech.be.repositories.OrderRepository;
 import aptech.be.repositories.FoodRepository;
 import aptech.be.repositories.UserRepository;
@@ -15,7 +16,6 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.temporal.TemporalAdjusters;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class DashboardServiceImpl implements DashboardService {
@@ -32,6 +32,15 @@ public class DashboardServiceImpl implements DashboardService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private RevenueSeriesService revenueSeriesService;
+
+    @Autowired
+    private DailyRevenueRollupRepository dailyRevenueRollupRepository;
+
+    @Autowired
+    private VipLeaderboardService vipLeaderboardService;
+
     @Override
     public RevenueAnalytics getRevenueAnalytics(String timeRange) {
         LocalDateTime startDate = getStartDate(timeRange);
@@ -40,87 +49,60 @@ public class DashboardServiceImpl implements DashboardService {
         System.out.println("[DashboardService] Getting revenue analytics for timeRange: " + timeRange);
         System.out.println("[DashboardService] Date range: " + startDate + " to " + endDate);
 
-        // Completed filters
-        List<String> completedStatuses = Arrays.asList("PAID", "COMPLETED");
-
-        // Totals (completed orders only)
-        BigDecimal totalRevenue = orderRepository.getTotalRevenueByDateRange(startDate, endDate);
-        int totalOrders = orderRepository.getOrderCountByDateRange(startDate, endDate);
-
-        System.out.println("[DashboardService] Total revenue: " + totalRevenue + ", Total orders: " + totalOrders);
-
-        // Delivery: tính theo đơn đã giao xong; PayOS = confirmStatus PAID, Cash = paymentMethod CASH
-        BigDecimal deliveryRevenue = orderRepository.getDeliveryRevenueByDeliveryStatus(startDate, endDate);
-        int deliveryOrders = orderRepository.getDeliveryOrderCountByDeliveryStatus(startDate, endDate);
-        
-        System.out.println("[DashboardService] Delivery orders (confirmStatus=PAID AND deliveryStatus=DELIVERED) - Revenue: " + deliveryRevenue + ", Orders: " + deliveryOrders);
-        
-        // Fallback: try other delivery statuses if DELIVERED returns 0
-        if (deliveryRevenue == null || deliveryRevenue.compareTo(BigDecimal.ZERO) == 0) {
-            System.out.println("[DashboardService] No DELIVERED orders found, trying other delivery statuses");
-            
-            // Try to get any delivery orders with different statuses
-            BigDecimal alternativeDeliveryRevenue = orderRepository.getRevenueByDeliveryStatus("COMPLETED", startDate, endDate);
-            int alternativeDeliveryOrders = orderRepository.getOrderCountByDeliveryStatus("COMPLETED", startDate, endDate);
-            
-            if (alternativeDeliveryRevenue != null && alternativeDeliveryRevenue.compareTo(BigDecimal.ZERO) > 0) {
-                deliveryRevenue = alternativeDeliveryRevenue;
-                deliveryOrders = alternativeDeliveryOrders;
-                System.out.println("[DashboardService] Found delivery orders with COMPLETED status: " + deliveryOrders);
-            }
-            
-            // Try to get delivery orders by orderType = 'DELIVERY' regardless of deliveryStatus
-            System.out.println("[DashboardService] Trying to get all DELIVERY orders regardless of status...");
-            try {
-                // Get all orders with orderType = 'DELIVERY' and completed status
-                BigDecimal allDeliveryRevenue = orderRepository.getRevenueByOrderTypeAndStatuses("DELIVERY", completedStatuses, startDate, endDate);
-                int allDeliveryOrders = orderRepository.getOrderCountByOrderTypeAndStatuses("DELIVERY", completedStatuses, startDate, endDate);
-                
-                System.out.println("[DashboardService] All DELIVERY orders (any completed status): Revenue=" + allDeliveryRevenue + ", Orders=" + allDeliveryOrders);
-                
-                if (allDeliveryRevenue != null && allDeliveryRevenue.compareTo(BigDecimal.ZERO) > 0) {
-                    deliveryRevenue = allDeliveryRevenue;
-                    deliveryOrders = allDeliveryOrders;
-                    System.out.println("[DashboardService] Using DELIVERY orders with completed status");
-                }
-            } catch (Exception e) {
-                System.err.println("[DashboardService] Error getting DELIVERY orders: " + e.getMessage());
-                e.printStackTrace();
+        // Tổng theo orderType đọc từ daily_revenue_rollup: số dòng tỉ lệ với số ngày, không phụ thuộc số đơn
+        BigDecimal totalRevenue = BigDecimal.ZERO;
+        BigDecimal deliveryRevenue = BigDecimal.ZERO;
+        BigDecimal dineInRevenue = BigDecimal.ZERO;
+        BigDecimal takeAwayRevenue = BigDecimal.ZERO;
+        int totalOrders = 0;
+        int deliveryOrders = 0;
+        int dineInOrders = 0;
+        int takeAwayOrders = 0;
+
+        for (Object[] row : dailyRevenueRollupRepository.getTotalsByOrderType(startDate.toLocalDate(), endDate.toLocalDate())) {
+            String orderType = (String) row[0];
+            BigDecimal revenue = BigDecimal.valueOf(((Number) row[1]).doubleValue()).setScale(2, RoundingMode.HALF_UP);
+            int orderCount = ((Number) row[2]).intValue();
+
+            totalRevenue = totalRevenue.add(revenue);
+            totalOrders += orderCount;
+            if ("DELIVERY".equals(orderType)) {
+                deliveryRevenue = revenue;
+                deliveryOrders = orderCount;
+            } else if ("DINE_IN".equals(orderType)) {
+                dineInRevenue = revenue;
+                dineInOrders = orderCount;
+            } else if ("TAKE_AWAY".equals(orderType)) {
+                takeAwayRevenue = revenue;
+                takeAwayOrders = orderCount;
             }
         }
 
-        System.out.println("[DashboardService] Final delivery revenue: " + deliveryRevenue + ", Final delivery orders: " + deliveryOrders);
-
-        BigDecimal dineInRevenue = orderRepository.getRevenueByOrderTypeAndStatuses("DINE_IN", completedStatuses, startDate, endDate);
-        int dineInOrders = orderRepository.getOrderCountByOrderTypeAndStatuses("DINE_IN", completedStatuses, startDate, endDate);
-
-        BigDecimal takeAwayRevenue = orderRepository.getRevenueByOrderTypeAndStatuses("TAKE_AWAY", completedStatuses, startDate, endDate);
-        int takeAwayOrders = orderRepository.getOrderCountByOrderTypeAndStatuses("TAKE_AWAY", completedStatuses, startDate, endDate);
-
-        System.out.println("[DashboardService] Dine-in: " + dineInRevenue + " (" + dineInOrders + " orders)");
-        System.out.println("[DashboardService] Take-away: " + takeAwayRevenue + " (" + takeAwayOrders + " orders)");
+        System.out.println("[DashboardService] Total revenue: " + totalRevenue + ", Total orders: " + totalOrders);
 
         // Average order value
         BigDecimal averageOrderValue = totalOrders > 0 ?
                 totalRevenue.divide(BigDecimal.valueOf(totalOrders), 2, RoundingMode.HALF_UP) :
                 BigDecimal.ZERO;
 
-        // Revenue over time
-        List<RevenueDataPoint> revenueOverTime = getRevenueOverTime(startDate, endDate, timeRange);
+        // Revenue over time + growth so với kỳ trước (1 query GROUP BY bucket, orderType)
+        RevenueSeriesService.RevenueSeries series = revenueSeriesService.getSeries(
+                startDate, endDate, RevenueSeriesService.granularityFor(timeRange));
+        List<RevenueDataPoint> revenueOverTime = series.getPoints();
 
         // Revenue by order type map
         Map<String, BigDecimal> revenueByOrderType = new HashMap<>();
-        revenueByOrderType.put("DELIVERY", deliveryRevenue != null ? deliveryRevenue : BigDecimal.ZERO);
-        revenueByOrderType.put("DINE_IN", dineInRevenue != null ? dineInRevenue : BigDecimal.ZERO);
-        revenueByOrderType.put("TAKE_AWAY", takeAwayRevenue != null ? takeAwayRevenue : BigDecimal.ZERO);
+        revenueByOrderType.put("DELIVERY", deliveryRevenue);
+        revenueByOrderType.put("DINE_IN", dineInRevenue);
+        revenueByOrderType.put("TAKE_AWAY", takeAwayRevenue);
 
-        BigDecimal revenueGrowth = calculateRevenueGrowth(timeRange);
+        BigDecimal revenueGrowth = series.getGrowthPercent();
 
-        return new RevenueAnalytics(
-                totalRevenue != null ? totalRevenue : BigDecimal.ZERO,
-                deliveryRevenue != null ? deliveryRevenue : BigDecimal.ZERO,
-                dineInRevenue != null ? dineInRevenue : BigDecimal.ZERO,
-                takeAwayRevenue != null ? takeAwayRevenue : BigDecimal.ZERO,
+        RevenueAnalytics analytics = new RevenueAnalytics(
+                totalRevenue,
+                deliveryRevenue,
+                dineInRevenue,
+                takeAwayRevenue,
                 timeRange,
                 revenueOverTime,
                 revenueByOrderType,
@@ -131,6 +113,8 @@ public class DashboardServiceImpl implements DashboardService {
                 dineInOrders,
                 takeAwayOrders
         );
+        analytics.setGranularity(series.getGranularity().name());
+        return analytics;
     }
 
     @Override
@@ -173,46 +157,13 @@ public class DashboardServiceImpl implements DashboardService {
 
     @Override
     public List<VIPCustomer> getVIPCustomers(int limit) {
-        return customerRepository.findAllWithDetail().stream()
-            .sorted((a, b) -> Integer.compare(parsePoint(b.getCustomerDetail()), parsePoint(a.getCustomerDetail())))
-            .limit(limit)
-            .map(c -> {
-                // Calculate actual values for each customer
-                Long customerId = c.getId();
-                
-                // Get total spent (sum of all completed orders)
-                BigDecimal totalSpent = orderRepository.getTotalSpentByCustomer(customerId);
-                
-                // Get total orders count
-                int totalOrders = orderRepository.getOrderCountByCustomer(customerId);
-                
-                // Get last order date
-                LocalDateTime lastOrderDate = orderRepository.getLastOrderDateByCustomer(customerId);
-                
-                // Get registration date (first order date)
-                LocalDateTime registrationDate = orderRepository.getFirstOrderDateByCustomer(customerId);
-                
-                return new Object[]{
-                    customerId,
-                    c.getFullName(),
-                    c.getEmail(),
-                    c.getCustomerDetail() != null ? c.getCustomerDetail().getPhoneNumber() : null,
-                    parsePoint(c.getCustomerDetail()),
-                    totalSpent != null ? totalSpent : BigDecimal.ZERO,
-                    totalOrders,
-                    lastOrderDate,
-                    registrationDate,
-                    getRank(parsePoint(c.getCustomerDetail())) // Add rank calculation
-                };
-            })
-            .map(this::mapToVIPCustomer)
-            .collect(Collectors.toList());
+        return vipLeaderboardService.getTopCustomers(limit);
     }
 
     @Override
     public OverallAnalytics getOverallAnalytics() {
         // Get total revenue (all time)
-        BigDecimal totalRevenue = orderRepository.getTotalRevenueAllTime();
+        BigDecimal totalRevenue = dailyRevenueRollupRepository.getTotalRevenueAllTime();
 
         // Get total orders
         long totalOrders = orderRepository.count();
@@ -276,72 +227,21 @@ public class DashboardServiceImpl implements DashboardService {
         }
     }
 
-    private List<RevenueDataPoint> getRevenueOverTime(LocalDateTime startDate, LocalDateTime endDate, String timeRange) {
-        // This would be implemented with actual database queries
-        // For now, return mock data
-        List<RevenueDataPoint> dataPoints = new ArrayList<>();
-        LocalDate current = startDate.toLocalDate();
-        LocalDate end = endDate.toLocalDate();
-
-        while (!current.isAfter(end)) {
-            dataPoints.add(new RevenueDataPoint(
-                current,
-                BigDecimal.valueOf(Math.random() * 1000 + 500),
-                (int) (Math.random() * 20 + 5),
-                BigDecimal.valueOf(Math.random() * 400 + 200),
-                BigDecimal.valueOf(Math.random() * 300 + 150),
-                BigDecimal.valueOf(Math.random() * 300 + 150)
-            ));
-            current = current.plusDays(1);
-        }
-
-        return dataPoints;
-    }
-
-    private BigDecimal calculateRevenueGrowth(String timeRange) {
-        // Simplified calculation - in real implementation would compare with previous period
-        return BigDecimal.valueOf(Math.random() * 20 - 10); // -10% to +10%
-    }
-
     private double calculateCustomerGrowthRate() {
-        // Simplified calculation
-        return Math.random() * 15 - 5; // -5% to +10%
+        // Khách hàng có đơn từ đầu tháng so với khoảng thời gian dài tương đương ngay trước đó
+        LocalDateTime end = LocalDateTime.now();
+        LocalDateTime start = end.with(TemporalAdjusters.firstDayOfMonth()).with(LocalTime.MIN);
+        LocalDateTime previousStart = start.minus(java.time.Duration.between(start, end));
+        long current = orderRepository.getActiveCustomerCountBetween(start, end);
+        long previous = orderRepository.getActiveCustomerCountBetween(previousStart, start);
+        return RevenueSeriesService.growthPercent(BigDecimal.valueOf(current), BigDecimal.valueOf(previous)).doubleValue();
     }
 
     private double calculateRevenueGrowthRate() {
-        // Simplified calculation
-        return Math.random() * 25 - 10; // -10% to +15%
-    }
-
-    private VIPCustomer mapToVIPCustomer(Object[] result) {
-        // This would map database query results to VIPCustomer object
-        // For now, return mock data
-        return new VIPCustomer(
-            (Long) result[0],
-            (String) result[1],
-            (String) result[2],
-            (String) result[3],
-            (Integer) result[4],
-            (BigDecimal) result[5],
-            (Integer) result[6],
-            (LocalDateTime) result[7],
-            (LocalDateTime) result[8],
-            (String) result[9] // Add rank
-        );
-    }
-
-    private String getRank(int points) {
-        if (points >= 1000) return "GOLD";
-        if (points >= 500) return "SILVER";
-        return "BRONZE";
-    }
-
-    private int parsePoint(aptech.be.models.CustomerDetail detail) {
-        if (detail == null || detail.getPoint() == null) return 0;
-        try {
-            return Integer.parseInt(detail.getPoint());
-        } catch (NumberFormatException e) {
-            return 0;
-        }
+        // Doanh thu từ đầu tháng so với cùng số ngày trọn ngay trước đó (căn theo ranh giới ngày)
+        LocalDateTime end = LocalDateTime.now();
+        LocalDateTime start = end.with(TemporalAdjusters.firstDayOfMonth()).with(LocalTime.MIN);
+        return revenueSeriesService.getSeries(start, end, RevenueSeriesService.Granularity.DAY)
+                .getGrowthPercent().doubleValue();
     }
 } 
\ No newline at end of file
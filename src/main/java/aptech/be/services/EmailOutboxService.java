@@ -0,0 +1,181 @@
+package aptech.be.services;
+
+import aptech.be.models.Customer;
+import aptech.be.models.EmailOutboxMessage;
+import aptech.be.models.OrderEntity;
+import aptech.be.repositories.EmailOutboxMessageRepository;
+import aptech.be.repositories.OrderRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.mail.MessagingException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UnsupportedEncodingException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbox email: enqueue trong transaction nghiệp vụ, gửi SMTP ở luồng nền có retry + backoff.
+ * Job @Scheduled chỉ nhận email đến hạn rồi giao cho emailOutboxExecutor, không tự gửi SMTP.
+ */
+@Service
+public class EmailOutboxService {
+
+    @Autowired
+    private EmailOutboxMessageRepository emailOutboxMessageRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private InvoiceEmailService invoiceEmailService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("emailOutboxExecutor")
+    private ThreadPoolTaskExecutor emailOutboxExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.email-outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${app.email-outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    // Email ở SENDING quá lâu coi như node gửi đã chết
+    private static final Duration STALE_LOCK = Duration.ofMinutes(5);
+
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("email.outbox.pending", pendingCount, AtomicLong::get)
+                .description("Email chờ gửi trong outbox")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Email thanh toán thành công (+ hóa đơn điện tử nếu khách yêu cầu) cho đơn hàng
+     */
+    public void enqueuePaymentSuccess(OrderEntity order, int pointsEarned) {
+        Customer customer = order.getCustomer();
+        if (customer == null || customer.getEmail() == null || customer.getEmail().isEmpty()) {
+            System.out.println("[EMAIL] No email address found for customer: " + (customer != null ? customer.getId() : "null"));
+            return;
+        }
+        enqueue(EmailOutboxMessage.TYPE_PAYMENT_SUCCESS, order.getId(), customer.getEmail(), pointsEarned);
+        if (order.getNeedInvoice() != null && order.getNeedInvoice()) {
+            enqueue(EmailOutboxMessage.TYPE_INVOICE, order.getId(), customer.getEmail(), null);
+        }
+    }
+
+    private void enqueue(String type, Long orderId, String recipient, Integer pointsEarned) {
+        String dedupKey = type + ":" + orderId;
+        if (emailOutboxMessageRepository.existsByDedupKey(dedupKey)) {
+            return;
+        }
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setDedupKey(dedupKey);
+        message.setType(type);
+        message.setOrderId(orderId);
+        message.setRecipient(recipient);
+        message.setPointsEarned(pointsEarned);
+        message.setCreatedAt(LocalDateTime.now());
+        message.setNextAttemptAt(LocalDateTime.now());
+        emailOutboxMessageRepository.save(message);
+        System.out.println("[EMAIL] " + type + " email queued for: " + recipient);
+    }
+
+    @Scheduled(fixedDelayString = "${app.email-outbox.poll-interval-ms:5000}")
+    public void dispatchPending() {
+        LocalDateTime now = LocalDateTime.now();
+        emailOutboxMessageRepository.releaseStale(now.minus(STALE_LOCK));
+
+        List<Long> dueIds = emailOutboxMessageRepository.findDueIds(now, PageRequest.of(0, batchSize));
+        for (Long id : dueIds) {
+            // Nhận trước khi gửi: node khác đã nhận thì bỏ qua
+            if (emailOutboxMessageRepository.claim(id, LocalDateTime.now()) == 0) {
+                continue;
+            }
+            try {
+                emailOutboxExecutor.execute(() -> emailOutboxMessageRepository.findById(id).ifPresent(this::dispatch));
+            } catch (TaskRejectedException e) {
+                // Pool đầy: trả lại outbox, lần poll sau gửi tiếp
+                emailOutboxMessageRepository.release(id);
+                break;
+            }
+        }
+        pendingCount.set(emailOutboxMessageRepository.countByState(EmailOutboxMessage.STATE_PENDING));
+    }
+
+    private void dispatch(EmailOutboxMessage message) {
+        try {
+            // Transaction riêng cho mỗi email để load lazy các món trong đơn khi render template
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> send(message));
+            message.setState(EmailOutboxMessage.STATE_SENT);
+            message.setSentAt(LocalDateTime.now());
+            message.setLastError(null);
+        } catch (Exception e) {
+            // attempts đã được tăng khi nhận
+            int attempts = message.getAttempts();
+            message.setLastError(truncate(e.getMessage()));
+            if (attempts >= maxAttempts) {
+                message.setState(EmailOutboxMessage.STATE_FAILED);
+                System.err.println("[EMAIL ERROR] Giving up on " + message.getDedupKey() + ": " + e.getMessage());
+            } else {
+                message.setState(EmailOutboxMessage.STATE_PENDING);
+                // Backoff: 30s, 60s, 120s, ...
+                message.setNextAttemptAt(LocalDateTime.now().plusSeconds(30L << (attempts - 1)));
+            }
+        }
+        message.setLockedAt(null);
+        emailOutboxMessageRepository.save(message);
+    }
+
+    private void send(EmailOutboxMessage message) {
+        OrderEntity order = orderRepository.findById(message.getOrderId())
+                .orElseThrow(() -> new RuntimeException("Order not found: " + message.getOrderId()));
+        try {
+            // Dùng bản deliver* (ném lỗi) để lỗi SMTP đi vào nhánh retry thay vì bị nuốt
+            switch (message.getType()) {
+                case EmailOutboxMessage.TYPE_PAYMENT_SUCCESS:
+                    int points = message.getPointsEarned() != null ? message.getPointsEarned() : 0;
+                    emailService.deliverPaymentSuccessEmail(message.getRecipient(), order, points);
+                    break;
+                case EmailOutboxMessage.TYPE_INVOICE:
+                    invoiceEmailService.deliverInvoiceEmail(order);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown email type: " + message.getType());
+            }
+        } catch (MessagingException | UnsupportedEncodingException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private String truncate(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() > 1000 ? value.substring(0, 1000) : value;
+    }
+}
@@ -8,7 +8,9 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 
+import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import java.io.UnsupportedEncodingException;
 import java.text.NumberFormat;
 import java.time.format.DateTimeFormatter;
 import java.util.Locale;
@@ -106,24 +108,32 @@ public class EmailService {
 
     public void sendPaymentSuccessEmail(String to, OrderEntity order, int pointsEarned) {
         try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
-            
-            helper.setTo(to);
-            helper.setSubject("🎉 Payment Successful - Order #" + order.getOrderNumber());
-            helper.setFrom("namlk0310pro@gmail.com", "DOLCE Restaurant");
-            
-            String htmlContent = createPaymentSuccessEmailTemplate(order, pointsEarned);
-            helper.setText(htmlContent, true);
-            
-            mailSender.send(mimeMessage);
-            System.out.println("[EMAIL] Payment success email sent to: " + to);
+            deliverPaymentSuccessEmail(to, order, pointsEarned);
         } catch (Exception e) {
             System.err.println("[EMAIL ERROR] Failed to send payment success email: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Như sendPaymentSuccessEmail nhưng ném lỗi khi gửi thất bại (outbox dựa vào đó để retry)
+     */
+    public void deliverPaymentSuccessEmail(String to, OrderEntity order, int pointsEarned)
+            throws MessagingException, UnsupportedEncodingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true, "UTF-8");
+        
+        helper.setTo(to);
+        helper.setSubject("🎉 Payment Successful - Order #" + order.getOrderNumber());
+        helper.setFrom("namlk0310pro@gmail.com", "DOLCE Restaurant");
+        
+        String htmlContent = createPaymentSuccessEmailTemplate(order, pointsEarned);
+        helper.setText(htmlContent, true);
+        
+        mailSender.send(mimeMessage);
+        System.out.println("[EMAIL] Payment success email sent to: " + to);
+    }
+
     /**
      * Notify assigned CSKH staff when a new complaint/refund request is created.
      * Email includes customer/order/complaint info and a clear call to action.
@@ -0,0 +1,113 @@
+package aptech.be.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hết hạn đúng thời điểm cho các mục có deadline (gọi nhân viên, yêu cầu thanh toán, claim token)
+ * thay cho các job @Scheduled quét toàn bộ danh sách:
+ * - mỗi mục 1 phần tử trong DelayQueue (thêm O(log n)), 1 thread chờ đúng tới deadline gần nhất rồi chạy action
+ * - key xác định mục: schedule lại cùng key thay deadline cũ, cancel(key) hủy; phần tử cũ bị bỏ qua khi tới hạn
+ */
+@Component
+public class ExpiryScheduler {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final DelayQueue<Expiry> queue = new DelayQueue<>();
+    private final Map<String, Expiry> current = new ConcurrentHashMap<>();
+    private Thread worker;
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("expiry.scheduled", current, Map::size)
+                .description("Số mục đang chờ hết hạn")
+                .register(meterRegistry);
+        worker = new Thread(this::run, "expiry-scheduler");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        worker.interrupt();
+    }
+
+    public void schedule(String key, LocalDateTime deadline, Runnable action) {
+        Instant instant = deadline.atZone(ZoneId.systemDefault()).toInstant();
+        // Làm tròn lên ms: action không bao giờ chạy trước deadline (so sánh expiresAt <= now ở DB)
+        long millis = instant.toEpochMilli() + (instant.getNano() % 1_000_000 == 0 ? 0 : 1);
+        schedule(key, millis, action);
+    }
+
+    public void schedule(String key, long deadlineMillis, Runnable action) {
+        Expiry expiry = new Expiry(key, deadlineMillis, action);
+        current.put(key, expiry);
+        queue.put(expiry);
+    }
+
+    public void cancel(String key) {
+        current.remove(key);
+    }
+
+    public boolean isScheduled(String key) {
+        return current.containsKey(key);
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Expiry expiry;
+            try {
+                expiry = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // Đã bị hủy / thay bằng deadline khác
+            if (!current.remove(expiry.key, expiry)) {
+                continue;
+            }
+            try {
+                expiry.action.run();
+            } catch (Exception e) {
+                System.err.println("[EXPIRY ERROR] " + expiry.key + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class Expiry implements Delayed {
+        private final String key;
+        private final long deadlineMillis;
+        private final Runnable action;
+
+        Expiry(String key, long deadlineMillis, Runnable action) {
+            this.key = key;
+            this.deadlineMillis = deadlineMillis;
+            this.action = action;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineMillis, ((Expiry) other).deadlineMillis);
+        }
+    }
+}
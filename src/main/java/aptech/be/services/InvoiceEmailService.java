@@ -22,6 +22,18 @@ public class InvoiceEmailService {
     private OrderRepository orderRepository;
 
     public void sendInvoiceEmail(OrderEntity order) {
+        try {
+            deliverInvoiceEmail(order);
+        } catch (MessagingException e) {
+            System.err.println("Failed to send invoice email: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Như sendInvoiceEmail nhưng ném lỗi khi gửi thất bại (outbox dựa vào đó để retry)
+     */
+    public void deliverInvoiceEmail(OrderEntity order) throws MessagingException {
         if (order.getNeedInvoice() == null || !order.getNeedInvoice()) {
             return; // Không cần gửi hóa đơn
         }
@@ -30,29 +42,23 @@ public class InvoiceEmailService {
             return; // Đã gửi rồi
         }
 
-        try {
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
 
-            helper.setTo(order.getCustomer().getEmail());
-            helper.setSubject("Hóa đơn điện tử - Đơn hàng #" + order.getOrderNumber());
-            helper.setFrom("noreply@restaurant.com");
+        helper.setTo(order.getCustomer().getEmail());
+        helper.setSubject("Hóa đơn điện tử - Đơn hàng #" + order.getOrderNumber());
+        helper.setFrom("noreply@restaurant.com");
 
-            String htmlContent = generateInvoiceHtml(order);
-            helper.setText(htmlContent, true);
+        String htmlContent = generateInvoiceHtml(order);
+        helper.setText(htmlContent, true);
 
-            mailSender.send(message);
-            
-            // Đánh dấu đã gửi hóa đơn và save vào database
-            order.setInvoiceSent(true);
-            orderRepository.save(order);
-            
-            System.out.println("[INVOICE] Electronic invoice sent successfully to: " + order.getCustomer().getEmail());
-            
-        } catch (MessagingException e) {
-            System.err.println("Failed to send invoice email: " + e.getMessage());
-            e.printStackTrace();
-        }
+        mailSender.send(message);
+        
+        // Đánh dấu đã gửi hóa đơn và save vào database
+        order.setInvoiceSent(true);
+        orderRepository.save(order);
+        
+        System.out.println("[INVOICE] Electronic invoice sent successfully to: " + order.getCustomer().getEmail());
     }
 
     private String generateInvoiceHtml(OrderEntity order) {
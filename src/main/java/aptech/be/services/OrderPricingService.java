@@ -0,0 +1,106 @@
+package aptech.be.services;
+
+import aptech.be.dto.FoodOrderItemDTO;
+import aptech.be.models.Food;
+import aptech.be.repositories.FoodRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Tính giá đơn hàng dùng chung cho DELIVERY / DINE_IN / TAKE_AWAY.
+ * Tất cả món được load bằng 1 query findAllById thay vì findById cho từng dòng.
+ */
+@Service
+public class OrderPricingService {
+
+    public static final String FOOD_STATUS_AVAILABLE = "AVAILABLE";
+
+    @Autowired
+    private FoodRepository foodRepository;
+
+    /**
+     * Gộp các dòng trùng foodId, cộng dồn quantity (giữ thứ tự xuất hiện)
+     */
+    public static Map<Long, Integer> mergeQuantities(List<FoodOrderItemDTO> items) {
+        Map<Long, Integer> foodIdToQuantity = new LinkedHashMap<>();
+        for (FoodOrderItemDTO item : items) {
+            foodIdToQuantity.merge(item.getId(), item.getQuantity(), Integer::sum);
+        }
+        return foodIdToQuantity;
+    }
+
+    public PricedOrder price(List<FoodOrderItemDTO> items) {
+        return price(mergeQuantities(items));
+    }
+
+    /**
+     * Resolve toàn bộ món trong 1 query, kiểm tra tồn tại / còn bán và tính tổng trong 1 lượt
+     */
+    public PricedOrder price(Map<Long, Integer> foodIdToQuantity) {
+        if (foodIdToQuantity == null || foodIdToQuantity.isEmpty()) {
+            throw new RuntimeException("Order must contain at least one food item");
+        }
+
+        Map<Long, Food> foods = foodRepository.findAllById(foodIdToQuantity.keySet()).stream()
+                .collect(Collectors.toMap(Food::getId, Function.identity()));
+
+        List<PricedLine> lines = new ArrayList<>();
+        double subtotal = 0.0;
+        for (Map.Entry<Long, Integer> entry : foodIdToQuantity.entrySet()) {
+            Long foodId = entry.getKey();
+            Integer quantity = entry.getValue();
+            if (quantity == null || quantity <= 0) {
+                throw new RuntimeException("Quantity must be greater than 0 for food: " + foodId);
+            }
+
+            Food food = foods.get(foodId);
+            if (food == null) {
+                throw new RuntimeException("Food not found: " + foodId);
+            }
+            if (food.getStatus() != null && !FOOD_STATUS_AVAILABLE.equalsIgnoreCase(food.getStatus())) {
+                throw new RuntimeException("Food is not available: " + food.getName());
+            }
+
+            PricedLine line = new PricedLine(food, quantity, food.getPrice() * quantity);
+            lines.add(line);
+            subtotal += line.getLineTotal();
+        }
+        return new PricedOrder(lines, subtotal);
+    }
+
+    public static class PricedLine {
+        private final Food food;
+        private final int quantity;
+        private final double lineTotal;
+
+        public PricedLine(Food food, int quantity, double lineTotal) {
+            this.food = food;
+            this.quantity = quantity;
+            this.lineTotal = lineTotal;
+        }
+
+        public Food getFood() { return food; }
+        public int getQuantity() { return quantity; }
+        public double getLineTotal() { return lineTotal; }
+    }
+
+    public static class PricedOrder {
+        private final List<PricedLine> lines;
+        private final double subtotal;
+
+        public PricedOrder(List<PricedLine> lines, double subtotal) {
+            this.lines = lines;
+            this.subtotal = subtotal;
+        }
+
+        public List<PricedLine> getLines() { return lines; }
+        public double getSubtotal() { return subtotal; }
+    }
+}
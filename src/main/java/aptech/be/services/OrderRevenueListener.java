@@ -0,0 +1,41 @@
+package aptech.be.services;
+
+import aptech.be.models.OrderEntity;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bắt mọi lần lưu OrderEntity (webhook PayOS, xác nhận thanh toán tại bàn, giao hàng...) để cộng doanh thu vào rollup
+ * sau khi transaction commit, thay vì gọi thủ công ở từng chỗ đổi trạng thái.
+ */
+@Component
+public class OrderRevenueListener {
+
+    @Autowired
+    @Lazy
+    private RevenueRollupService revenueRollupService;
+
+    @PostPersist
+    @PostUpdate
+    public void onOrderSaved(OrderEntity order) {
+        if (order.getId() == null || order.getRevenueRecordedAt() != null || !RevenueRollupService.isRevenueOrder(order)) {
+            return;
+        }
+        Long orderId = order.getId();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    revenueRollupService.recordOrderSafely(orderId);
+                }
+            });
+        } else {
+            revenueRollupService.recordOrderSafely(orderId);
+        }
+    }
+}
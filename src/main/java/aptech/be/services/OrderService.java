@@ -1,14 +1,17 @@
 package aptech.be.services;
 
+import aptech.be.dto.OrderPageDTO;
 import aptech.be.dto.OrderRequestDTO;
-import aptech.be.dto.FoodOrderItemDTO;
+import aptech.be.dto.OrderSummaryView;
 import aptech.be.models.*;
 import aptech.be.repositories.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -20,7 +23,7 @@ public class OrderService {
     private OrderRepository orderRepository;
     
     @Autowired
-    private FoodRepository foodRepository;
+    private OrderPricingService orderPricingService;
     
     @Autowired
     private CustomerRepository customerRepository;
@@ -47,6 +50,54 @@ public class OrderService {
     public static final String STATUS_PAID = "PAID";
     public static final String STATUS_COMPLETED = "COMPLETED";
     
+    // Keyset pagination
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    
+    /**
+     * Lấy 1 trang đơn hàng theo cursor (createdAt,id), sắp xếp mới nhất trước.
+     * Mọi filter đều optional; cursor = null để lấy trang đầu.
+     */
+    @Transactional(readOnly = true)
+    public OrderPageDTO getOrderPage(String status, String orderType, Long customerId,
+                                     LocalDateTime from, LocalDateTime to,
+                                     String cursor, Integer size) {
+        int pageSize = size == null || size <= 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+        
+        LocalDateTime cursorCreatedAt = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = decoded.split("\\|", 2);
+                cursorCreatedAt = LocalDateTime.parse(parts[0]);
+                cursorId = Long.valueOf(parts[1]);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+        
+        // Lấy dư 1 bản ghi để biết còn trang sau hay không
+        List<OrderSummaryView> rows = orderRepository.findOrderSummaries(
+                blankToNull(status), blankToNull(orderType), customerId, from, to,
+                cursorCreatedAt, cursorId, pageSize + 1);
+        
+        boolean hasMore = rows.size() > pageSize;
+        List<OrderSummaryView> items = hasMore ? rows.subList(0, pageSize) : rows;
+        
+        String nextCursor = null;
+        if (hasMore) {
+            OrderSummaryView last = items.get(items.size() - 1);
+            String raw = last.getCreatedAt() + "|" + last.getId();
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+        return new OrderPageDTO(items, nextCursor, hasMore);
+    }
+    
+    private String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim().toUpperCase();
+    }
+    
     @Transactional
     public OrderEntity createDineInOrder(OrderRequestDTO orderRequest) {
         // Validate table exists
@@ -72,20 +123,17 @@ public class OrderService {
             order.setCustomer(customer);
         }
         
-        // Calculate total price and create order foods
-        double totalPrice = 0.0;
-        for (FoodOrderItemDTO foodItem : orderRequest.getFoods()) {
-            Food food = foodRepository.findById(foodItem.getId())
-                    .orElseThrow(() -> new RuntimeException("Food not found: " + foodItem.getId()));
-            
+        // Calculate total price and create order foods (all foods resolved in one query)
+        OrderPricingService.PricedOrder priced = orderPricingService.price(orderRequest.getFoods());
+        for (OrderPricingService.PricedLine line : priced.getLines()) {
             OrderFood orderFood = new OrderFood();
-            orderFood.setFood(food);
-            orderFood.setQuantity(foodItem.getQuantity());
+            orderFood.setFood(line.getFood());
+            orderFood.setQuantity(line.getQuantity());
             orderFood.setOrder(order);
             
             order.getOrderFoods().add(orderFood);
-            totalPrice += food.getPrice() * foodItem.getQuantity();
         }
+        double totalPrice = priced.getSubtotal();
         
         // Apply voucher discount
         if (orderRequest.getVoucherDiscount() != null) {
@@ -237,17 +285,13 @@ public class OrderService {
             order.setCustomer(customer);
         }
         
-        // Calculate total price and create order items
-        double totalPrice = 0.0;
-        for (FoodOrderItemDTO foodItem : orderRequest.getFoods()) {
-            Food food = foodRepository.findById(foodItem.getId())
-                    .orElseThrow(() -> new RuntimeException("Food not found: " + foodItem.getId()));
-            
-            OrderItems orderItems = new OrderItems(order, food, foodItem.getQuantity());
-            
+        // Calculate total price and create order items (all foods resolved in one query)
+        OrderPricingService.PricedOrder priced = orderPricingService.price(orderRequest.getFoods());
+        for (OrderPricingService.PricedLine line : priced.getLines()) {
+            OrderItems orderItems = new OrderItems(order, line.getFood(), line.getQuantity());
             order.getOrderItems().add(orderItems);
-            totalPrice += orderItems.getTotalPrice();
         }
+        double totalPrice = priced.getSubtotal();
         
         // Apply voucher discount
         if (orderRequest.getVoucherDiscount() != null) {
@@ -1,5 +1,8 @@
 package aptech.be.services;
 
+import aptech.be.models.OrderEntity;
+import aptech.be.repositories.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.http.HttpEntity;
@@ -9,8 +12,11 @@ import org.springframework.web.client.RestTemplate;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 
 import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.security.MessageDigest;
 import java.nio.charset.StandardCharsets;
 import javax.crypto.Mac;
@@ -18,6 +24,8 @@ import javax.crypto.spec.SecretKeySpec;
 
 @Service
 public class PayOSService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayOSService.class);
     
     @Value("${payos.clientId}")
     private String clientId;
@@ -34,8 +42,29 @@ public class PayOSService {
     @Value("${payos.cancelUrl}")
     private String cancelUrl;
     
+    @Autowired
+    private OrderRepository orderRepository;
+    
     private RestTemplate restTemplate;
     
+    // Số bit thấp của orderCode dành cho id node: orderCode = (ms << 10) | nodeId,
+    // vẫn nhỏ hơn 2^53 (giới hạn số nguyên của PayOS) tới năm ~2248
+    private static final int NODE_ID_BITS = 10;
+    
+    // Id node ghép vào orderCode để 2 node cấp mã trong cùng 1 ms không trùng nhau
+    @Value("${app.payos.node-id:-1}")
+    private int nodeId = -1;
+
+    // Chế độ nhiều node (xem application.properties): khi đó node-id bắt buộc phải được đặt riêng cho từng node
+    @Value("${app.websocket.broker:simple}")
+    private String websocketBroker;
+
+    @Value("${app.table-session.store:memory}")
+    private String tableSessionStore;
+    
+    // Phần thời gian (ms) của orderCode cuối cùng đã cấp, đảm bảo tăng dần kể cả khi nhiều request trong cùng 1 ms
+    private final AtomicLong lastOrderCode = new AtomicLong();
+    
     public PayOSService() {
         this.restTemplate = new RestTemplate();
         
@@ -49,12 +78,24 @@ public class PayOSService {
     @PostConstruct
     public void init() {
         // không log thông tin nhạy cảm ở production
+        if (nodeId >= (1 << NODE_ID_BITS)) {
+            throw new IllegalStateException("app.payos.node-id must be between 0 and " + ((1 << NODE_ID_BITS) - 1));
+        }
+        if (nodeId < 0) {
+            // Id ngẫu nhiên có thể trùng giữa 2 node → orderCode trùng trong cùng 1 ms: nhiều node thì bắt buộc đặt NODE_ID
+            if (!"simple".equalsIgnoreCase(websocketBroker) || !"memory".equalsIgnoreCase(tableSessionStore)) {
+                throw new IllegalStateException("app.payos.node-id (NODE_ID) must be set to a distinct value per instance when running "
+                        + "several nodes (app.websocket.broker=" + websocketBroker + ", app.table-session.store=" + tableSessionStore + ")");
+            }
+            nodeId = 0;
+            logger.info("app.payos.node-id not set, single-node mode: using node id 0");
+        }
     }
 
     public String createPaymentUrl(Long orderId, int amount, String orderInfo) {
         try {
-            // orderCode là SỐ hoặc CHUỖI DUY NHẤT, vẫn nên để là số thời gian cho test local
-            long orderCode = System.currentTimeMillis();
+            // orderCode là SỐ DUY NHẤT, dùng chung bộ sinh mã với luồng thanh toán thật
+            long orderCode = nextOrderCode();
 
             // Tạo chuỗi key=value theo thứ tự alphabet
             Map<String, String> params = new HashMap<>();
@@ -175,7 +216,14 @@ public class PayOSService {
     
     public String createPaymentUrlWithBuyer(Long orderId, int amount, String orderInfo, String buyerName, String buyerEmail, String buyerPhone, String buyerAddress) {
         try {
-            long orderCode = System.currentTimeMillis();
+            OrderEntity order = orderRepository.findById(orderId)
+                    .orElseThrow(() -> new RuntimeException("Order not found: " + orderId));
+
+            // Lưu orderCode vào đơn để webhook/return tra cứu trực tiếp qua unique index
+            long orderCode = nextOrderCode();
+            order.setPaymentOrderCode(orderCode);
+            orderRepository.save(order);
+
             // Các trường cần thiết cho PayOS
             Map<String, String> params = new HashMap<>();
             params.put("amount", String.valueOf(amount));
@@ -229,6 +277,12 @@ public class PayOSService {
         }
     }
     
+    // Sinh orderCode duy nhất: thời gian tăng dần đơn điệu trong JVM + id node ở các bit thấp
+    private long nextOrderCode() {
+        long millis = lastOrderCode.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+        return (millis << NODE_ID_BITS) | nodeId;
+    }
+    
     // Hàm tạo SHA256 hash
     private String sha256(String base) {
         try {
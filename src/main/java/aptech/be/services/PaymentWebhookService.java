@@ -0,0 +1,260 @@
+package aptech.be.services;
+
+import aptech.be.models.OrderEntity;
+import aptech.be.models.OrderStatusHistory;
+import aptech.be.models.PaymentWebhookEvent;
+import aptech.be.repositories.OrderRepository;
+import aptech.be.repositories.OrderStatusHistoryRepository;
+import aptech.be.repositories.PaymentWebhookEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Xử lý webhook PayOS qua inbox:
+ * - receive(): ghi inbox (unique delivery_key) rồi trả lời PayOS ngay → PayOS không retry vì chờ lâu
+ * - worker pool lấy sự kiện từ inbox, xử lý at-least-once; handler idempotent (trạng thái đơn, ledger điểm, outbox email)
+ */
+@Service
+public class PaymentWebhookService {
+
+    public static final String PROVIDER_PAYOS = "PAYOS";
+
+    private static final Duration STALE_LOCK = Duration.ofMinutes(5);
+
+    @Autowired
+    private PaymentWebhookEventRepository paymentWebhookEventRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderStatusHistoryRepository orderStatusHistoryRepository;
+
+    @Autowired
+    private CustomerPointService customerPointService;
+
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("paymentWebhookExecutor")
+    private ThreadPoolTaskExecutor paymentWebhookExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.payment-webhook.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.payment-webhook.max-attempts:10}")
+    private int maxAttempts;
+
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private Timer processingTimer;
+    private Counter duplicateCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("payment.webhook.inbox.pending", pendingCount, AtomicLong::get)
+                .description("Webhook chưa xử lý trong inbox")
+                .register(meterRegistry);
+        Gauge.builder("payment.webhook.inbox.lag.seconds", lagSeconds, AtomicLong::get)
+                .description("Tuổi của webhook chưa xử lý lâu nhất")
+                .register(meterRegistry);
+        processingTimer = Timer.builder("payment.webhook.processing")
+                .description("Thời gian xử lý 1 webhook")
+                .register(meterRegistry);
+        duplicateCounter = Counter.builder("payment.webhook.duplicates")
+                .description("Webhook PayOS gửi lại đã có trong inbox")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("payment.webhook.failed")
+                .description("Webhook bỏ qua sau khi hết số lần thử")
+                .register(meterRegistry);
+    }
+
+    public static String deliveryKey(String orderCode, String status) {
+        return PROVIDER_PAYOS + ":" + orderCode + ":" + status;
+    }
+
+    /**
+     * Ghi webhook (đã verify chữ ký) vào inbox. Trả về false nếu là lần gửi lại của sự kiện đã nhận.
+     */
+    public boolean receive(Map<String, Object> webhookData) {
+        String orderCode = String.valueOf(webhookData.get("orderCode"));
+        String status = webhookData.get("status") != null ? String.valueOf(webhookData.get("status")) : null;
+        String deliveryKey = deliveryKey(orderCode, status);
+
+        if (paymentWebhookEventRepository.existsByDeliveryKey(deliveryKey)) {
+            duplicateCounter.increment();
+            return false;
+        }
+
+        PaymentWebhookEvent event = new PaymentWebhookEvent();
+        event.setDeliveryKey(deliveryKey);
+        event.setProvider(PROVIDER_PAYOS);
+        event.setOrderCode(orderCode);
+        event.setPaymentStatus(status);
+        event.setPayload(toJson(webhookData));
+        event.setReceivedAt(LocalDateTime.now());
+        event.setNextAttemptAt(LocalDateTime.now());
+        try {
+            paymentWebhookEventRepository.saveAndFlush(event);
+        } catch (DataIntegrityViolationException e) {
+            // 2 lần gửi đồng thời: bên sau vi phạm unique delivery_key
+            duplicateCounter.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Lấy các sự kiện đến hạn và giao cho worker pool
+     */
+    @Scheduled(fixedDelayString = "${app.payment-webhook.poll-interval-ms:1000}")
+    public void dispatchPending() {
+        LocalDateTime now = LocalDateTime.now();
+        paymentWebhookEventRepository.releaseStale(now.minus(STALE_LOCK));
+
+        List<Long> dueIds = paymentWebhookEventRepository.findDueIds(now, PageRequest.of(0, batchSize));
+        for (Long id : dueIds) {
+            if (paymentWebhookEventRepository.claim(id, LocalDateTime.now()) == 0) {
+                continue;
+            }
+            try {
+                paymentWebhookExecutor.execute(() -> process(id));
+            } catch (TaskRejectedException e) {
+                // Pool đầy: trả lại inbox, lần poll sau xử lý tiếp
+                paymentWebhookEventRepository.release(id);
+                break;
+            }
+        }
+        updateLagMetrics();
+    }
+
+    private void process(Long eventId) {
+        processingTimer.record(() -> {
+            PaymentWebhookEvent event = paymentWebhookEventRepository.findById(eventId).orElse(null);
+            if (event == null) {
+                return;
+            }
+            try {
+                String outcome = new TransactionTemplate(transactionManager).execute(status -> handle(event));
+                event.setState(PaymentWebhookEvent.STATE_DONE);
+                event.setLastError(outcome);
+                event.setProcessedAt(LocalDateTime.now());
+            } catch (Exception e) {
+                event.setLastError(truncate(e.getMessage()));
+                if (event.getAttempts() >= maxAttempts) {
+                    event.setState(PaymentWebhookEvent.STATE_FAILED);
+                    failedCounter.increment();
+                    System.err.println("[PAYOS WEBHOOK] Giving up on " + event.getDeliveryKey() + ": " + e.getMessage());
+                } else {
+                    event.setState(PaymentWebhookEvent.STATE_PENDING);
+                    // Backoff: 5s, 10s, 20s, ... tối đa 10 phút
+                    long delay = Math.min(5L << Math.min(event.getAttempts() - 1, 10), 600L);
+                    event.setNextAttemptAt(LocalDateTime.now().plusSeconds(delay));
+                }
+            }
+            event.setLockedAt(null);
+            paymentWebhookEventRepository.save(event);
+        });
+    }
+
+    /**
+     * Áp dụng sự kiện lên đơn hàng. Chạy lại nhiều lần vẫn cho cùng kết quả.
+     * @return ghi chú khi sự kiện không cần xử lý (đơn đã được cập nhật trước đó), null nếu đã xử lý
+     */
+    private String handle(PaymentWebhookEvent event) {
+        Long paymentOrderCode;
+        try {
+            paymentOrderCode = Long.valueOf(event.getOrderCode());
+        } catch (NumberFormatException e) {
+            return "Invalid orderCode: " + event.getOrderCode();
+        }
+        OrderEntity order = orderRepository.findByPaymentOrderCode(paymentOrderCode)
+                .orElseThrow(() -> new RuntimeException("Order not found with orderCode: " + event.getOrderCode()));
+
+        if (!"WAITING_PAYMENT".equals(order.getStatus())) {
+            // Đã xử lý (webhook trước / return URL) hoặc đơn đã bị hủy
+            return "Order is not waiting for payment: " + order.getStatus();
+        }
+
+        if ("PAID".equals(event.getPaymentStatus())) {
+            order.setStatus("PAID");
+            order.setConfirmStatus("PAID");
+            order.setDeliveryStatus("PREPARING");
+            orderRepository.save(order);
+            addOrderStatusHistory(order, "PAID", "Thanh toán thành công qua PayOS");
+
+            int pointsAdded = customerPointService.awardOrderPoints(order);
+            emailOutboxService.enqueuePaymentSuccess(order, pointsAdded);
+        } else {
+            order.setStatus("CANCELLED");
+            order.setConfirmStatus("CANCELLED");
+            order.setDeliveryStatus("CANCELLED");
+            orderRepository.save(order);
+            addOrderStatusHistory(order, "FAILED", "Thanh toán thất bại qua PayOS");
+        }
+        return null;
+    }
+
+    private void addOrderStatusHistory(OrderEntity order, String status, String note) {
+        OrderStatusHistory history = new OrderStatusHistory();
+        history.setOrder(order);
+        history.setStatus(status);
+        history.setNote(note);
+        history.setChangedAt(LocalDateTime.now());
+        history.setChangedBy("system");
+        orderStatusHistoryRepository.save(history);
+    }
+
+    private void updateLagMetrics() {
+        pendingCount.set(paymentWebhookEventRepository.countByState(PaymentWebhookEvent.STATE_PENDING));
+        LocalDateTime oldest = paymentWebhookEventRepository.findOldestUnprocessedReceivedAt();
+        lagSeconds.set(oldest != null ? Math.max(Duration.between(oldest, LocalDateTime.now()).getSeconds(), 0) : 0);
+    }
+
+    private String toJson(Map<String, Object> data) {
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (Exception e) {
+            return String.valueOf(data);
+        }
+    }
+
+    private String truncate(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() > 1000 ? value.substring(0, 1000) : value;
+    }
+}
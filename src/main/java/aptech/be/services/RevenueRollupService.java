@@ -0,0 +1,191 @@
+package aptech.be.services;
+
+import aptech.be.models.DailyRevenueRollup;
+import aptech.be.models.DailyRevenueRollupId;
+import aptech.be.models.OrderEntity;
+import aptech.be.repositories.DailyRevenueRollupRepository;
+import aptech.be.repositories.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Duy trì bảng daily_revenue_rollup.
+ * - Cộng dồn ngay khi đơn đạt PAID / COMPLETED / DELIVERED (mỗi đơn đúng 1 lần, đánh dấu bằng orders.revenue_recorded_at)
+ * - Đối soát hằng đêm: tính lại các ngày gần đây từ bảng orders để sửa sai lệch (đơn bị hủy sau khi thanh toán, lần cộng bị lỗi...)
+ */
+@Service
+public class RevenueRollupService {
+
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private static final LocalDate HISTORY_START = LocalDate.of(2020, 1, 1);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private DailyRevenueRollupRepository dailyRevenueRollupRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.revenue-rollup.reconcile-days:7}")
+    private int reconcileDays;
+
+    /**
+     * Đơn có được tính vào doanh thu không (cùng điều kiện với các query dashboard)
+     */
+    public static boolean isRevenueOrder(OrderEntity order) {
+        return "DELIVERED".equals(order.getDeliveryStatus())
+                || "PAID".equals(order.getStatus())
+                || "COMPLETED".equals(order.getStatus());
+    }
+
+    public static DailyRevenueRollupId rollupKey(LocalDate revenueDate, String orderType, String paymentMethod) {
+        return new DailyRevenueRollupId(revenueDate,
+                orderType != null ? orderType : UNKNOWN,
+                paymentMethod != null ? paymentMethod : UNKNOWN);
+    }
+
+    /**
+     * Cộng đơn vào rollup trong transaction riêng; bỏ qua nếu đơn đã được cộng hoặc chưa đủ điều kiện
+     */
+    public void recordOrder(Long orderId) {
+        newTransaction().executeWithoutResult(status -> doRecordOrder(orderId));
+    }
+
+    private void doRecordOrder(Long orderId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (orderRepository.markRevenueRecorded(orderId, now) == 0) {
+            return;
+        }
+        OrderEntity order = orderRepository.findById(orderId).orElse(null);
+        if (order == null) {
+            return;
+        }
+
+        LocalDate revenueDate = order.getCreatedAt() != null ? order.getCreatedAt().toLocalDate() : now.toLocalDate();
+        DailyRevenueRollupId key = rollupKey(revenueDate, order.getOrderType(), order.getPaymentMethod());
+        double amount = order.getTotalPrice() != null ? order.getTotalPrice() : 0.0;
+
+        int updated = dailyRevenueRollupRepository.increment(key.getRevenueDate(), key.getOrderType(),
+                key.getPaymentMethod(), amount, 1L, now);
+        if (updated == 0) {
+            dailyRevenueRollupRepository.saveAndFlush(new DailyRevenueRollup(key, amount, 1L));
+        }
+    }
+
+    /**
+     * Gọi sau khi transaction cập nhật đơn đã commit; lỗi không được làm hỏng luồng chính.
+     * Khi 2 đơn cùng tạo dòng mới cho 1 key, bên thua sẽ vi phạm khóa chính và được thử lại (lúc này dòng đã tồn tại).
+     */
+    public void recordOrderSafely(Long orderId) {
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            try {
+                recordOrder(orderId);
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (attempt == 2) {
+                    System.err.println("[RevenueRollup] Failed to record order " + orderId + ": " + e.getMessage());
+                }
+            } catch (Exception e) {
+                System.err.println("[RevenueRollup] Failed to record order " + orderId + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tính lại rollup cho [fromDate, toDate] từ bảng orders
+     */
+    public int reconcile(LocalDate fromDate, LocalDate toDate) {
+        Integer rows = newTransaction().execute(status -> doReconcile(fromDate, toDate));
+        return rows != null ? rows : 0;
+    }
+
+    private int doReconcile(LocalDate fromDate, LocalDate toDate) {
+        LocalDateTime start = fromDate.atStartOfDay();
+        LocalDateTime end = toDate.plusDays(1).atStartOfDay();
+
+        // Đơn đủ điều kiện nhưng lần cộng trực tiếp bị lỡ
+        orderRepository.markRevenueRecordedBetween(start, end, LocalDateTime.now());
+
+        Map<DailyRevenueRollupId, DailyRevenueRollup> rows = new LinkedHashMap<>();
+        for (Object[] row : orderRepository.getRevenueRollupRows(start, end)) {
+            DailyRevenueRollupId key = rollupKey(toLocalDate(row[0]), (String) row[1], (String) row[2]);
+            double revenue = ((Number) row[3]).doubleValue();
+            long orderCount = ((Number) row[4]).longValue();
+            rows.merge(key, new DailyRevenueRollup(key, revenue, orderCount), (a, b) -> {
+                a.setRevenue(a.getRevenue() + b.getRevenue());
+                a.setOrderCount(a.getOrderCount() + b.getOrderCount());
+                return a;
+            });
+        }
+
+        dailyRevenueRollupRepository.deleteByRevenueDateBetween(fromDate, toDate);
+        dailyRevenueRollupRepository.saveAll(rows.values());
+        return rows.size();
+    }
+
+    /**
+     * Đối soát hằng đêm các ngày gần đây (mặc định 7 ngày, tới hết hôm qua)
+     */
+    @Scheduled(cron = "${app.revenue-rollup.reconcile-cron:0 30 2 * * *}")
+    public void reconcileRecentDays() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        try {
+            int rows = reconcile(yesterday.minusDays(Math.max(reconcileDays, 1) - 1L), yesterday);
+            System.out.println("[RevenueRollup] Reconciled last " + reconcileDays + " days (" + rows + " rows)");
+        } catch (Exception e) {
+            System.err.println("[RevenueRollup] Reconciliation failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Môi trường chưa chạy migration backfill (dev dùng ddl-auto) → dựng rollup từ toàn bộ lịch sử một lần
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        try {
+            if (dailyRevenueRollupRepository.count() == 0) {
+                int rows = reconcile(HISTORY_START, LocalDate.now());
+                System.out.println("[RevenueRollup] Backfilled daily_revenue_rollup (" + rows + " rows)");
+            }
+        } catch (Exception e) {
+            System.err.println("[RevenueRollup] Backfill failed: " + e.getMessage());
+        }
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+
+    private LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).toLocalDate();
+        }
+        return LocalDate.parse(value.toString());
+    }
+}
@@ -0,0 +1,217 @@
+package aptech.be.services;
+
+import aptech.be.dto.dashboard.RevenueDataPoint;
+import aptech.be.repositories.DailyRevenueRollupRepository;
+import aptech.be.repositories.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time-series doanh thu cho dashboard admin.
+ * Mỗi khoảng thời gian chỉ chạy 1 query GROUP BY (bucket, orderType) trên [kỳ trước, hiện tại),
+ * kỳ trước có cùng độ dài và được dùng để tính tăng trưởng. Với bucket đọc từ rollup (tính trọn ngày),
+ * cả 2 kỳ được căn theo ranh giới ngày và có cùng số ngày để không đếm dư 1 ngày lẻ.
+ * Bucket theo ngày/tuần/tháng đọc từ daily_revenue_rollup; chỉ bucket theo giờ (hôm nay) mới quét bảng orders.
+ */
+@Service
+public class RevenueSeriesService {
+
+    public enum Granularity { HOUR, DAY, WEEK, MONTH }
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private DailyRevenueRollupRepository dailyRevenueRollupRepository;
+
+    /**
+     * Chọn kích thước bucket theo timeRange của dashboard
+     */
+    public static Granularity granularityFor(String timeRange) {
+        switch (timeRange == null ? "" : timeRange.toLowerCase()) {
+            case "today":
+                return Granularity.HOUR;
+            case "year":
+                return Granularity.WEEK;
+            case "all":
+                return Granularity.MONTH;
+            case "week":
+            case "month":
+            default:
+                return Granularity.DAY;
+        }
+    }
+
+    public RevenueSeries getSeries(LocalDateTime startDate, LocalDateTime endDate, Granularity granularity) {
+        LocalDateTime currentStart;
+        LocalDateTime previousStart;
+        if (granularity == Granularity.HOUR) {
+            currentStart = startDate;
+            previousStart = startDate.minus(Duration.between(startDate, endDate));
+        } else {
+            // Rollup lưu theo ngày và query lấy trọn ngày [from, to]: kỳ trước = N ngày trọn ngay trước ngày bắt đầu
+            LocalDate startDay = startDate.toLocalDate();
+            long days = ChronoUnit.DAYS.between(startDay, endDate.toLocalDate()) + 1;
+            currentStart = startDay.atStartOfDay();
+            previousStart = startDay.minusDays(days).atStartOfDay();
+        }
+
+        // Khởi tạo đủ bucket (kể cả bucket không có đơn) để biểu đồ liên tục
+        Map<LocalDateTime, RevenueDataPoint> buckets = new LinkedHashMap<>();
+        for (LocalDateTime bucket = bucketStart(currentStart, granularity); !bucket.isAfter(endDate); bucket = nextBucket(bucket, granularity)) {
+            RevenueDataPoint point = new RevenueDataPoint(bucket.toLocalDate(), BigDecimal.ZERO, 0,
+                    BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+            point.setBucketStart(bucket);
+            buckets.put(bucket, point);
+        }
+
+        BigDecimal currentTotal = BigDecimal.ZERO;
+        BigDecimal previousTotal = BigDecimal.ZERO;
+
+        for (Object[] row : queryRows(previousStart, endDate, granularity)) {
+            // Cột cuối luôn là SUM(totalPrice), COUNT(o); cột trước đó là orderType
+            int n = row.length;
+            String orderType = (String) row[n - 3];
+            BigDecimal revenue = BigDecimal.valueOf(((Number) row[n - 2]).doubleValue()).setScale(2, RoundingMode.HALF_UP);
+            int orderCount = ((Number) row[n - 1]).intValue();
+            LocalDateTime rowTime = rowTime(row, granularity);
+
+            if (rowTime.isBefore(currentStart)) {
+                previousTotal = previousTotal.add(revenue);
+                continue;
+            }
+            currentTotal = currentTotal.add(revenue);
+
+            RevenueDataPoint point = buckets.get(bucketStart(rowTime, granularity));
+            if (point == null) {
+                continue;
+            }
+            point.setRevenue(point.getRevenue().add(revenue));
+            point.setOrderCount(point.getOrderCount() + orderCount);
+            if ("DELIVERY".equals(orderType)) {
+                point.setDeliveryRevenue(point.getDeliveryRevenue().add(revenue));
+            } else if ("DINE_IN".equals(orderType)) {
+                point.setDineInRevenue(point.getDineInRevenue().add(revenue));
+            } else if ("TAKE_AWAY".equals(orderType)) {
+                point.setTakeAwayRevenue(point.getTakeAwayRevenue().add(revenue));
+            }
+        }
+
+        return new RevenueSeries(granularity, new ArrayList<>(buckets.values()), currentTotal, previousTotal,
+                growthPercent(currentTotal, previousTotal));
+    }
+
+    /**
+     * Tăng trưởng (%) của kỳ hiện tại so với kỳ trước
+     */
+    public static BigDecimal growthPercent(BigDecimal current, BigDecimal previous) {
+        if (previous == null || previous.compareTo(BigDecimal.ZERO) == 0) {
+            return current != null && current.compareTo(BigDecimal.ZERO) > 0 ? BigDecimal.valueOf(100) : BigDecimal.ZERO;
+        }
+        return current.subtract(previous)
+                .multiply(BigDecimal.valueOf(100))
+                .divide(previous, 2, RoundingMode.HALF_UP);
+    }
+
+    private List<Object[]> queryRows(LocalDateTime from, LocalDateTime to, Granularity granularity) {
+        switch (granularity) {
+            case HOUR:
+                return orderRepository.getRevenueByHourAndOrderType(from, to);
+            case MONTH:
+                return dailyRevenueRollupRepository.getRevenueByMonthAndOrderType(from.toLocalDate(), to.toLocalDate());
+            case DAY:
+            case WEEK:
+            default:
+                // WEEK được gộp từ dữ liệu theo ngày
+                return dailyRevenueRollupRepository.getRevenueByDateAndOrderType(from.toLocalDate(), to.toLocalDate());
+        }
+    }
+
+    private LocalDateTime rowTime(Object[] row, Granularity granularity) {
+        switch (granularity) {
+            case HOUR:
+                return toLocalDate(row[0]).atTime(((Number) row[1]).intValue(), 0);
+            case MONTH:
+                return LocalDate.of(((Number) row[0]).intValue(), ((Number) row[1]).intValue(), 1).atStartOfDay();
+            default:
+                return toLocalDate(row[0]).atStartOfDay();
+        }
+    }
+
+    private LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).toLocalDate();
+        }
+        return LocalDate.parse(value.toString());
+    }
+
+    private LocalDateTime bucketStart(LocalDateTime time, Granularity granularity) {
+        switch (granularity) {
+            case HOUR:
+                return time.withMinute(0).withSecond(0).withNano(0);
+            case WEEK:
+                return time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            case MONTH:
+                return time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+            case DAY:
+            default:
+                return time.toLocalDate().atStartOfDay();
+        }
+    }
+
+    private LocalDateTime nextBucket(LocalDateTime bucket, Granularity granularity) {
+        switch (granularity) {
+            case HOUR:
+                return bucket.plusHours(1);
+            case WEEK:
+                return bucket.plusWeeks(1);
+            case MONTH:
+                return bucket.plusMonths(1);
+            case DAY:
+            default:
+                return bucket.plusDays(1);
+        }
+    }
+
+    public static class RevenueSeries {
+        private final Granularity granularity;
+        private final List<RevenueDataPoint> points;
+        private final BigDecimal currentTotal;
+        private final BigDecimal previousTotal;
+        private final BigDecimal growthPercent;
+
+        public RevenueSeries(Granularity granularity, List<RevenueDataPoint> points, BigDecimal currentTotal,
+                             BigDecimal previousTotal, BigDecimal growthPercent) {
+            this.granularity = granularity;
+            this.points = points;
+            this.currentTotal = currentTotal;
+            this.previousTotal = previousTotal;
+            this.growthPercent = growthPercent;
+        }
+
+        public Granularity getGranularity() { return granularity; }
+        public List<RevenueDataPoint> getPoints() { return points; }
+        public BigDecimal getCurrentTotal() { return currentTotal; }
+        public BigDecimal getPreviousTotal() { return previousTotal; }
+        public BigDecimal getGrowthPercent() { return growthPercent; }
+    }
+}
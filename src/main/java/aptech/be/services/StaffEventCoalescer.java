@@ -0,0 +1,131 @@
+package aptech.be.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gộp sự kiện trạng thái gửi cho dashboard staff (/topic/staff/orders, /topic/staff/tables):
+ * - sự kiện đầu tiên của 1 topic mở cửa sổ app.ws.coalesce.flush-ms; trong cửa sổ chỉ giữ trạng thái mới nhất mỗi entity
+ * - hết cửa sổ: 1 entity → gửi payload như cũ; nhiều entity → 1 frame {"type":"BATCH","topic","count","items":[...]}
+ * - flush-ms = 0 → tắt gộp, gửi ngay
+ */
+@Component
+public class StaffEventCoalescer {
+
+    @Autowired
+    private WebSocketEventLog webSocketEventLog;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.ws.coalesce.flush-ms:150}")
+    private long flushIntervalMs;
+
+    private final Map<String, TopicBuffer> buffers = new ConcurrentHashMap<>();
+    private final AtomicLong anonymousKeys = new AtomicLong();
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        // Thread riêng, không dùng chung scheduler của các job @Scheduled
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "staff-event-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        buffers.keySet().forEach(this::flush);
+    }
+
+    /**
+     * Đưa trạng thái mới nhất của entity vào cửa sổ gộp của topic; entityKey null → không gộp với sự kiện khác
+     */
+    public void publish(String topic, Object entityKey, Object payload) {
+        counter("ws.coalesce.events", topic).increment();
+        if (flushIntervalMs <= 0) {
+            send(topic, payload);
+            return;
+        }
+        String key = entityKey != null ? entityKey.toString() : "_" + anonymousKeys.incrementAndGet();
+        TopicBuffer buffer = buffers.computeIfAbsent(topic, t -> new TopicBuffer());
+        boolean scheduleFlush;
+        boolean replaced;
+        synchronized (buffer) {
+            scheduleFlush = buffer.latest.isEmpty();
+            // remove + put: entity cập nhật lại được xếp theo lần cập nhật cuối
+            replaced = buffer.latest.remove(key) != null;
+            buffer.latest.put(key, payload);
+        }
+        if (replaced) {
+            counter("ws.coalesce.saved", topic).increment();
+        }
+        if (scheduleFlush) {
+            flusher.schedule(() -> flush(topic), flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(String topic) {
+        TopicBuffer buffer = buffers.get(topic);
+        if (buffer == null) {
+            return;
+        }
+        List<Object> items;
+        synchronized (buffer) {
+            if (buffer.latest.isEmpty()) {
+                return;
+            }
+            items = new ArrayList<>(buffer.latest.values());
+            buffer.latest.clear();
+        }
+        try {
+            if (items.size() == 1) {
+                send(topic, items.get(0));
+            } else {
+                Map<String, Object> frame = new LinkedHashMap<>();
+                frame.put("type", "BATCH");
+                frame.put("topic", topic);
+                frame.put("count", items.size());
+                frame.put("items", items);
+                send(topic, frame);
+                counter("ws.coalesce.saved", topic).increment(items.size() - 1);
+            }
+        } catch (Exception e) {
+            System.err.println("[WS-COALESCE] Failed to flush " + topic + ": " + e.getMessage());
+        }
+    }
+
+    private void send(String topic, Object payload) {
+        webSocketEventLog.publish(topic, payload);
+        counter("ws.coalesce.frames", topic).increment();
+    }
+
+    private Counter counter(String name, String topic) {
+        return Counter.builder(name)
+                .tag("topic", topic)
+                .description("Sự kiện dashboard staff: events nhận vào, frames đã gửi, saved = số message tiết kiệm nhờ gộp")
+                .register(meterRegistry);
+    }
+
+    private static final class TopicBuffer {
+        private final LinkedHashMap<String, Object> latest = new LinkedHashMap<>();
+    }
+}
@@ -1,13 +1,16 @@
 package aptech.be.services;
 
+import aptech.be.services.tablesession.TableSessionStore;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class TableSessionService {
@@ -15,17 +18,34 @@ public class TableSessionService {
     @Autowired
     private WebSocketNotificationService notificationService;
     
-    // In-memory storage for table sessions (in production, use Redis or database)
-    private final Map<Long, TableSession> tableSessions = new ConcurrentHashMap<>();
-    private final Map<Long, StaffCall> pendingStaffCalls = new ConcurrentHashMap<>();
-    private final Map<Long, PaymentRequest> pendingPaymentRequests = new ConcurrentHashMap<>();
+    // Phiên bàn, gọi nhân viên, yêu cầu thanh toán (bộ nhớ hoặc Redis, xem app.table-session.store)
+    @Autowired
+    private TableSessionStore tableSessionStore;
+    
+    // Gỡ gọi nhân viên / yêu cầu thanh toán đúng lúc hết hạn và báo dashboard
+    @Autowired
+    private ExpiryScheduler expiryScheduler;
+    
+    // TTL trong store dài hơn deadline một chút: chỉ là lưới an toàn nếu node hẹn giờ bị tắt
+    private static final Duration STORE_TTL_GRACE = Duration.ofSeconds(30);
+    
+    // Gọi nhân viên tự hết hạn sau 1 phút
+    @Value("${app.table-session.staff-call-ttl-seconds:60}")
+    private long staffCallTtlSeconds;
+    
+    @Value("${app.table-session.payment-request-ttl-minutes:180}")
+    private long paymentRequestTtlMinutes;
+    
+    @Value("${app.table-session.session-ttl-hours:12}")
+    private long sessionTtlHours;
     
     /**
      * Create a staff call for a table (with table number)
      */
     public void createStaffCall(Long tableId, String reason, int tableNumber) {
         StaffCall staffCall = new StaffCall(tableId, reason, LocalDateTime.now());
-        pendingStaffCalls.put(tableId, staffCall);
+        tableSessionStore.putStaffCall(staffCall, Duration.ofSeconds(staffCallTtlSeconds).plus(STORE_TTL_GRACE));
+        scheduleStaffCallExpiry(staffCall);
         
         // Send real-time notification to staff dashboard
         notificationService.sendStaffCallNotification(tableId, reason, tableNumber);
@@ -41,36 +61,13 @@ public class TableSessionService {
         createStaffCall(tableId, reason, 0);
     }
     
-    /**
-     * Auto-dismiss staff calls after 1 minute
-     * Runs every 30 seconds to check for expired calls
-     */
-    @Scheduled(fixedRate = 30000) // Run every 30 seconds
-    public void autoDismissExpiredStaffCalls() {
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime oneMinuteAgo = now.minusMinutes(1);
-        
-        pendingStaffCalls.entrySet().removeIf(entry -> {
-            StaffCall call = entry.getValue();
-            if (call.getCallTime().isBefore(oneMinuteAgo)) {
-                System.out.println("Auto-dismissing expired staff call for table " + entry.getKey() + 
-                                 " (created at " + call.getCallTime() + ")");
-                
-                // TODO: Send notification to remove the call from staff dashboard
-                // notificationService.sendStaffCallDismissed(entry.getKey());
-                
-                return true; // Remove this entry
-            }
-            return false; // Keep this entry
-        });
-    }
-    
     /**
      * Create a payment request for a table (with table number)
      */
     public void createPaymentRequest(Long tableId, int tableNumber) {
         PaymentRequest paymentRequest = new PaymentRequest(tableId, LocalDateTime.now());
-        pendingPaymentRequests.put(tableId, paymentRequest);
+        tableSessionStore.putPaymentRequest(paymentRequest, Duration.ofMinutes(paymentRequestTtlMinutes).plus(STORE_TTL_GRACE));
+        schedulePaymentRequestExpiry(paymentRequest);
         
         // Send real-time notification to staff dashboard
         notificationService.sendPaymentRequestNotification(tableId, tableNumber);
@@ -90,13 +87,13 @@ public class TableSessionService {
     public Map<String, Object> getTableSessionInfo(Long tableId) {
         Map<String, Object> sessionInfo = new HashMap<>();
         
-        TableSession session = tableSessions.get(tableId);
+        TableSession session = tableSessionStore.getSession(tableId);
         if (session != null) {
             sessionInfo.put("sessionId", session.getSessionId());
             sessionInfo.put("startTime", session.getStartTime());
         }
         
-        StaffCall staffCall = pendingStaffCalls.get(tableId);
+        StaffCall staffCall = tableSessionStore.getStaffCall(tableId);
         if (staffCall != null) {
             sessionInfo.put("hasPendingStaffCall", true);
             sessionInfo.put("staffCallReason", staffCall.getReason());
@@ -105,7 +102,7 @@ public class TableSessionService {
             sessionInfo.put("hasPendingStaffCall", false);
         }
         
-        PaymentRequest paymentRequest = pendingPaymentRequests.get(tableId);
+        PaymentRequest paymentRequest = tableSessionStore.getPaymentRequest(tableId);
         if (paymentRequest != null) {
             sessionInfo.put("hasPendingPaymentRequest", true);
             sessionInfo.put("paymentRequestTime", paymentRequest.getRequestTime());
@@ -120,28 +117,38 @@ public class TableSessionService {
      * Get all pending staff calls (for staff dashboard)
      */
     public Map<Long, StaffCall> getAllPendingStaffCalls() {
-        return new HashMap<>(pendingStaffCalls);
+        return tableSessionStore.getAllStaffCalls();
     }
     
     /**
      * Get all pending payment requests (for staff dashboard)
      */
     public Map<Long, PaymentRequest> getAllPendingPaymentRequests() {
-        return new HashMap<>(pendingPaymentRequests);
+        return tableSessionStore.getAllPaymentRequests();
     }
     
     /**
-     * Resolve staff call
+     * Resolve staff call; false nếu đã được xử lý / hết hạn trước đó
      */
-    public void resolveStaffCall(Long tableId) {
-        pendingStaffCalls.remove(tableId);
+    public boolean resolveStaffCall(Long tableId) {
+        expiryScheduler.cancel(staffCallKey(tableId));
+        boolean resolved = tableSessionStore.removeStaffCall(tableId);
+        if (resolved) {
+            notificationService.sendStaffCallDismissed(tableId, "RESOLVED");
+        }
+        return resolved;
     }
     
     /**
-     * Resolve payment request
+     * Resolve payment request; false nếu đã được xử lý / hết hạn trước đó
      */
-    public void resolvePaymentRequest(Long tableId) {
-        pendingPaymentRequests.remove(tableId);
+    public boolean resolvePaymentRequest(Long tableId) {
+        expiryScheduler.cancel(paymentRequestKey(tableId));
+        boolean resolved = tableSessionStore.removePaymentRequest(tableId);
+        if (resolved) {
+            notificationService.sendPaymentRequestDismissed(tableId, "RESOLVED");
+        }
+        return resolved;
     }
     
     /**
@@ -149,29 +156,73 @@ public class TableSessionService {
      */
     public void createTableSession(Long tableId, String sessionId) {
         TableSession session = new TableSession(sessionId, tableId, LocalDateTime.now());
-        tableSessions.put(tableId, session);
+        tableSessionStore.putSession(session, Duration.ofHours(sessionTtlHours));
     }
     
     /**
      * End table session
      */
     public void endTableSession(Long tableId) {
-        tableSessions.remove(tableId);
-        pendingStaffCalls.remove(tableId);
-        pendingPaymentRequests.remove(tableId);
+        cancelExpiries(tableId);
+        tableSessionStore.removeTable(tableId);
     }
 
     public void endSession(Long tableId) {
-        // Remove any pending staff calls and payment requests
-        pendingStaffCalls.remove(tableId);
-        pendingPaymentRequests.remove(tableId);
-        
-        // Clear the table session
-        tableSessions.remove(tableId);
+        // Remove any pending staff calls and payment requests, and clear the table session
+        cancelExpiries(tableId);
+        tableSessionStore.removeTable(tableId);
         
         System.out.println("Table session ended for table: " + tableId);
     }
     
+    /**
+     * Hẹn lại giờ hết hạn cho các mục còn trong store khi khởi động (store Redis giữ được qua restart);
+     * mục đã quá hạn được gỡ ngay. Nhiều node cùng hẹn thì chỉ node gỡ được mục mới gửi thông báo.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rescheduleExpiries() {
+        try {
+            tableSessionStore.getAllStaffCalls().values().forEach(this::scheduleStaffCallExpiry);
+            tableSessionStore.getAllPaymentRequests().values().forEach(this::schedulePaymentRequestExpiry);
+        } catch (Exception e) {
+            System.err.println("[TABLE SESSION ERROR] Failed to reschedule expiries: " + e.getMessage());
+        }
+    }
+    
+    private void scheduleStaffCallExpiry(StaffCall staffCall) {
+        Long tableId = staffCall.getTableId();
+        LocalDateTime callTime = staffCall.getCallTime();
+        expiryScheduler.schedule(staffCallKey(tableId), callTime.plusSeconds(staffCallTtlSeconds), () -> {
+            // Chỉ gỡ đúng lần gọi này; bàn đã gọi lại thì lần mới có hẹn giờ riêng
+            if (tableSessionStore.removeStaffCallIfUnchanged(tableId, callTime)) {
+                notificationService.sendStaffCallDismissed(tableId, "EXPIRED");
+            }
+        });
+    }
+    
+    private void schedulePaymentRequestExpiry(PaymentRequest paymentRequest) {
+        Long tableId = paymentRequest.getTableId();
+        LocalDateTime requestTime = paymentRequest.getRequestTime();
+        expiryScheduler.schedule(paymentRequestKey(tableId), requestTime.plusMinutes(paymentRequestTtlMinutes), () -> {
+            if (tableSessionStore.removePaymentRequestIfUnchanged(tableId, requestTime)) {
+                notificationService.sendPaymentRequestDismissed(tableId, "EXPIRED");
+            }
+        });
+    }
+    
+    private void cancelExpiries(Long tableId) {
+        expiryScheduler.cancel(staffCallKey(tableId));
+        expiryScheduler.cancel(paymentRequestKey(tableId));
+    }
+    
+    private static String staffCallKey(Long tableId) {
+        return "staff-call:" + tableId;
+    }
+    
+    private static String paymentRequestKey(Long tableId) {
+        return "payment-request:" + tableId;
+    }
+    
     // Private methods for notifications (implement with WebSocket/SSE in production)
     private void notifyStaff(StaffCall staffCall) {
         // TODO: Implement real-time notification to staff dashboard
@@ -0,0 +1,169 @@
+package aptech.be.services;
+
+import aptech.be.dto.dashboard.VIPCustomer;
+import aptech.be.repositories.CustomerRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Bảng xếp hạng khách hàng VIP theo điểm.
+ * Giữ top-K (customerId, point) trong bộ nhớ, cập nhật dần mỗi khi điểm thay đổi;
+ * mỗi lần đọc chỉ chạy 1 query tổng hợp đơn hàng cho đúng K khách trong top.
+ * Top-K là bộ nhớ riêng của từng node và chỉ được cập nhật bởi thay đổi điểm xảy ra trên node đó;
+ * khi chạy nhiều node, mỗi node nạp lại top-K từ DB sau app.vip-leaderboard.refresh-seconds
+ * nên bảng xếp hạng giữa các node chỉ lệch nhau tối đa chừng đó thời gian.
+ */
+@Service
+public class VipLeaderboardService {
+
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingInt((Entry e) -> e.points).reversed()
+            .thenComparing(e -> e.customerId);
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Value("${app.vip-leaderboard.size:100}")
+    private int capacity;
+
+    @Value("${app.vip-leaderboard.refresh-seconds:30}")
+    private long refreshSeconds;
+
+    private final TreeSet<Entry> topEntries = new TreeSet<>(RANKING);
+    private final Map<Long, Entry> members = new HashMap<>();
+    // true khi top-K trong bộ nhớ có thể không còn đúng (thành viên bị giảm điểm) → nạp lại từ DB ở lần đọc sau
+    private boolean dirty = true;
+    private long loadedAt;
+
+    public List<VIPCustomer> getTopCustomers(int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        List<Long> customerIds;
+        if (limit > capacity) {
+            customerIds = loadTopFromDatabase(limit).stream().map(e -> e.customerId).collect(Collectors.toList());
+        } else {
+            customerIds = topCustomerIds(limit);
+        }
+        if (customerIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, VIPCustomer> byId = new HashMap<>();
+        for (Object[] row : customerRepository.getVipLeaderboardRows(customerIds)) {
+            VIPCustomer vip = toVIPCustomer(row);
+            byId.put(vip.getCustomerId(), vip);
+        }
+        // Giữ đúng thứ tự xếp hạng; bỏ qua khách đã bị xóa giữa chừng
+        return customerIds.stream()
+                .map(byId::get)
+                .filter(v -> v != null)
+                .sorted(Comparator.comparingInt(VIPCustomer::getPoints).reversed()
+                        .thenComparing(VIPCustomer::getCustomerId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gọi khi điểm của khách thay đổi (đã commit)
+     */
+    public synchronized void onPointsChanged(Long customerId, int points) {
+        if (customerId == null || dirty) {
+            return;
+        }
+        Entry current = members.get(customerId);
+        if (current != null) {
+            topEntries.remove(current);
+            members.remove(customerId);
+            if (points < current.points && topEntries.size() + 1 >= capacity) {
+                // Khách ngoài top có thể vượt lên → không suy ra được, nạp lại khi đọc
+                dirty = true;
+                return;
+            }
+            add(new Entry(customerId, points));
+            return;
+        }
+        if (topEntries.size() < capacity || RANKING.compare(new Entry(customerId, points), topEntries.last()) < 0) {
+            add(new Entry(customerId, points));
+            if (topEntries.size() > capacity) {
+                Entry evicted = topEntries.pollLast();
+                members.remove(evicted.customerId);
+            }
+        }
+    }
+
+    public synchronized void invalidate() {
+        dirty = true;
+    }
+
+    private synchronized List<Long> topCustomerIds(int limit) {
+        long now = System.currentTimeMillis();
+        if (dirty || now - loadedAt >= refreshSeconds * 1000) {
+            // Nạp lại định kỳ để nhận thay đổi điểm từ các node khác
+            topEntries.clear();
+            members.clear();
+            for (Entry entry : loadTopFromDatabase(capacity)) {
+                add(entry);
+            }
+            dirty = false;
+            loadedAt = now;
+        }
+        return topEntries.stream().limit(limit).map(e -> e.customerId).collect(Collectors.toList());
+    }
+
+    private List<Entry> loadTopFromDatabase(int limit) {
+        return customerRepository.findTopCustomerPoints(PageRequest.of(0, limit)).stream()
+                .map(row -> new Entry((Long) row[0], ((Number) row[1]).intValue()))
+                .collect(Collectors.toList());
+    }
+
+    private void add(Entry entry) {
+        topEntries.add(entry);
+        members.put(entry.customerId, entry);
+    }
+
+    private VIPCustomer toVIPCustomer(Object[] row) {
+        int points = row[4] != null ? ((Number) row[4]).intValue() : 0;
+        BigDecimal totalSpent = BigDecimal.valueOf(((Number) row[5]).doubleValue()).setScale(2, RoundingMode.HALF_UP);
+        return new VIPCustomer(
+                (Long) row[0],
+                (String) row[1],
+                (String) row[2],
+                (String) row[3],
+                points,
+                totalSpent,
+                ((Number) row[6]).intValue(),
+                (LocalDateTime) row[7],
+                (LocalDateTime) row[8],
+                getRank(points)
+        );
+    }
+
+    public static String getRank(int points) {
+        if (points >= 1000) return "GOLD";
+        if (points >= 500) return "SILVER";
+        return "BRONZE";
+    }
+
+    private static class Entry {
+        private final Long customerId;
+        private final int points;
+
+        private Entry(Long customerId, int points) {
+            this.customerId = customerId;
+            this.points = points;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package aptech.be.services;
+
+import aptech.be.models.Voucher;
+import aptech.be.repositories.VoucherRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache đọc xuyên (read-through) định nghĩa voucher đang active theo code, dùng khi checkout.
+ * Entity trong cache là bản detached chỉ để đọc (loại, giá trị, điều kiện, hạn dùng);
+ * số lượt còn lại luôn được kiểm tra nguyên tử ở VoucherRedemptionService.
+ * Bị xóa khi voucher được tạo / sửa / xóa / cleanup, và tự hết hạn sau ttl-ms.
+ */
+@Service
+public class VoucherCache {
+
+    @Autowired
+    private VoucherRepository voucherRepository;
+
+    @Value("${app.voucher-cache.ttl-ms:60000}")
+    private long ttlMillis;
+
+    @Value("${app.voucher-cache.max-size:1000}")
+    private int maxSize;
+
+    private final Map<String, CachedVoucher> byCode = new ConcurrentHashMap<>();
+
+    public Optional<Voucher> getActiveByCode(String code) {
+        if (code == null) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        CachedVoucher cached = byCode.get(code);
+        if (cached != null && now - cached.loadedAt < ttlMillis) {
+            return Optional.of(cached.voucher);
+        }
+
+        Optional<Voucher> loaded = voucherRepository.findByCodeAndIsActiveTrue(code);
+        if (loaded.isPresent()) {
+            if (byCode.size() >= maxSize) {
+                byCode.clear();
+            }
+            byCode.put(code, new CachedVoucher(loaded.get(), now));
+        } else {
+            byCode.remove(code);
+        }
+        return loaded;
+    }
+
+    /**
+     * Xóa ngay và xóa lại sau commit (tránh request khác nạp lại bản cũ trước khi transaction commit)
+     */
+    public void evict(String code) {
+        if (code == null) {
+            return;
+        }
+        byCode.remove(code);
+        afterCommit(() -> byCode.remove(code));
+    }
+
+    public void clear() {
+        byCode.clear();
+        afterCommit(byCode::clear);
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static final class CachedVoucher {
+        final Voucher voucher;
+        final long loadedAt;
+
+        CachedVoucher(Voucher voucher, long loadedAt) {
+            this.voucher = voucher;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
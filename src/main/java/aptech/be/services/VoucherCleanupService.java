@@ -0,0 +1,131 @@
+package aptech.be.services;
+
+import aptech.be.repositories.CustomerVoucherRepository;
+import aptech.be.repositories.VoucherRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dọn voucher hết hạn theo lô: lấy tối đa batch-size id rồi DELETE/UPDATE ... WHERE id IN (...),
+ * mỗi lô 1 transaction ngắn nên không giữ lock lâu khi bảng customer_vouchers rất lớn.
+ */
+@Service
+public class VoucherCleanupService {
+
+    @Autowired
+    private CustomerVoucherRepository customerVoucherRepository;
+
+    @Autowired
+    private VoucherRepository voucherRepository;
+
+    @Autowired
+    private VoucherCache voucherCache;
+
+    @Autowired
+    private VoucherRedemptionService voucherRedemptionService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.voucher-cleanup.batch-size:1000}")
+    private int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private Timer cleanupTimer;
+    private Counter deletedCounter;
+    private Counter deactivatedCounter;
+
+    @PostConstruct
+    public void registerMetrics() {
+        cleanupTimer = Timer.builder("voucher.cleanup.duration")
+                .description("Thời gian 1 lần dọn voucher hết hạn")
+                .register(meterRegistry);
+        deletedCounter = Counter.builder("voucher.cleanup.rows")
+                .tag("action", "customer_voucher_deleted")
+                .description("Số customer voucher hết hạn đã xóa")
+                .register(meterRegistry);
+        deactivatedCounter = Counter.builder("voucher.cleanup.rows")
+                .tag("action", "voucher_deactivated")
+                .description("Số voucher hết hạn / hết lượt đã tắt")
+                .register(meterRegistry);
+    }
+
+    // Chạy mỗi giờ
+    @Scheduled(fixedRate = 3600000)
+    public void cleanupExpiredVouchers() {
+        if (!running.compareAndSet(false, true)) {
+            System.out.println("[VOUCHER CLEANUP] Skipped, previous run still in progress");
+            return;
+        }
+        try {
+            cleanupTimer.record(() -> {
+                LocalDateTime now = LocalDateTime.now();
+                long deleted = deleteExpiredCustomerVouchers(now);
+                long deactivated = deactivateUnavailableVouchers(now);
+                if (deleted > 0 || deactivated > 0) {
+                    System.out.println("[VOUCHER CLEANUP] Deleted " + deleted + " expired customer vouchers, deactivated "
+                            + deactivated + " expired/fully used vouchers");
+                }
+            });
+        } catch (Exception e) {
+            // Log error but don't crash the scheduled task
+            System.err.println("[VOUCHER CLEANUP ERROR] Error during cleanup: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private long deleteExpiredCustomerVouchers(LocalDateTime now) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        long total = 0;
+        while (true) {
+            Integer deleted = tx.execute(status -> {
+                List<Long> ids = customerVoucherRepository.findExpiredIds(now, PageRequest.of(0, batchSize));
+                return ids.isEmpty() ? 0 : customerVoucherRepository.deleteByIdIn(ids);
+            });
+            if (deleted == null || deleted == 0) {
+                return total;
+            }
+            total += deleted;
+            deletedCounter.increment(deleted);
+        }
+    }
+
+    private long deactivateUnavailableVouchers(LocalDateTime now) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        long total = 0;
+        while (true) {
+            List<Long> ids = tx.execute(status -> {
+                List<Long> batch = voucherRepository.findUnavailableActiveIds(now, PageRequest.of(0, batchSize));
+                if (!batch.isEmpty()) {
+                    voucherRepository.deactivateByIdIn(batch);
+                }
+                return batch;
+            });
+            if (ids == null || ids.isEmpty()) {
+                return total;
+            }
+            ids.forEach(voucherRedemptionService::invalidate);
+            voucherCache.clear();
+            total += ids.size();
+            deactivatedCounter.increment(ids.size());
+        }
+    }
+}
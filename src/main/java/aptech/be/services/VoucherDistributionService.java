@@ -0,0 +1,288 @@
+package aptech.be.services;
+
+import aptech.be.models.Voucher;
+import aptech.be.models.VoucherDistributionJob;
+import aptech.be.repositories.CustomerRepository;
+import aptech.be.repositories.VoucherDistributionJobRepository;
+import aptech.be.repositories.VoucherRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Phát voucher hàng loạt bằng job nền:
+ * - mỗi lô lấy tối đa batch-size khách (id tăng dần), lọc điều kiện bằng 1 query set-based
+ * - insert customer_vouchers bằng JDBC batch, cùng transaction với việc cập nhật tiến độ + con trỏ last_customer_id
+ * - job dở dang (server restart) được chạy tiếp từ con trỏ khi ứng dụng khởi động
+ */
+@Service
+public class VoucherDistributionService {
+
+    private static final String INSERT_CUSTOMER_VOUCHER =
+            "INSERT INTO customer_vouchers (customer_id, voucher_id, received_at, expires_at, is_used) VALUES (?, ?, ?, ?, ?)";
+
+    @Autowired
+    private VoucherDistributionJobRepository jobRepository;
+
+    @Autowired
+    private VoucherRepository voucherRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("voucherDistributionExecutor")
+    private ThreadPoolTaskExecutor voucherDistributionExecutor;
+
+    @Value("${app.voucher-distribution.batch-size:500}")
+    private int batchSize;
+
+    public VoucherDistributionJob startAllCustomers(Long voucherId, String createdBy) {
+        return createAndSubmit(voucherId, VoucherDistributionJob.MODE_ALL, null, createdBy);
+    }
+
+    public VoucherDistributionJob startTopCustomers(Long voucherId, int topCount, String createdBy) {
+        if (topCount <= 0) {
+            throw new RuntimeException("topCount must be greater than 0");
+        }
+        List<Long> topIds = customerRepository.findTopCustomerPoints(PageRequest.of(0, topCount)).stream()
+                .map(row -> ((Number) row[0]).longValue())
+                .collect(Collectors.toList());
+        return createAndSubmit(voucherId, VoucherDistributionJob.MODE_TOP, topIds, createdBy);
+    }
+
+    public VoucherDistributionJob startSelectedCustomers(Long voucherId, List<Long> customerIds, String createdBy) {
+        if (customerIds == null || customerIds.isEmpty()) {
+            throw new RuntimeException("Customer list is empty");
+        }
+        return createAndSubmit(voucherId, VoucherDistributionJob.MODE_SELECTED, customerIds, createdBy);
+    }
+
+    /**
+     * Chạy lại job FAILED (hoặc job PENDING bị từ chối vì hàng đợi đầy) từ con trỏ hiện tại
+     */
+    public VoucherDistributionJob resume(Long jobId) {
+        VoucherDistributionJob job = getJob(jobId);
+        if (VoucherDistributionJob.STATE_COMPLETED.equals(job.getState())
+                || VoucherDistributionJob.STATE_RUNNING.equals(job.getState())) {
+            throw new RuntimeException("Job is already " + job.getState());
+        }
+        job.setState(VoucherDistributionJob.STATE_PENDING);
+        job.setLastError(null);
+        jobRepository.save(job);
+        submit(jobId);
+        return job;
+    }
+
+    public VoucherDistributionJob getJob(Long jobId) {
+        return jobRepository.findById(jobId)
+                .orElseThrow(() -> new RuntimeException("Distribution job not found"));
+    }
+
+    public List<VoucherDistributionJob> getJobsForVoucher(Long voucherId) {
+        return jobRepository.findByVoucherIdOrderByIdDesc(voucherId);
+    }
+
+    public static Map<String, Object> toProgress(VoucherDistributionJob job) {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("jobId", job.getId());
+        progress.put("voucherId", job.getVoucherId());
+        progress.put("mode", job.getMode());
+        progress.put("state", job.getState());
+        progress.put("totalCandidates", job.getTotalCandidates());
+        progress.put("processedCount", job.getProcessedCount());
+        progress.put("insertedCount", job.getInsertedCount());
+        progress.put("skippedCount", job.getProcessedCount() - job.getInsertedCount());
+        long percent = job.getTotalCandidates() > 0
+                ? Math.min(100, job.getProcessedCount() * 100 / job.getTotalCandidates())
+                : (VoucherDistributionJob.STATE_COMPLETED.equals(job.getState()) ? 100 : 0);
+        progress.put("percent", percent);
+        progress.put("lastError", job.getLastError());
+        progress.put("createdAt", job.getCreatedAt());
+        progress.put("startedAt", job.getStartedAt());
+        progress.put("finishedAt", job.getFinishedAt());
+        return progress;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        try {
+            List<VoucherDistributionJob> jobs = jobRepository.findByStateInOrderByIdAsc(
+                    List.of(VoucherDistributionJob.STATE_PENDING, VoucherDistributionJob.STATE_RUNNING));
+            for (VoucherDistributionJob job : jobs) {
+                System.out.println("[VOUCHER DISTRIBUTION] Resume job " + job.getId() + " from customer id " + job.getLastCustomerId());
+                submit(job.getId());
+            }
+        } catch (Exception e) {
+            System.err.println("[VOUCHER DISTRIBUTION] Resume failed: " + e.getMessage());
+        }
+    }
+
+    private VoucherDistributionJob createAndSubmit(Long voucherId, String mode, List<Long> customerIds, String createdBy) {
+        Voucher voucher = voucherRepository.findById(voucherId)
+                .orElseThrow(() -> new RuntimeException("Voucher not found"));
+        if (!voucher.isAvailable()) {
+            throw new RuntimeException("Voucher is not available");
+        }
+
+        VoucherDistributionJob job = new VoucherDistributionJob();
+        job.setVoucherId(voucherId);
+        job.setMode(mode);
+        if (customerIds != null) {
+            // Sắp xếp tăng dần, bỏ trùng để con trỏ last_customer_id dùng được cho cả TOP/SELECTED
+            TreeSet<Long> sorted = new TreeSet<>(customerIds);
+            job.setCustomerIds(sorted.stream().map(String::valueOf).collect(Collectors.joining(",")));
+            job.setTotalCandidates((long) sorted.size());
+        } else {
+            job.setTotalCandidates(customerRepository.count());
+        }
+        job.setCreatedBy(createdBy);
+        job.setCreatedAt(LocalDateTime.now());
+        VoucherDistributionJob saved = jobRepository.save(job);
+
+        submit(saved.getId());
+        return saved;
+    }
+
+    private void submit(Long jobId) {
+        try {
+            voucherDistributionExecutor.execute(() -> run(jobId));
+        } catch (TaskRejectedException e) {
+            // Job vẫn PENDING, sẽ được chạy khi khởi động lại hoặc khi admin resume
+            System.err.println("[VOUCHER DISTRIBUTION] Queue full, job " + jobId + " left PENDING");
+        }
+    }
+
+    private void run(Long jobId) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        try {
+            VoucherDistributionJob started = tx.execute(status -> {
+                VoucherDistributionJob job = getJob(jobId);
+                if (!VoucherDistributionJob.STATE_PENDING.equals(job.getState())
+                        && !VoucherDistributionJob.STATE_RUNNING.equals(job.getState())) {
+                    return null;
+                }
+                job.setState(VoucherDistributionJob.STATE_RUNNING);
+                if (job.getStartedAt() == null) {
+                    job.setStartedAt(LocalDateTime.now());
+                }
+                return jobRepository.save(job);
+            });
+            if (started == null) {
+                return;
+            }
+            List<Long> selectedIds = parseIds(started.getCustomerIds());
+
+            boolean more = true;
+            while (more) {
+                more = Boolean.TRUE.equals(tx.execute(status -> processChunk(jobId, selectedIds)));
+            }
+        } catch (Exception e) {
+            System.err.println("[VOUCHER DISTRIBUTION] Job " + jobId + " failed: " + e.getMessage());
+            tx.executeWithoutResult(status -> {
+                VoucherDistributionJob job = getJob(jobId);
+                job.setState(VoucherDistributionJob.STATE_FAILED);
+                job.setLastError(truncate(e.getMessage()));
+                jobRepository.save(job);
+            });
+        }
+    }
+
+    /**
+     * Xử lý 1 lô trong 1 transaction; trả về false khi đã hết khách hoặc voucher không còn khả dụng
+     */
+    private boolean processChunk(Long jobId, List<Long> selectedIds) {
+        VoucherDistributionJob job = getJob(jobId);
+        Voucher voucher = voucherRepository.findById(job.getVoucherId())
+                .orElseThrow(() -> new RuntimeException("Voucher not found"));
+
+        List<Long> chunk;
+        if (selectedIds == null) {
+            chunk = customerRepository.findIdsAfter(job.getLastCustomerId(), PageRequest.of(0, batchSize));
+        } else {
+            chunk = selectedIds.stream()
+                    .filter(id -> id > job.getLastCustomerId())
+                    .limit(batchSize)
+                    .collect(Collectors.toList());
+        }
+
+        if (chunk.isEmpty() || !voucher.isAvailable()) {
+            job.setState(VoucherDistributionJob.STATE_COMPLETED);
+            job.setFinishedAt(LocalDateTime.now());
+            if (!chunk.isEmpty()) {
+                job.setLastError("Voucher is no longer available");
+            }
+            jobRepository.save(job);
+            System.out.println("[VOUCHER DISTRIBUTION] Job " + jobId + " finished: " + job.getInsertedCount()
+                    + "/" + job.getProcessedCount() + " customers received voucher " + voucher.getCode());
+            return false;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> eligible = customerRepository.findVoucherEligibleIdsIn(
+                voucher.getId(), chunk, now, VoucherService.MAX_VOUCHERS_PER_CUSTOMER);
+
+        if (!eligible.isEmpty()) {
+            Timestamp receivedAt = Timestamp.valueOf(now);
+            Timestamp expiresAt = Timestamp.valueOf(now.plusHours(24)); // giống constructor CustomerVoucher
+            jdbcTemplate.batchUpdate(INSERT_CUSTOMER_VOUCHER, eligible, batchSize, (ps, customerId) -> {
+                ps.setLong(1, customerId);
+                ps.setLong(2, voucher.getId());
+                ps.setTimestamp(3, receivedAt);
+                ps.setTimestamp(4, expiresAt);
+                ps.setBoolean(5, false);
+            });
+        }
+
+        job.setLastCustomerId(chunk.get(chunk.size() - 1));
+        job.setProcessedCount(job.getProcessedCount() + chunk.size());
+        job.setInsertedCount(job.getInsertedCount() + eligible.size());
+        jobRepository.save(job);
+        return true;
+    }
+
+    private static List<Long> parseIds(String csv) {
+        if (csv == null) {
+            return null;
+        }
+        if (csv.isBlank()) {
+            return new ArrayList<>();
+        }
+        return Arrays.stream(csv.split(","))
+                .map(String::trim)
+                .map(Long::valueOf)
+                .collect(Collectors.toList());
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
@@ -0,0 +1,97 @@
+package aptech.be.services;
+
+import aptech.be.models.CustomerVoucher;
+import aptech.be.repositories.CustomerVoucherRepository;
+import aptech.be.repositories.VoucherRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+/**
+ * Trừ lượt sử dụng voucher không mất lượt khi nhiều đơn đặt cùng lúc:
+ * giữ chỗ trong VoucherReservationPool → UPDATE used_quantity có điều kiện → đánh dấu CustomerVoucher đã dùng.
+ * Transaction rollback thì lượt đã giữ được trả lại cho pool.
+ */
+@Service
+public class VoucherRedemptionService {
+
+    @Autowired
+    private VoucherRepository voucherRepository;
+
+    @Autowired
+    private CustomerVoucherRepository customerVoucherRepository;
+
+    @Value("${app.voucher-redemption.stripes:64}")
+    private int stripes;
+
+    @Value("${app.voucher-redemption.sold-out-recheck-ms:30000}")
+    private long soldOutRecheckMillis;
+
+    private VoucherReservationPool pool;
+
+    @PostConstruct
+    void init() {
+        pool = new VoucherReservationPool(stripes, soldOutRecheckMillis);
+    }
+
+    /**
+     * Dùng voucher của khách cho 1 đơn hàng; ném RuntimeException nếu voucher hết lượt hoặc đã được dùng
+     */
+    @Transactional
+    public void redeem(CustomerVoucher customerVoucher, Long orderId) {
+        Long voucherId = customerVoucher.getVoucher().getId();
+
+        if (!pool.tryReserve(voucherId, () -> remainingQuantity(voucherId))) {
+            throw new RuntimeException("This voucher is out of stock");
+        }
+
+        int updated;
+        try {
+            updated = voucherRepository.incrementUsedQuantity(voucherId);
+        } catch (RuntimeException e) {
+            pool.release(voucherId);
+            throw e;
+        }
+        if (updated == 0) {
+            pool.markSoldOut(voucherId);
+            throw new RuntimeException("This voucher is out of stock");
+        }
+        releaseOnRollback(voucherId);
+
+        if (customerVoucherRepository.markUsed(customerVoucher.getId(), orderId, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("This voucher has already been used");
+        }
+    }
+
+    /**
+     * Gọi khi số lượng voucher bị sửa hoặc voucher bị xóa
+     */
+    public void invalidate(Long voucherId) {
+        pool.invalidate(voucherId);
+    }
+
+    private int remainingQuantity(Long voucherId) {
+        Integer remaining = voucherRepository.findRemainingQuantity(voucherId);
+        return remaining != null ? remaining : 0;
+    }
+
+    private void releaseOnRollback(Long voucherId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    pool.release(voucherId);
+                }
+            }
+        });
+    }
+}
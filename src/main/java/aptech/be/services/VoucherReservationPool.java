@@ -0,0 +1,119 @@
+package aptech.be.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Bộ đếm số lượt còn lại của voucher trong bộ nhớ, đặt trước UPDATE có điều kiện trên DB.
+ * - mỗi voucher có 1 AtomicInteger, giữ chỗ bằng CAS nên không khóa trên đường nóng
+ * - chỉ khi nạp/nạp lại số lượng từ DB mới khóa theo stripe (voucherId % số stripe)
+ * - voucher đã hết được từ chối ngay trong bộ nhớ, không tạo thêm UPDATE tranh chấp cùng 1 dòng
+ * DB vẫn là nơi quyết định cuối cùng (used_quantity < total_quantity); bộ đếm chỉ lọc bớt tải.
+ */
+public class VoucherReservationPool {
+
+    private final ReentrantLock[] stripes;
+    private final ConcurrentHashMap<Long, Slot> slots = new ConcurrentHashMap<>();
+    private final long soldOutRecheckMillis;
+
+    public VoucherReservationPool(int stripeCount, long soldOutRecheckMillis) {
+        this.stripes = new ReentrantLock[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.soldOutRecheckMillis = soldOutRecheckMillis;
+    }
+
+    /**
+     * Giữ 1 lượt của voucher; remainingLoader trả về total_quantity - used_quantity từ DB khi cần nạp
+     */
+    public boolean tryReserve(Long voucherId, IntSupplier remainingLoader) {
+        Slot slot = slotFor(voucherId, remainingLoader);
+        while (true) {
+            int current = slot.remaining.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (slot.remaining.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Trả lại lượt đã giữ (transaction rollback)
+     */
+    public void release(Long voucherId) {
+        Slot slot = slots.get(voucherId);
+        if (slot != null) {
+            slot.remaining.incrementAndGet();
+        }
+    }
+
+    /**
+     * DB báo đã hết (UPDATE không khớp dòng nào) → từ chối ngay cho tới lần kiểm tra lại
+     */
+    public void markSoldOut(Long voucherId) {
+        Slot slot = slots.get(voucherId);
+        if (slot != null) {
+            slot.remaining.set(0);
+            slot.checkedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Voucher bị sửa số lượng / xóa → lần giữ chỗ sau sẽ nạp lại từ DB
+     */
+    public void invalidate(Long voucherId) {
+        slots.remove(voucherId);
+    }
+
+    public void clear() {
+        slots.clear();
+    }
+
+    /**
+     * Số lượt còn lại trong bộ nhớ, -1 nếu chưa nạp
+     */
+    public int available(Long voucherId) {
+        Slot slot = slots.get(voucherId);
+        return slot != null ? slot.remaining.get() : -1;
+    }
+
+    private Slot slotFor(Long voucherId, IntSupplier remainingLoader) {
+        Slot slot = slots.get(voucherId);
+        if (slot != null && !needsRecheck(slot)) {
+            return slot;
+        }
+
+        ReentrantLock lock = stripes[Math.floorMod(voucherId.hashCode(), stripes.length)];
+        lock.lock();
+        try {
+            slot = slots.get(voucherId);
+            if (slot == null || needsRecheck(slot)) {
+                // Voucher có thể đã được tăng số lượng hoặc được dùng ở instance khác
+                slot = new Slot(Math.max(0, remainingLoader.getAsInt()));
+                slots.put(voucherId, slot);
+            }
+            return slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean needsRecheck(Slot slot) {
+        return slot.remaining.get() <= 0 && System.currentTimeMillis() - slot.checkedAt >= soldOutRecheckMillis;
+    }
+
+    private static final class Slot {
+        final AtomicInteger remaining;
+        volatile long checkedAt;
+
+        Slot(int remaining) {
+            this.remaining = new AtomicInteger(remaining);
+            this.checkedAt = System.currentTimeMillis();
+        }
+    }
+}
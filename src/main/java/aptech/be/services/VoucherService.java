@@ -5,7 +5,6 @@ import aptech.be.dto.CreateVoucherRequest;
 import aptech.be.models.*;
 import aptech.be.repositories.*;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -30,8 +29,14 @@ public class VoucherService {
     @Autowired
     private CustomerRepository customerRepository;
     
+    @Autowired
+    private VoucherRedemptionService voucherRedemptionService;
+    
+    @Autowired
+    private VoucherCache voucherCache;
+    
     private static final String CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-    private static final int MAX_VOUCHERS_PER_CUSTOMER = 5; // Giới hạn số voucher mỗi khách
+    public static final int MAX_VOUCHERS_PER_CUSTOMER = 5; // Giới hạn số voucher mỗi khách
     
     // Tạo voucher mới
     public VoucherDTO createVoucher(VoucherDTO voucherDTO, String createdBy) {
@@ -57,6 +62,7 @@ public class VoucherService {
         voucher.setCreatedBy(createdBy);
         
         Voucher savedVoucher = voucherRepository.save(voucher);
+        voucherCache.evict(savedVoucher.getCode());
         return new VoucherDTO(savedVoucher);
     }
     
@@ -85,6 +91,7 @@ public class VoucherService {
         voucher.setCreatedBy(createdBy);
         
         Voucher savedVoucher = voucherRepository.save(voucher);
+        voucherCache.evict(savedVoucher.getCode());
         return new VoucherDTO(savedVoucher);
     }
     
@@ -105,6 +112,8 @@ public class VoucherService {
         voucher.setIsPublic(voucherDTO.getIsPublic());
         
         Voucher savedVoucher = voucherRepository.save(voucher);
+        voucherRedemptionService.invalidate(id);
+        voucherCache.evict(savedVoucher.getCode());
         return new VoucherDTO(savedVoucher);
     }
     
@@ -127,6 +136,8 @@ public class VoucherService {
         voucher.setIsPublic(request.getIsPublic());
         
         Voucher savedVoucher = voucherRepository.save(voucher);
+        voucherRedemptionService.invalidate(id);
+        voucherCache.evict(savedVoucher.getCode());
         return new VoucherDTO(savedVoucher);
     }
     
@@ -198,6 +209,8 @@ public class VoucherService {
         
         customerVoucherRepository.deleteAll(customerVouchers);
         voucherRepository.delete(voucher);
+        voucherRedemptionService.invalidate(id);
+        voucherCache.evict(voucher.getCode());
     }
     
     // Lấy tất cả voucher
@@ -304,38 +317,22 @@ public class VoucherService {
         return "Voucher claimed successfully! Check your vouchers to use it.";
     }
     
-    // Validate voucher cho order
+    // Validate voucher cho order (chỉ kiểm tra, không trừ lượt).
+    // valid=true kèm customerVoucherId để trừ lượt bằng redeemForOrder sau khi đơn đã được lưu
     public Map<String, Object> validateVoucherForOrder(String voucherCode, Long customerId, Double orderAmount) {
         Map<String, Object> result = new HashMap<>();
         
+        Voucher voucher;
+        CustomerVoucher customerVoucher;
+        Double discount;
         try {
-            // Tìm voucher theo code
-            Voucher voucher = voucherRepository.findByCode(voucherCode)
-                    .orElseThrow(() -> new RuntimeException("Voucher not found"));
-            
-            // Tìm customer
-            Customer customer = customerRepository.findById(customerId)
-                    .orElseThrow(() -> new RuntimeException("Customer not found"));
-            
-            // Kiểm tra customer có voucher này không
-            Optional<CustomerVoucher> customerVoucher = customerVoucherRepository
-                    .findByCustomerAndVoucher(customer, voucher);
-            
-            if (customerVoucher.isEmpty()) {
-                throw new RuntimeException("You don't have this voucher");
-            }
-            
-            if (customerVoucher.get().getIsUsed()) {
-                throw new RuntimeException("This voucher has already been used");
-            }
-            
-            // Kiểm tra voucher còn hiệu lực không
-            if (!voucher.getIsActive()) {
-                throw new RuntimeException("This voucher is no longer active");
-            }
+            // Định nghĩa voucher lấy từ cache theo code
+            voucher = voucherCache.getActiveByCode(voucherCode)
+                    .orElseThrow(() -> new RuntimeException("Voucher not found or no longer active"));
             
             // Kiểm tra voucher đã hết hạn chưa
-            if (voucher.getExpiresAt() != null && voucher.getExpiresAt().isBefore(LocalDateTime.now())) {
+            LocalDateTime now = LocalDateTime.now();
+            if (voucher.getExpiresAt() != null && voucher.getExpiresAt().isBefore(now)) {
                 throw new RuntimeException("This voucher has expired");
             }
             
@@ -344,23 +341,36 @@ public class VoucherService {
                 throw new RuntimeException("Order amount must be at least $" + voucher.getMinOrderAmount());
             }
             
-            // Tính discount
-            Double discount = calculateDiscount(voucher, orderAmount);
-            
-            result.put("valid", true);
-            result.put("voucher", new VoucherDTO(voucher));
-            result.put("discount", discount);
-            result.put("message", "Voucher is valid");
+            // Voucher của khách (chưa dùng, còn hạn): 1 query theo customerId + voucherId
+            customerVoucher = customerVoucherRepository
+                    .findFirstByCustomerIdAndVoucherIdAndIsUsedFalseAndExpiresAtAfterOrderByExpiresAtAsc(customerId, voucher.getId(), now)
+                    .orElseThrow(() -> new RuntimeException("You don't have this voucher or it has already been used"));
             
+            // Tính discount
+            discount = calculateDiscount(voucher, orderAmount);
         } catch (Exception e) {
             result.put("valid", false);
             result.put("message", e.getMessage());
             result.put("discount", 0.0);
+            return result;
         }
         
+        result.put("valid", true);
+        result.put("voucher", new VoucherDTO(voucher));
+        result.put("customerVoucherId", customerVoucher.getId());
+        result.put("discount", discount);
+        result.put("message", "Voucher is valid");
         return result;
     }
     
+    // Trừ lượt voucher đã validate cho đơn vừa lưu; gọi trong transaction lưu đơn để lỗi ở đây rollback cả đơn.
+    // Hết lượt / đã bị dùng bởi request khác → RuntimeException
+    public void redeemForOrder(Long customerVoucherId, Long orderId) {
+        CustomerVoucher customerVoucher = customerVoucherRepository.findById(customerVoucherId)
+                .orElseThrow(() -> new RuntimeException("You don't have this voucher or it has already been used"));
+        voucherRedemptionService.redeem(customerVoucher, orderId);
+    }
+    
     // Tính discount amount
     private Double calculateDiscount(Voucher voucher, Double orderAmount) {
         Double discount = 0.0;
@@ -412,32 +422,6 @@ public class VoucherService {
         return discount;
     }
     
-    // Mark voucher as used
-    public void markVoucherAsUsed(String voucherCode, Long customerId) {
-        // Tìm voucher theo code
-        Voucher voucher = voucherRepository.findByCode(voucherCode)
-                .orElseThrow(() -> new RuntimeException("Voucher not found"));
-        
-        // Tìm customer
-        Customer customer = customerRepository.findById(customerId)
-                .orElseThrow(() -> new RuntimeException("Customer not found"));
-        
-        // Tìm customer voucher
-        Optional<CustomerVoucher> customerVoucherOpt = customerVoucherRepository
-                .findByCustomerAndVoucher(customer, voucher);
-        
-        if (customerVoucherOpt.isPresent()) {
-            CustomerVoucher customerVoucher = customerVoucherOpt.get();
-            customerVoucher.setIsUsed(true);
-            customerVoucher.setUsedAt(LocalDateTime.now());
-            customerVoucherRepository.save(customerVoucher);
-            
-            // Tăng used quantity của voucher
-            voucher.setUsedQuantity(voucher.getUsedQuantity() + 1);
-            voucherRepository.save(voucher);
-        }
-    }
-    
     // Lấy voucher của khách hàng
     public List<VoucherDTO> getCustomerVouchers(Long customerId) {
         List<CustomerVoucher> customerVouchers = customerVoucherRepository
@@ -460,45 +444,6 @@ public class VoucherService {
         return code.toString();
     }
     
-    // Scheduled task để xóa voucher hết hạn (chạy mỗi giờ)
-    @Scheduled(fixedRate = 3600000) // 1 hour
-    public void cleanupExpiredVouchers() {
-        try {
-            LocalDateTime now = LocalDateTime.now();
-            
-            // Xóa customer voucher hết hạn
-            List<CustomerVoucher> expiredCustomerVouchers = customerVoucherRepository.findExpiredVouchers(now);
-            if (!expiredCustomerVouchers.isEmpty()) {
-                customerVoucherRepository.deleteAll(expiredCustomerVouchers);
-                System.out.println("[VOUCHER CLEANUP] Deleted " + expiredCustomerVouchers.size() + " expired customer vouchers");
-            }
-            
-            // Deactivate voucher hết hạn
-            List<Voucher> expiredVouchers = voucherRepository.findExpiredVouchers(now);
-            for (Voucher voucher : expiredVouchers) {
-                voucher.setIsActive(false);
-            }
-            if (!expiredVouchers.isEmpty()) {
-                voucherRepository.saveAll(expiredVouchers);
-                System.out.println("[VOUCHER CLEANUP] Deactivated " + expiredVouchers.size() + " expired vouchers");
-            }
-            
-            // Deactivate voucher đã hết số lượng
-            List<Voucher> fullyUsedVouchers = voucherRepository.findFullyUsedVouchers();
-            for (Voucher voucher : fullyUsedVouchers) {
-                voucher.setIsActive(false);
-            }
-            if (!fullyUsedVouchers.isEmpty()) {
-                voucherRepository.saveAll(fullyUsedVouchers);
-                System.out.println("[VOUCHER CLEANUP] Deactivated " + fullyUsedVouchers.size() + " fully used vouchers");
-            }
-        } catch (Exception e) {
-            // Log error but don't crash the scheduled task
-            System.err.println("[VOUCHER CLEANUP ERROR] Error during cleanup: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-    
     // Validate và apply voucher cho order
     public double calculateDiscount(String voucherCode, Long customerId, double orderAmount) {
         Optional<CustomerVoucher> customerVoucherOpt = customerVoucherRepository
@@ -548,151 +493,7 @@ public class VoucherService {
             throw new RuntimeException("Invalid or expired voucher");
         }
         
-        CustomerVoucher customerVoucher = customerVoucherOpt.get();
-        customerVoucher.markAsUsed(orderId);
-        customerVoucherRepository.save(customerVoucher);
-        
-        // Increment used quantity in voucher
-        Voucher voucher = customerVoucher.getVoucher();
-        voucher.setUsedQuantity(voucher.getUsedQuantity() + 1);
-        voucherRepository.save(voucher);
-    }
-    
-    // Tặng voucher cho top customers theo points
-    public String giveVoucherToTopCustomers(Long voucherId, int topCount) {
-        Voucher voucher = voucherRepository.findById(voucherId)
-                .orElseThrow(() -> new RuntimeException("Voucher not found"));
-        
-        if (!voucher.isAvailable()) {
-            return "Voucher is not available";
-        }
-        
-        // Get all customers sorted by points descending
-        List<Customer> allCustomers = customerRepository.findAll();
-        List<Customer> topCustomers = allCustomers.stream()
-                .filter(customer -> customer.getCustomerDetail() != null)
-                .sorted((c1, c2) -> {
-                    int points1 = getCustomerPoints(c1);
-                    int points2 = getCustomerPoints(c2);
-                    return Integer.compare(points2, points1); // Descending order
-                })
-                .limit(topCount)
-                .collect(Collectors.toList());
-        
-        int successCount = 0;
-        int skipCount = 0;
-        
-        for (Customer customer : topCustomers) {
-            try {
-                // Check if customer already has this voucher
-                if (!customerVoucherRepository.existsByCustomerAndVoucherAndIsUsedFalse(customer, voucher)) {
-                    // Check customer voucher limit
-                    Long currentVoucherCount = customerVoucherRepository.countValidVouchersByCustomerId(customer.getId(), LocalDateTime.now());
-                    if (currentVoucherCount < MAX_VOUCHERS_PER_CUSTOMER) {
-                        CustomerVoucher customerVoucher = new CustomerVoucher(customer, voucher);
-                        customerVoucherRepository.save(customerVoucher);
-                        successCount++;
-                    } else {
-                        skipCount++;
-                    }
-                } else {
-                    skipCount++;
-                }
-            } catch (Exception e) {
-                skipCount++;
-            }
-        }
-        
-        return String.format("Voucher given to %d top customers successfully. %d customers skipped.", successCount, skipCount);
-    }
-    
-    // Tặng voucher cho tất cả customers
-    public String giveVoucherToAllCustomers(Long voucherId) {
-        Voucher voucher = voucherRepository.findById(voucherId)
-                .orElseThrow(() -> new RuntimeException("Voucher not found"));
-        
-        if (!voucher.isAvailable()) {
-            return "Voucher is not available";
-        }
-        
-        List<Customer> allCustomers = customerRepository.findAll();
-        int successCount = 0;
-        int skipCount = 0;
-        
-        for (Customer customer : allCustomers) {
-            try {
-                // Check if customer already has this voucher
-                if (!customerVoucherRepository.existsByCustomerAndVoucherAndIsUsedFalse(customer, voucher)) {
-                    // Check customer voucher limit
-                    Long currentVoucherCount = customerVoucherRepository.countValidVouchersByCustomerId(customer.getId(), LocalDateTime.now());
-                    if (currentVoucherCount < MAX_VOUCHERS_PER_CUSTOMER) {
-                        CustomerVoucher customerVoucher = new CustomerVoucher(customer, voucher);
-                        customerVoucherRepository.save(customerVoucher);
-                        successCount++;
-                    } else {
-                        skipCount++;
-                    }
-                } else {
-                    skipCount++;
-                }
-            } catch (Exception e) {
-                skipCount++;
-            }
-        }
-        
-        return String.format("Voucher given to %d customers successfully. %d customers skipped.", successCount, skipCount);
-    }
-    
-    // Tặng voucher cho multiple customers
-    public String giveVoucherToMultipleCustomers(Long voucherId, List<Long> customerIds) {
-        Voucher voucher = voucherRepository.findById(voucherId)
-                .orElseThrow(() -> new RuntimeException("Voucher not found"));
-        
-        if (!voucher.isAvailable()) {
-            return "Voucher is not available";
-        }
-        
-        int successCount = 0;
-        int skipCount = 0;
-        
-        for (Long customerId : customerIds) {
-            try {
-                Customer customer = customerRepository.findById(customerId)
-                        .orElseThrow(() -> new RuntimeException("Customer not found"));
-                
-                // Check if customer already has this voucher
-                if (!customerVoucherRepository.existsByCustomerAndVoucherAndIsUsedFalse(customer, voucher)) {
-                    // Check customer voucher limit
-                    Long currentVoucherCount = customerVoucherRepository.countValidVouchersByCustomerId(customerId, LocalDateTime.now());
-                    if (currentVoucherCount < MAX_VOUCHERS_PER_CUSTOMER) {
-                        CustomerVoucher customerVoucher = new CustomerVoucher(customer, voucher);
-                        customerVoucherRepository.save(customerVoucher);
-                        successCount++;
-                    } else {
-                        skipCount++;
-                    }
-                } else {
-                    skipCount++;
-                }
-            } catch (Exception e) {
-                skipCount++;
-            }
-        }
-        
-        return String.format("Voucher given to %d customers successfully. %d customers skipped.", successCount, skipCount);
-    }
-    
-    // Helper method to get customer points
-    private int getCustomerPoints(Customer customer) {
-        if (customer.getCustomerDetail() != null) {
-            String pointStr = customer.getCustomerDetail().getPoint();
-            try {
-                return pointStr != null && !pointStr.isEmpty() ? Integer.parseInt(pointStr) : 0;
-            } catch (NumberFormatException e) {
-                return 0;
-            }
-        }
-        return 0;
+        voucherRedemptionService.redeem(customerVoucherOpt.get(), orderId);
     }
     
     // Fix voucher types in database (for migration from old enum values)
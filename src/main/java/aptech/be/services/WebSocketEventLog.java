@@ -0,0 +1,180 @@
+package aptech.be.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Gắn số thứ tự cho sự kiện WebSocket gửi tới staff/bàn và giữ lại các sự kiện gần nhất để client bù khi reconnect.
+ * - chỉ topic staff (/topic/staff/**) và topic bàn (/topic/table/{id}) được đánh seq và lưu; topic khác
+ *   (theo user, xác nhận thanh toán chứa claim token...) gửi thẳng, không giữ lại
+ * - mỗi topic có seq tăng dần riêng, gửi kèm STOMP header "seq" và "seq-epoch"
+ *   (epoch đổi khi node khởi động lại hoặc khi log của topic bị dọn)
+ * - mỗi topic giữ tối đa app.ws.replay.buffer-size sự kiện gần nhất (ring buffer); topic không có sự kiện mới
+ *   trong app.ws.replay.idle-ttl-minutes bị dọn khỏi bộ nhớ
+ * - client gọi replay(topic, since, epoch): nhận đúng các sự kiện bị lỡ; complete=false (epoch khác / gap đã bị đẩy khỏi buffer)
+ *   thì mới reload toàn bộ qua REST
+ */
+@Component
+public class WebSocketEventLog {
+
+    public static final String SEQ_HEADER = "seq";
+    public static final String EPOCH_HEADER = "seq-epoch";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${app.ws.replay.buffer-size:200}")
+    private int bufferSize;
+
+    @Value("${app.ws.replay.idle-ttl-minutes:30}")
+    private long idleTtlMinutes;
+
+    // Topic được đánh seq + lưu để replay: staff và từng bàn (không gồm /topic/table/{n}/payment, /topic/table/payment-confirmed)
+    private static final Pattern REPLAYABLE_TOPIC = Pattern.compile("^/topic/staff/.+|^/topic/table/\\d+$");
+
+    private final String nodeEpoch = UUID.randomUUID().toString();
+    private final AtomicLong generations = new AtomicLong();
+    private final Map<String, TopicLog> topics = new ConcurrentHashMap<>();
+
+    public static boolean isReplayable(String topic) {
+        return topic != null && REPLAYABLE_TOPIC.matcher(topic).matches();
+    }
+
+    /**
+     * Topic replay được: gán seq kế tiếp, lưu vào buffer và gửi, trả về seq đã gán.
+     * Topic khác: gửi thẳng không seq, trả về 0.
+     */
+    public long publish(String topic, Object payload) {
+        if (!isReplayable(topic)) {
+            messagingTemplate.convertAndSend(topic, payload);
+            return 0;
+        }
+        while (true) {
+            TopicLog log = topics.computeIfAbsent(topic, t -> new TopicLog(nodeEpoch + ":" + generations.incrementAndGet()));
+            // Gửi trong lock để thứ tự message trên topic trùng với thứ tự seq
+            synchronized (log) {
+                if (log.evicted) {
+                    // Vừa bị dọn do idle: lấy log mới (epoch mới)
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                long seq = ++log.lastSeq;
+                log.lastPublishedAt = now;
+                log.events.addLast(new LoggedEvent(seq, now, payload));
+                while (log.events.size() > bufferSize) {
+                    log.events.removeFirst();
+                }
+                Map<String, Object> headers = new LinkedHashMap<>();
+                headers.put(SEQ_HEADER, seq);
+                headers.put(EPOCH_HEADER, log.epoch);
+                messagingTemplate.convertAndSend(topic, payload, headers);
+                return seq;
+            }
+        }
+    }
+
+    /**
+     * Các sự kiện của topic có seq > since; since = seq cuối cùng client đã nhận
+     */
+    public Replay replay(String topic, long since, String clientEpoch) {
+        TopicLog log = topics.get(topic);
+        if (log == null) {
+            // Chưa có sự kiện (hoặc log đã bị dọn): chỉ đủ dữ liệu nếu client cũng chưa nhận gì
+            return new Replay(null, 0, since == 0, List.of());
+        }
+        synchronized (log) {
+            if (!log.epoch.equals(clientEpoch) || since > log.lastSeq) {
+                return new Replay(log.epoch, log.lastSeq, false, List.of());
+            }
+            long oldestSeq = log.events.isEmpty() ? log.lastSeq + 1 : log.events.peekFirst().getSeq();
+            boolean complete = since >= oldestSeq - 1;
+            List<LoggedEvent> missed = new ArrayList<>();
+            if (complete) {
+                for (LoggedEvent event : log.events) {
+                    if (event.getSeq() > since) {
+                        missed.add(event);
+                    }
+                }
+            }
+            return new Replay(log.epoch, log.lastSeq, complete, missed);
+        }
+    }
+
+    /**
+     * Dọn log của topic không có sự kiện mới quá idle TTL (VD: bàn đã đóng), tránh giữ buffer mãi
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleTopics() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleTtlMinutes);
+        topics.forEach((topic, log) -> {
+            synchronized (log) {
+                if (log.lastPublishedAt < cutoff) {
+                    log.evicted = true;
+                    topics.remove(topic, log);
+                }
+            }
+        });
+    }
+
+    private static final class TopicLog {
+        private final String epoch;
+        private long lastSeq;
+        private long lastPublishedAt = System.currentTimeMillis();
+        private boolean evicted;
+        private final Deque<LoggedEvent> events = new ArrayDeque<>();
+
+        TopicLog(String epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    public static class LoggedEvent {
+        private final long seq;
+        private final long publishedAt;
+        private final Object payload;
+
+        public LoggedEvent(long seq, long publishedAt, Object payload) {
+            this.seq = seq;
+            this.publishedAt = publishedAt;
+            this.payload = payload;
+        }
+
+        public long getSeq() { return seq; }
+        public long getPublishedAt() { return publishedAt; }
+        public Object getPayload() { return payload; }
+    }
+
+    public static class Replay {
+        private final String epoch;
+        private final long latestSeq;
+        private final boolean complete;
+        private final List<LoggedEvent> events;
+
+        public Replay(String epoch, long latestSeq, boolean complete, List<LoggedEvent> events) {
+            this.epoch = epoch;
+            this.latestSeq = latestSeq;
+            this.complete = complete;
+            this.events = events;
+        }
+
+        public String getEpoch() { return epoch; }
+        public long getLatestSeq() { return latestSeq; }
+        public boolean isComplete() { return complete; }
+        public List<LoggedEvent> getEvents() { return events; }
+    }
+}
@@ -4,46 +4,52 @@ import aptech.be.dto.AccountDeactivationDTO;
 import aptech.be.dto.NotificationDTO;
 import aptech.be.dto.OrderNotificationDTO;
 import aptech.be.models.OrderEntity;
+import aptech.be.models.TableEntity;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Service
 public class WebSocketNotificationService {
     
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private WebSocketEventLog webSocketEventLog;
+    
+    @Autowired
+    private StaffEventCoalescer staffEventCoalescer;
     
     /**
      * Send notification to all staff members
      */
     public void sendToStaff(NotificationDTO notification) {
-        messagingTemplate.convertAndSend("/topic/staff/notifications", notification);
+        webSocketEventLog.publish("/topic/staff/notifications", notification);
     }
     
     /**
      * Send notification to specific table
      */
     public void sendToTable(Long tableId, NotificationDTO notification) {
-        messagingTemplate.convertAndSend("/topic/table/" + tableId, notification);
+        webSocketEventLog.publish("/topic/table/" + tableId, notification);
     }
     
     /**
      * Send order update to staff dashboard
      */
     public void sendOrderUpdate(Object orderData) {
-        messagingTemplate.convertAndSend("/topic/staff/orders", orderData);
+        Object orderId = orderData instanceof OrderEntity ? ((OrderEntity) orderData).getId() : null;
+        staffEventCoalescer.publish("/topic/staff/orders", orderId, orderData);
     }
     
     /**
      * Send table status update
      */
     public void sendTableStatusUpdate(Object tableData) {
-        messagingTemplate.convertAndSend("/topic/staff/tables", tableData);
+        Object tableId = tableData instanceof TableEntity ? ((TableEntity) tableData).getId() : null;
+        staffEventCoalescer.publish("/topic/staff/tables", tableId, tableData);
     }
     
     /**
@@ -55,10 +61,10 @@ public class WebSocketNotificationService {
             AccountDeactivationDTO deactivationNotification = AccountDeactivationDTO.accountDeactivated(userId, username, userType);
             
             // Send to specific user topic
-            messagingTemplate.convertAndSend("/topic/user/" + userId + "/account-status", deactivationNotification);
+            webSocketEventLog.publish("/topic/user/" + userId + "/account-status", deactivationNotification);
             
             // Also send to general account status topic for broader listening
-            messagingTemplate.convertAndSend("/topic/account-status", deactivationNotification);
+            webSocketEventLog.publish("/topic/account-status", deactivationNotification);
             
             System.out.println("[WEBSOCKET] Account deactivation notification sent to user: " + username + " (ID: " + userId + ", Type: " + userType + ")");
         } catch (Exception e) {
@@ -81,10 +87,10 @@ public class WebSocketNotificationService {
             );
             
             // Send to specific user topic
-            messagingTemplate.convertAndSend("/topic/user/" + userId + "/account-status", activationNotification);
+            webSocketEventLog.publish("/topic/user/" + userId + "/account-status", activationNotification);
             
             // Also send to general account status topic
-            messagingTemplate.convertAndSend("/topic/account-status", activationNotification);
+            webSocketEventLog.publish("/topic/account-status", activationNotification);
             
             System.out.println("[WEBSOCKET] Account activation notification sent to user: " + username + " (ID: " + userId + ", Type: " + userType + ")");
         } catch (Exception e) {
@@ -116,7 +122,7 @@ public class WebSocketNotificationService {
         );
         
         // Send to staff calls topic for real-time updates (only one send)
-        messagingTemplate.convertAndSend("/topic/staff/calls", enhancedNotification);
+        webSocketEventLog.publish("/topic/staff/calls", enhancedNotification);
         
         System.out.println("Staff call notification sent for table " + tableId + " (Table " + tableNumber + "): " + reason);
     }
@@ -152,7 +158,7 @@ public class WebSocketNotificationService {
         );
         
         // Send to payment requests topic for real-time updates (only one send)
-        messagingTemplate.convertAndSend("/topic/staff/payments", enhancedNotification);
+        webSocketEventLog.publish("/topic/staff/payments", enhancedNotification);
         
         System.out.println("Payment request notification sent for table " + tableId + " (Table " + tableNumber + ")");
     }
@@ -165,6 +171,27 @@ public class WebSocketNotificationService {
         sendPaymentRequestNotification(tableId, 0);
     }
     
+    /**
+     * Báo dashboard gỡ gọi nhân viên của bàn (reason: EXPIRED / RESOLVED)
+     */
+    public void sendStaffCallDismissed(Long tableId, String reason) {
+        webSocketEventLog.publish("/topic/staff/calls", dismissal("STAFF_CALL_DISMISSED", "Staff Call Dismissed", tableId, reason));
+    }
+    
+    /**
+     * Báo dashboard gỡ yêu cầu thanh toán của bàn (reason: EXPIRED / RESOLVED)
+     */
+    public void sendPaymentRequestDismissed(Long tableId, String reason) {
+        webSocketEventLog.publish("/topic/staff/payments", dismissal("PAYMENT_REQUEST_DISMISSED", "Payment Request Dismissed", tableId, reason));
+    }
+    
+    private NotificationDTO dismissal(String type, String title, Long tableId, String reason) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("tableId", tableId);
+        data.put("reason", reason);
+        return new NotificationDTO(type, title, "Table " + tableId + ": " + reason, data, LocalDateTime.now(), "LOW");
+    }
+    
     /**
      * Send new order notification
      */
@@ -186,17 +213,8 @@ public class WebSocketNotificationService {
                 
                 sendToStaff(notification);
                 
-                // Send simple order info separately
-                String orderInfo = String.format(
-                    "{\"orderId\":%d,\"orderNumber\":\"%s\",\"status\":\"%s\",\"totalPrice\":%.2f,\"tableNumber\":%d}",
-                    order.getId(),
-                    order.getOrderNumber(),
-                    order.getStatus(),
-                    order.getTotalPrice(),
-                    order.getTable() != null ? order.getTable().getNumber() : 0
-                );
-                
-                messagingTemplate.convertAndSend("/topic/staff/orders", orderInfo);
+                // Send simple order info separately (gộp theo orderId)
+                staffEventCoalescer.publish("/topic/staff/orders", order.getId(), orderInfo(order));
             }
         } catch (Exception e) {
             System.out.println("WebSocket notification failed, but order was created successfully: " + e.getMessage());
@@ -224,17 +242,8 @@ public class WebSocketNotificationService {
                 
                 sendToStaff(notification);
                 
-                // Send simple order info separately
-                String orderInfo = String.format(
-                    "{\"orderId\":%d,\"orderNumber\":\"%s\",\"status\":\"%s\",\"totalPrice\":%.2f,\"tableNumber\":%d}",
-                    order.getId(),
-                    order.getOrderNumber(),
-                    order.getStatus(),
-                    order.getTotalPrice(),
-                    order.getTable() != null ? order.getTable().getNumber() : 0
-                );
-                
-                messagingTemplate.convertAndSend("/topic/staff/orders", orderInfo);
+                // Send simple order info separately (gộp theo orderId)
+                staffEventCoalescer.publish("/topic/staff/orders", order.getId(), orderInfo(order));
             }
         } catch (Exception e) {
             System.out.println("WebSocket notification failed: " + e.getMessage());
@@ -242,6 +251,16 @@ public class WebSocketNotificationService {
         }
     }
     
+    private Map<String, Object> orderInfo(OrderEntity order) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("orderId", order.getId());
+        info.put("orderNumber", order.getOrderNumber());
+        info.put("status", order.getStatus());
+        info.put("totalPrice", order.getTotalPrice());
+        info.put("tableNumber", order.getTable() != null ? order.getTable().getNumber() : 0);
+        return info;
+    }
+    
     /**
      * Send payment confirmed notification to table (for point claiming)
      */
@@ -255,10 +274,10 @@ public class WebSocketNotificationService {
             paymentData.put("message", "Payment confirmed successfully! You can now claim your loyalty points.");
             
             // Send to specific table topic
-            messagingTemplate.convertAndSend("/topic/table/" + tableNumber + "/payment", paymentData);
+            webSocketEventLog.publish("/topic/table/" + tableNumber + "/payment", paymentData);
             
             // Also send to general table payment topic for listening
-            messagingTemplate.convertAndSend("/topic/table/payment-confirmed", paymentData);
+            webSocketEventLog.publish("/topic/table/payment-confirmed", paymentData);
             
             System.out.println("[WEBSOCKET] Payment confirmation sent to table " + tableNumber + " with claim token: " + claimToken);
         } catch (Exception e) {
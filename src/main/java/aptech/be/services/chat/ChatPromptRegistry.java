@@ -0,0 +1,131 @@
+package aptech.be.services.chat;
+
+import aptech.be.models.chat.ChatPrompt;
+import aptech.be.repositories.chat.ChatPromptRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prompt hệ thống của chatbot đã biên dịch sẵn theo ngôn ngữ.
+ * Các prompt active được ghép 1 lần thành template bất biến; mỗi lượt chat chỉ chèn tin nhắn của khách.
+ * Bị xóa khi nhận ChatPromptsChangedEvent (ChatPromptController sửa prompt trên node này).
+ * Prompt sửa ở node khác: template được biên dịch lại sau app.chat.prompt-refresh-ms; nếu nội dung khác bản cũ
+ * thì phát ChatPromptsChangedEvent cục bộ để ChatResponseCache bỏ các câu trả lời sinh từ prompt cũ.
+ */
+@Component
+public class ChatPromptRegistry {
+
+    private static final String USER_MESSAGE_HEADER = "=== USER MESSAGE ===\n";
+    private static final String RESPONSE_INSTRUCTION = "=== RESPONSE ===\n"
+            + "Please provide a helpful response based on the above context. "
+            + "If you don't know the answer, suggest contacting customer service. "
+            + "Keep responses concise but informative.\n\n";
+    private static final String DEFAULT_PROMPT = "You are a helpful customer service assistant for Dolce Restaurant. "
+            + "Answer questions about menu, prices, delivery times, and policies. "
+            + "Be friendly and helpful. ";
+
+    @Autowired
+    private ChatPromptRepository chatPromptRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.chat.prompt-refresh-ms:60000}")
+    private long refreshMillis;
+
+    private final Map<String, CompiledPrompt> compiled = new ConcurrentHashMap<>();
+
+    public String render(String language, String userMessage) {
+        return template(language).render(userMessage);
+    }
+
+    /**
+     * Prompt của ngôn ngữ này có chèn giờ hiện tại không (không có prompt đã train).
+     * Câu trả lời sinh từ prompt như vậy phụ thuộc thời điểm nên không được cache.
+     */
+    public boolean includesCurrentTime(String language) {
+        return template(language).includeCurrentTime;
+    }
+
+    private CompiledPrompt template(String language) {
+        String key = language != null ? language : "";
+        CompiledPrompt current = compiled.computeIfAbsent(key, this::compile);
+        if (System.currentTimeMillis() - current.compiledAt < refreshMillis) {
+            return current;
+        }
+        CompiledPrompt fresh = compile(key);
+        if (!fresh.sameContent(current)) {
+            // Prompt đã bị sửa ở node khác
+            eventPublisher.publishEvent(new ChatPromptsChangedEvent(null));
+        }
+        compiled.put(key, fresh);
+        return fresh;
+    }
+
+    @EventListener
+    public void onPromptsChanged(ChatPromptsChangedEvent event) {
+        compiled.clear();
+    }
+
+    private CompiledPrompt compile(String language) {
+        List<ChatPrompt> prompts = chatPromptRepository.findActivePromptsByLanguage(language);
+        if (prompts.isEmpty()) {
+            // Không có prompt đã train: dùng prompt mặc định, giờ hiện tại được chèn mỗi lần render
+            return new CompiledPrompt(DEFAULT_PROMPT, true);
+        }
+
+        StringBuilder prefix = new StringBuilder();
+        for (ChatPrompt promptData : prompts) {
+            prefix.append("=== SYSTEM PROMPT ===\n");
+            prefix.append(promptData.getSystemPrompt()).append("\n\n");
+
+            if (promptData.getUserExamples() != null && !promptData.getUserExamples().trim().isEmpty()) {
+                prefix.append("=== USER EXAMPLES ===\n");
+                prefix.append(promptData.getUserExamples()).append("\n\n");
+            }
+
+            if (promptData.getAssistantExamples() != null && !promptData.getAssistantExamples().trim().isEmpty()) {
+                prefix.append("=== ASSISTANT EXAMPLES ===\n");
+                prefix.append(promptData.getAssistantExamples()).append("\n\n");
+            }
+        }
+        return new CompiledPrompt(prefix.toString(), false);
+    }
+
+    private static final class CompiledPrompt {
+        private final String prefix;
+        private final boolean includeCurrentTime;
+        private final long compiledAt = System.currentTimeMillis();
+
+        CompiledPrompt(String prefix, boolean includeCurrentTime) {
+            this.prefix = prefix;
+            this.includeCurrentTime = includeCurrentTime;
+        }
+
+        boolean sameContent(CompiledPrompt other) {
+            return prefix.equals(other.prefix) && includeCurrentTime == other.includeCurrentTime;
+        }
+
+        String render(String userMessage) {
+            String message = userMessage != null ? userMessage : "";
+            StringBuilder prompt = new StringBuilder(prefix.length() + message.length()
+                    + USER_MESSAGE_HEADER.length() + RESPONSE_INSTRUCTION.length() + 48);
+            prompt.append(prefix);
+            if (includeCurrentTime) {
+                prompt.append("Current time: ").append(LocalTime.now().toString()).append("\n\n");
+            }
+            prompt.append(USER_MESSAGE_HEADER);
+            prompt.append(message).append("\n\n");
+            prompt.append(RESPONSE_INSTRUCTION);
+            return prompt.toString();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package aptech.be.services.chat;
+
+/**
+ * Phát ra khi prompt chatbot được tạo / sửa / xóa / bật tắt, để ChatPromptRegistry biên dịch lại
+ */
+public class ChatPromptsChangedEvent {
+
+    private final Long promptId;
+
+    public ChatPromptsChangedEvent(Long promptId) {
+        this.promptId = promptId;
+    }
+
+    public Long getPromptId() {
+        return promptId;
+    }
+}
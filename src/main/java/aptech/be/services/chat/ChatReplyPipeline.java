@@ -0,0 +1,139 @@
+package aptech.be.services.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hàng đợi sinh câu trả lời chatbot, chạy ngoài request thread:
+ * - mỗi session 1 "lane": câu trả lời được sinh lần lượt theo thứ tự tin nhắn (task sau chờ stream của task trước xong)
+ * - các session khác nhau chạy song song trên chatReplyExecutor
+ * - giới hạn tổng số task đang chờ/chạy (max-pending) và số task mỗi session (max-pending-per-session);
+ *   vượt giới hạn thì submit trả về false để ChatService trả lời "đang bận" ngay
+ */
+@Component
+public class ChatReplyPipeline {
+
+    @Autowired
+    @Qualifier("chatReplyExecutor")
+    private ThreadPoolTaskExecutor chatReplyExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.chat.max-pending:200}")
+    private int maxPending;
+
+    @Value("${app.chat.max-pending-per-session:3}")
+    private int maxPendingPerSession;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private Semaphore permits;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxPending);
+        Gauge.builder("chat.reply.pending", this, p -> maxPending - p.permits.availablePermits())
+                .description("Câu trả lời chatbot đang chờ / đang sinh")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("chat.reply.rejected")
+                .description("Tin nhắn bị trả lời 'đang bận' do hàng đợi đầy")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Đưa task vào lane của session; task trả về future hoàn thành khi câu trả lời đã stream xong
+     */
+    public boolean submit(String sessionId, Supplier<CompletableFuture<?>> task) {
+        if (!permits.tryAcquire()) {
+            rejectedCounter.increment();
+            return false;
+        }
+        boolean[] accepted = {false};
+        lanes.compute(sessionId, (key, lane) -> {
+            Lane current = lane != null ? lane : new Lane();
+            if (current.pending < maxPendingPerSession) {
+                current.pending++;
+                current.tasks.add(task);
+                accepted[0] = true;
+            }
+            return current.pending == 0 ? null : current;
+        });
+        if (!accepted[0]) {
+            permits.release();
+            rejectedCounter.increment();
+            return false;
+        }
+        drain(sessionId);
+        return true;
+    }
+
+    private void drain(String sessionId) {
+        AtomicReference<Supplier<CompletableFuture<?>>> next = new AtomicReference<>();
+        lanes.computeIfPresent(sessionId, (key, lane) -> {
+            if (!lane.running && !lane.tasks.isEmpty()) {
+                lane.running = true;
+                next.set(lane.tasks.poll());
+            }
+            return lane;
+        });
+        Supplier<CompletableFuture<?>> task = next.get();
+        if (task == null) {
+            return;
+        }
+        try {
+            chatReplyExecutor.execute(() -> run(sessionId, task));
+        } catch (TaskRejectedException e) {
+            System.err.println("[CHAT] Reply executor rejected task for session " + sessionId);
+            complete(sessionId);
+        }
+    }
+
+    private void run(String sessionId, Supplier<CompletableFuture<?>> task) {
+        CompletableFuture<?> future;
+        try {
+            future = task.get();
+        } catch (Exception e) {
+            System.err.println("[CHAT] Reply task failed for session " + sessionId + ": " + e.getMessage());
+            future = CompletableFuture.completedFuture(null);
+        }
+        if (future == null) {
+            future = CompletableFuture.completedFuture(null);
+        }
+        future.whenComplete((result, error) -> complete(sessionId));
+    }
+
+    private void complete(String sessionId) {
+        lanes.computeIfPresent(sessionId, (key, lane) -> {
+            lane.pending--;
+            lane.running = false;
+            return lane.pending == 0 ? null : lane;
+        });
+        permits.release();
+        drain(sessionId);
+    }
+
+    // Trạng thái 1 session, chỉ được sửa bên trong lanes.compute (khóa theo key)
+    private static final class Lane {
+        final Queue<Supplier<CompletableFuture<?>>> tasks = new ArrayDeque<>();
+        int pending;
+        boolean running;
+    }
+}
@@ -0,0 +1,237 @@
+package aptech.be.services.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Cache câu trả lời chatbot cho các câu hỏi lặp lại (giờ mở cửa, phí giao hàng, thực đơn...).
+ * - khóa: ngôn ngữ + tin nhắn đã chuẩn hóa (chữ thường, bỏ dấu câu, gộp khoảng trắng)
+ * - không trùng khóa: so khớp gần đúng bằng TF-IDF trên trigram ký tự (cosine >= similarity-threshold)
+ * - giới hạn kích thước (LRU) và TTL; metrics hit / near-hit / miss
+ * Prompt gửi LLM chỉ gồm prompt hệ thống + tin nhắn hiện tại (không có lịch sử hội thoại) nên câu trả lời dùng chung được.
+ */
+@Component
+public class ChatResponseCache {
+
+    private static final int NGRAM = 3;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.chat.response-cache.max-size:500}")
+    private int maxSize;
+
+    @Value("${app.chat.response-cache.ttl-ms:21600000}")
+    private long ttlMillis;
+
+    // <= 0 để tắt so khớp gần đúng
+    @Value("${app.chat.response-cache.similarity-threshold:0.85}")
+    private double similarityThreshold;
+
+    // LRU theo thứ tự truy cập; mọi truy cập đều synchronized trên this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Số entry chứa mỗi trigram (document frequency) để tính IDF
+    private final Map<String, Integer> documentFrequency = new HashMap<>();
+
+    private Counter hitCounter;
+    private Counter nearHitCounter;
+    private Counter missCounter;
+
+    @PostConstruct
+    public void registerMetrics() {
+        hitCounter = Counter.builder("chat.response.cache").tag("result", "hit")
+                .description("Câu trả lời lấy từ cache (trùng khóa)")
+                .register(meterRegistry);
+        nearHitCounter = Counter.builder("chat.response.cache").tag("result", "near_hit")
+                .description("Câu trả lời lấy từ cache (câu hỏi gần giống)")
+                .register(meterRegistry);
+        missCounter = Counter.builder("chat.response.cache").tag("result", "miss")
+                .description("Câu hỏi phải gọi LLM")
+                .register(meterRegistry);
+        Gauge.builder("chat.response.cache.size", this, ChatResponseCache::size)
+                .description("Số câu trả lời đang cache")
+                .register(meterRegistry);
+    }
+
+    public Optional<String> lookup(String language, String message) {
+        String normalized = normalize(message);
+        if (normalized.isEmpty()) {
+            return Optional.empty();
+        }
+        String lang = language != null ? language : "";
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            Entry exact = entries.get(key(lang, normalized));
+            if (exact != null && !exact.isExpired(now, ttlMillis)) {
+                hitCounter.increment();
+                return Optional.of(exact.answer);
+            }
+            if (exact != null) {
+                remove(key(lang, normalized));
+            }
+
+            if (similarityThreshold > 0) {
+                Map<String, Integer> query = ngrams(normalized);
+                Entry best = null;
+                double bestScore = similarityThreshold;
+                for (Entry entry : entries.values()) {
+                    if (!entry.language.equals(lang) || entry.isExpired(now, ttlMillis)) {
+                        continue;
+                    }
+                    double score = cosine(query, entry.ngrams);
+                    if (score >= bestScore) {
+                        bestScore = score;
+                        best = entry;
+                    }
+                }
+                if (best != null) {
+                    nearHitCounter.increment();
+                    return Optional.of(best.answer);
+                }
+            }
+        }
+        missCounter.increment();
+        return Optional.empty();
+    }
+
+    public void put(String language, String message, String answer) {
+        String normalized = normalize(message);
+        if (normalized.isEmpty() || answer == null || answer.isBlank()) {
+            return;
+        }
+        String lang = language != null ? language : "";
+        String key = key(lang, normalized);
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            remove(key);
+            Entry entry = new Entry(lang, answer, ngrams(normalized), now);
+            entries.put(key, entry);
+            entry.ngrams.keySet().forEach(gram -> documentFrequency.merge(gram, 1, Integer::sum));
+
+            // Bỏ entry hết hạn trước, sau đó bỏ entry ít dùng nhất nếu vẫn vượt kích thước
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                if (e.getValue().isExpired(now, ttlMillis) || entries.size() > maxSize) {
+                    it.remove();
+                    forget(e.getValue());
+                }
+            }
+        }
+    }
+
+    public synchronized int flush() {
+        int size = entries.size();
+        entries.clear();
+        documentFrequency.clear();
+        return size;
+    }
+
+    // Prompt hệ thống đổi (trên node này, hoặc ChatPromptRegistry phát hiện khi biên dịch lại) → câu trả lời cũ có thể không còn đúng
+    @EventListener
+    public void onPromptsChanged(ChatPromptsChangedEvent event) {
+        flush();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Chữ thường, chuẩn hóa Unicode (giữ dấu tiếng Việt), bỏ dấu câu, gộp khoảng trắng
+     */
+    static String normalize(String message) {
+        if (message == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(message, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        text = text.replaceAll("[^\\p{L}\\p{N}\\s]", " ");
+        return text.replaceAll("\\s+", " ").trim();
+    }
+
+    private static String key(String language, String normalized) {
+        return language + "|" + normalized;
+    }
+
+    private static Map<String, Integer> ngrams(String normalized) {
+        String padded = " " + normalized + " ";
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i + NGRAM <= padded.length(); i++) {
+            counts.merge(padded.substring(i, i + NGRAM), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // Gọi trong synchronized
+    private double cosine(Map<String, Integer> query, Map<String, Integer> doc) {
+        double dot = 0;
+        double queryNorm = 0;
+        for (Map.Entry<String, Integer> e : query.entrySet()) {
+            double weight = e.getValue() * idf(e.getKey());
+            queryNorm += weight * weight;
+            Integer docCount = doc.get(e.getKey());
+            if (docCount != null) {
+                dot += weight * docCount * idf(e.getKey());
+            }
+        }
+        if (dot == 0) {
+            return 0;
+        }
+        double docNorm = 0;
+        for (Map.Entry<String, Integer> e : doc.entrySet()) {
+            double weight = e.getValue() * idf(e.getKey());
+            docNorm += weight * weight;
+        }
+        return dot / (Math.sqrt(queryNorm) * Math.sqrt(docNorm));
+    }
+
+    private double idf(String gram) {
+        int df = documentFrequency.getOrDefault(gram, 0);
+        return Math.log((entries.size() + 1.0) / (df + 1.0)) + 1.0;
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            forget(old);
+        }
+    }
+
+    private void forget(Entry entry) {
+        entry.ngrams.keySet().forEach(gram -> documentFrequency.computeIfPresent(gram, (g, df) -> df <= 1 ? null : df - 1));
+    }
+
+    private static final class Entry {
+        final String language;
+        final String answer;
+        final Map<String, Integer> ngrams;
+        final long createdAt;
+
+        Entry(String language, String answer, Map<String, Integer> ngrams, long createdAt) {
+            this.language = language;
+            this.answer = answer;
+            this.ngrams = ngrams;
+            this.createdAt = createdAt;
+        }
+
+        boolean isExpired(long now, long ttlMillis) {
+            return now - createdAt >= ttlMillis;
+        }
+    }
+}
@@ -6,22 +6,29 @@ import aptech.be.repositories.UserRepository;
 import aptech.be.repositories.CustomerRepository;
 import aptech.be.services.chat.LLMClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 
-import java.time.LocalTime;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Transactional
 public class ChatService {
     
+    private static final int IDLE_SWEEP_BATCH_SIZE = 500;
+    
     @Autowired
     private ChatSessionRepository chatSessionRepository;
     
@@ -29,11 +36,17 @@ public class ChatService {
     private ChatMessageRepository chatMessageRepository;
     
     @Autowired
-    private ChatPromptRepository chatPromptRepository;
+    private ChatPromptRegistry chatPromptRegistry;
+    
+    @Autowired
+    private ChatResponseCache chatResponseCache;
     
     @Autowired
     private LLMClient llmClient;
     
+    @Autowired
+    private ChatReplyPipeline chatReplyPipeline;
+    
     @Autowired(required = false)
     private SimpMessagingTemplate messagingTemplate;
     
@@ -182,40 +195,7 @@ public class ChatService {
             return;
         }
         
-        try {
-            // Gửi tín hiệu start sớm để FE hiển thị typing ngay lập tức
-            if (messagingTemplate != null) {
-                messagingTemplate.convertAndSend("/topic/chat/" + sessionId,
-                    "{\"type\":\"start\",\"sessionId\":\"" + sessionId + "\"}");
-            }
-            
-            // Build AI prompt with training data và gọi LLM
-            String aiPrompt = buildAIPrompt(session.getLanguage(), message);
-            String aiResponse = llmClient.generateResponse(aiPrompt);
-            
-            if (aiResponse != null && !aiResponse.trim().isEmpty()) {
-                // Store AI response
-                ChatMessage aiMsg = new ChatMessage();
-                aiMsg.setSessionId(sessionId);
-                aiMsg.setSender("bot");
-                aiMsg.setSenderName("BOT");
-                aiMsg.setContentRaw(aiResponse);
-                aiMsg.setContentMasked(aiResponse);
-                aiMsg.setCreatedAt(java.time.LocalDateTime.now());
-                chatMessageRepository.save(aiMsg);
-                
-                // Stream response to client
-                if (messagingTemplate != null) {
-                    streamAsBot(sessionId, aiResponse);
-                }
-            } else {
-                // Fallback response
-                sendFallbackResponse(sessionId, session.getLanguage());
-            }
-        } catch (Exception e) {
-            // Fallback response on error
-            sendFallbackResponse(sessionId, session.getLanguage());
-        }
+        dispatchBotReply(sessionId, session.getLanguage(), message);
     }
     
     public void receiveUserMessage(String sessionId, String message, String displayName) {
@@ -255,67 +235,87 @@ public class ChatService {
             }
             return;
         }
-        try {
-            if (messagingTemplate != null) {
-                messagingTemplate.convertAndSend("/topic/chat/" + sessionId, "{\"type\":\"start\",\"sessionId\":\"" + sessionId + "\"}");
+        dispatchBotReply(sessionId, session.getLanguage(), message);
+    }
+    
+    /**
+     * Tin nhắn của khách được commit trước, sau đó mới đưa việc sinh câu trả lời vào ChatReplyPipeline
+     * (không giữ transaction / connection DB trong lúc chờ LLM). Hàng đợi đầy → trả lời "đang bận" ngay.
+     */
+    private void dispatchBotReply(String sessionId, String language, String message) {
+        runAfterCommit(() -> {
+            if (!chatReplyPipeline.submit(sessionId, () -> replyWithBot(sessionId, language, message))) {
+                sendBusyReply(sessionId, language);
             }
-            String aiPrompt = buildAIPrompt(session.getLanguage(), message);
-            String aiResponse = llmClient.generateResponse(aiPrompt);
-            if (aiResponse != null && !aiResponse.trim().isEmpty()) {
-                ChatMessage aiMsg = new ChatMessage();
-                aiMsg.setSessionId(sessionId);
-                aiMsg.setSender("bot");
-                aiMsg.setSenderName("BOT");
-                aiMsg.setContentRaw(aiResponse);
-                aiMsg.setContentMasked(aiResponse);
-                aiMsg.setCreatedAt(java.time.LocalDateTime.now());
-                chatMessageRepository.save(aiMsg);
-                if (messagingTemplate != null) { streamAsBot(sessionId, aiResponse); }
-            } else { sendFallbackResponse(sessionId, session.getLanguage()); }
-        } catch (Exception e) { sendFallbackResponse(sessionId, session.getLanguage()); }
+        });
     }
     
-    private String buildAIPrompt(String language, String userMessage) {
-        StringBuilder prompt = new StringBuilder();
-        
-        // Get active prompts for the language
-        List<ChatPrompt> prompts = chatPromptRepository.findActivePromptsByLanguage(language);
-        
-        if (prompts.isEmpty()) {
-            // Fallback to default prompt
-            prompt.append("You are a helpful customer service assistant for Dolce Restaurant. ");
-            prompt.append("Answer questions about menu, prices, delivery times, and policies. ");
-            prompt.append("Be friendly and helpful. ");
-            prompt.append("Current time: ").append(LocalTime.now().toString()).append("\n\n");
-        } else {
-            // Use trained prompts
-            for (ChatPrompt promptData : prompts) {
-                prompt.append("=== SYSTEM PROMPT ===\n");
-                prompt.append(promptData.getSystemPrompt()).append("\n\n");
-                
-                if (promptData.getUserExamples() != null && !promptData.getUserExamples().trim().isEmpty()) {
-                    prompt.append("=== USER EXAMPLES ===\n");
-                    prompt.append(promptData.getUserExamples()).append("\n\n");
-                }
-                
-                if (promptData.getAssistantExamples() != null && !promptData.getAssistantExamples().trim().isEmpty()) {
-                    prompt.append("=== ASSISTANT EXAMPLES ===\n");
-                    prompt.append(promptData.getAssistantExamples()).append("\n\n");
+    /**
+     * Stream câu trả lời của LLM về /topic/chat/{sessionId}: start → từng delta khi provider trả về → end.
+     * Việc đọc stream chạy bất đồng bộ trên HttpClient; future hoàn thành khi câu trả lời đã được lưu.
+     */
+    private CompletableFuture<?> replyWithBot(String sessionId, String language, String message) {
+        try {
+            // Gửi tín hiệu start sớm để FE hiển thị typing ngay lập tức
+            sendStart(sessionId);
+            
+            // Tin nhắn chứa thông tin cá nhân không được cache (tránh trả câu trả lời của khách này cho khách khác);
+            // prompt có chèn giờ hiện tại cũng không cache vì câu trả lời chỉ đúng tại thời điểm sinh ra
+            boolean cacheable = message.equals(PIIMasker.mask(message))
+                    && !chatPromptRegistry.includesCurrentTime(language);
+            if (cacheable) {
+                Optional<String> cached = chatResponseCache.lookup(language, message);
+                if (cached.isPresent()) {
+                    sendDelta(sessionId, cached.get());
+                    saveBotMessage(sessionId, cached.get());
+                    sendEnd(sessionId);
+                    return CompletableFuture.completedFuture(cached.get());
                 }
             }
+            
+            // Build AI prompt with training data và gọi LLM
+            String aiPrompt = chatPromptRegistry.render(language, message);
+            return llmClient.streamResponse(aiPrompt, delta -> sendDelta(sessionId, delta))
+                .whenComplete((aiResponse, error) -> {
+                    try {
+                        if (error == null && aiResponse != null && !aiResponse.trim().isEmpty()) {
+                            // Store AI response
+                            saveBotMessage(sessionId, aiResponse);
+                            sendEnd(sessionId);
+                            if (cacheable && !llmClient.isFallbackResponse(aiPrompt, aiResponse)) {
+                                chatResponseCache.put(language, message, aiResponse);
+                            }
+                        } else {
+                            sendFallbackResponse(sessionId, language);
+                        }
+                    } catch (Exception e) {
+                        System.err.println("Error finishing bot reply for session " + sessionId + ": " + e.getMessage());
+                    }
+                });
+        } catch (Exception e) {
+            // Fallback response on error
+            sendFallbackResponse(sessionId, language);
+            return CompletableFuture.completedFuture(null);
         }
-        
-        // Add user message
-        prompt.append("=== USER MESSAGE ===\n");
-        prompt.append(userMessage).append("\n\n");
-        
-        // Add response instruction
-        prompt.append("=== RESPONSE ===\n");
-        prompt.append("Please provide a helpful response based on the above context. ");
-        prompt.append("If you don't know the answer, suggest contacting customer service. ");
-        prompt.append("Keep responses concise but informative.\n\n");
-        
-        return prompt.toString();
+    }
+    
+    // Trả lời ngay khi hàng đợi chatbot đầy (không gọi LLM, không lưu DB)
+    private void sendBusyReply(String sessionId, String language) {
+        String busyMessage = "vi".equalsIgnoreCase(language) ?
+            "Hệ thống đang bận, vui lòng gửi lại tin nhắn sau giây lát." :
+            "We're receiving a lot of messages right now. Please try again in a moment.";
+        streamAsBot(sessionId, busyMessage);
+    }
+    
+    private ChatMessage saveBotMessage(String sessionId, String content) {
+        ChatMessage botMsg = new ChatMessage();
+        botMsg.setSessionId(sessionId);
+        botMsg.setSender("bot");
+        botMsg.setSenderName("BOT");
+        botMsg.setContentRaw(content);
+        botMsg.setContentMasked(content);
+        botMsg.setCreatedAt(java.time.LocalDateTime.now());
+        return chatMessageRepository.save(botMsg);
     }
     
     private void sendFallbackResponse(String sessionId, String language) {
@@ -324,14 +324,7 @@ public class ChatService {
             "Sorry, I couldn't process that right now. Please contact customer service for assistance.";
         
         // Store fallback response
-        ChatMessage fallbackMsg = new ChatMessage();
-        fallbackMsg.setSessionId(sessionId);
-        fallbackMsg.setSender("bot");
-        fallbackMsg.setSenderName("BOT");
-        fallbackMsg.setContentRaw(fallbackMessage);
-        fallbackMsg.setContentMasked(fallbackMessage);
-        fallbackMsg.setCreatedAt(java.time.LocalDateTime.now());
-        chatMessageRepository.save(fallbackMsg);
+        saveBotMessage(sessionId, fallbackMessage);
         
         // Stream fallback response
         if (messagingTemplate != null) {
@@ -455,6 +448,9 @@ public class ChatService {
         }
     }
     
+    /**
+     * Gửi tin nhắn có sẵn (chào, chuyển nhân viên, fallback) theo cùng giao thức start/delta/end, 1 delta duy nhất
+     */
     private void streamAsBot(String sessionId, String message) {
         if (messagingTemplate == null) return;
         
@@ -465,67 +461,40 @@ public class ChatService {
         }
         
         try {
-            // Send start signal
-            messagingTemplate.convertAndSend("/topic/chat/" + sessionId, 
-                "{\"type\":\"start\",\"sessionId\":\"" + sessionId + "\"}");
-            
-            // Stream message in smaller chunks for better reliability
-            int chunkSize = 15; // Giảm chunk size để ổn định hơn
-            String[] chunks = message.split("(?<=\\G.{" + chunkSize + "})");
-            
-            System.out.println("Streaming message: " + message);
-            System.out.println("Total chunks: " + chunks.length);
-            
-            for (int i = 0; i < chunks.length; i++) {
-                try {
-                    Thread.sleep(30); // Tăng delay để ổn định hơn
-                    
-                    String chunk = chunks[i];
-                    // Escape special characters for JSON
-                    String escapedChunk = chunk.replace("\\", "\\\\")
-                        .replace("\"", "\\\"")
-                        .replace("\n", "\\n")
-                        .replace("\r", "\\r")
-                        .replace("\t", "\\t");
-                    
-                    String deltaMessage = "{\"type\":\"delta\",\"delta\":\"" + escapedChunk + "\",\"sessionId\":\"" + sessionId + "\"}";
-                    
-                    System.out.println("Sending chunk " + (i+1) + "/" + chunks.length + ": " + chunk);
-                    messagingTemplate.convertAndSend("/topic/chat/" + sessionId, deltaMessage);
-                    
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    System.err.println("Streaming interrupted for session: " + sessionId);
-                    break;
-                } catch (Exception e) {
-                    System.err.println("Error sending chunk " + (i+1) + " for session " + sessionId + ": " + e.getMessage());
-                }
-            }
-            
-            // Send end signal
-            String endMessage = "{\"type\":\"end\",\"sessionId\":\"" + sessionId + "\"}";
-            messagingTemplate.convertAndSend("/topic/chat/" + sessionId, endMessage);
-            System.out.println("Streaming completed for session: " + sessionId);
-            
+            sendStart(sessionId);
+            sendDelta(sessionId, message);
+            sendEnd(sessionId);
         } catch (Exception e) {
             System.err.println("Error in streamAsBot for session " + sessionId + ": " + e.getMessage());
-            e.printStackTrace();
-            
-            // Fallback: send message as single chunk if streaming fails
-            try {
-                // Escape the entire message for fallback
-                String escapedMessage = message.replace("\\", "\\\\")
-                    .replace("\"", "\\\"")
-                    .replace("\n", "\\n")
-                    .replace("\r", "\\r")
-                    .replace("\t", "\\t");
-                messagingTemplate.convertAndSend("/topic/chat/" + sessionId, escapedMessage);
-            } catch (Exception fallbackError) {
-                System.err.println("Fallback also failed for session " + sessionId + ": " + fallbackError.getMessage());
-            }
         }
     }
     
+    private void sendStart(String sessionId) {
+        if (messagingTemplate == null) return;
+        messagingTemplate.convertAndSend("/topic/chat/" + sessionId,
+            "{\"type\":\"start\",\"sessionId\":\"" + sessionId + "\"}");
+    }
+    
+    private void sendDelta(String sessionId, String delta) {
+        if (messagingTemplate == null) return;
+        String deltaMessage = "{\"type\":\"delta\",\"delta\":\"" + escapeJson(delta) + "\",\"sessionId\":\"" + sessionId + "\"}";
+        messagingTemplate.convertAndSend("/topic/chat/" + sessionId, deltaMessage);
+    }
+    
+    private void sendEnd(String sessionId) {
+        if (messagingTemplate == null) return;
+        messagingTemplate.convertAndSend("/topic/chat/" + sessionId,
+            "{\"type\":\"end\",\"sessionId\":\"" + sessionId + "\"}");
+    }
+    
+    private static String escapeJson(String value) {
+        return value.replace("\\", "\\\\")
+            .replace("\"", "\\\"")
+            .replace("\n", "\\n")
+            .replace("\r", "\\r")
+            .replace("\t", "\\t");
+    }
+    
     public List<ChatMessage> getChatHistory(String sessionId) {
         return chatMessageRepository.findBySessionIdOrderByCreatedAtAsc(sessionId);
     }
@@ -536,10 +505,7 @@ public class ChatService {
 		session.setStatus("ended");
 		session.setEndedAt(java.time.LocalDateTime.now());
 		chatSessionRepository.save(session);
-		if (messagingTemplate != null) {
-			String json = "{\"type\":\"closed\",\"sessionId\":\"" + sessionId + "\"}";
-			messagingTemplate.convertAndSend("/topic/chat/" + sessionId, json);
-		}
+		sendClosed(sessionId);
 	}
 
 	public void rateSession(String sessionId, int rating) {
@@ -557,7 +523,8 @@ public class ChatService {
 		chatSessionRepository.save(s);
 	}
 
-	// Gửi cảnh báo sau 5 phút và đóng sau 10 phút
+	// Gửi cảnh báo sau 5 phút và đóng sau 10 phút.
+	// Mỗi lượt chỉ tốn vài query theo index (status, last_activity_at), không đọc lịch sử tin nhắn.
 	@Scheduled(fixedDelay = 60000)
 	public void autoWarnAndCloseIdleSessions() {
 		LocalDateTime now = LocalDateTime.now();
@@ -565,40 +532,63 @@ public class ChatService {
 		LocalDateTime warnThreshold = now.minusMinutes(5);
 		// Close threshold: 10 minutes idle
 		LocalDateTime closeThreshold = now.minusMinutes(10);
+		PageRequest batch = PageRequest.of(0, IDLE_SWEEP_BATCH_SIZE);
 
-		// Close sessions idle >= 10 minutes
-		List<ChatSession> toClose = chatSessionRepository.findActiveSessionsIdleBefore(closeThreshold);
-		for (ChatSession s : toClose) {
-			try {
-				closeSession(s.getSessionId());
-			} catch (Exception ignored) {}
+		// Close sessions idle >= 10 minutes: 1 UPDATE cho cả lô
+		List<String> toClose = chatSessionRepository.findActiveSessionIdsIdleBefore(closeThreshold, batch);
+		if (!toClose.isEmpty()) {
+			chatSessionRepository.closeActiveBySessionIdIn(toClose, now);
+			runAfterCommit(() -> toClose.forEach(this::sendClosed));
 		}
 
-		// Warn sessions idle >= 5 minutes but < 10 minutes: gửi 1 lần
-		List<ChatSession> toWarn = chatSessionRepository.findActiveSessionsIdleBefore(warnThreshold);
+		// Warn sessions idle >= 5 minutes but < 10 minutes: gửi 1 lần cho mỗi khoảng idle (warnedAt < lastActivityAt)
+		List<ChatSession> toWarn = chatSessionRepository.findSessionsToWarn(warnThreshold, closeThreshold, batch);
+		if (toWarn.isEmpty()) {
+			return;
+		}
+		List<ChatMessage> warnings = new ArrayList<>();
 		for (ChatSession s : toWarn) {
-			// Kiểm tra đã gửi cảnh báo chưa: lưu 1 ChatMessage sender=bot với nội dung warning để không gửi lại
-			List<ChatMessage> msgs = chatMessageRepository.findBySessionIdOrderByCreatedAtAsc(s.getSessionId());
-			boolean alreadyWarned = msgs.stream().anyMatch(m -> "bot".equals(m.getSender()) && m.getContentMasked() != null && m.getContentMasked().contains("sẽ tự động đóng"));
-			if (alreadyWarned) continue;
 			String vi = "Phiên sẽ tự động đóng nếu không nhận được phản hồi sau 5 phút.";
 			String en = "The session will auto-close if we don't receive a reply within 5 minutes.";
 			String warning = "vi".equalsIgnoreCase(s.getLanguage()) ? vi : en;
-			// Lưu message
 			ChatMessage warnMsg = new ChatMessage();
 			warnMsg.setSessionId(s.getSessionId());
 			warnMsg.setSender("bot");
 			warnMsg.setSenderName("BOT");
 			warnMsg.setContentRaw(warning);
 			warnMsg.setContentMasked(warning);
-			warnMsg.setCreatedAt(LocalDateTime.now());
-			chatMessageRepository.save(warnMsg);
-			// Gửi qua WS (non-stream)
-			if (messagingTemplate != null) {
-				String escaped = warning.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
-				String json = "{\"type\":\"agent\",\"content\":\"" + escaped + "\",\"sessionId\":\"" + s.getSessionId() + "\",\"senderName\":\"BOT\"}";
-				messagingTemplate.convertAndSend("/topic/chat/" + s.getSessionId(), json);
+			warnMsg.setCreatedAt(now);
+			warnings.add(warnMsg);
+		}
+		chatMessageRepository.saveAll(warnings);
+		chatSessionRepository.markWarned(toWarn.stream().map(ChatSession::getId).toList(), now);
+		// Gửi qua WS (non-stream) sau khi commit
+		runAfterCommit(() -> {
+			if (messagingTemplate == null) return;
+			for (ChatMessage w : warnings) {
+				String json = "{\"type\":\"agent\",\"content\":\"" + escapeJson(w.getContentRaw()) + "\",\"sessionId\":\"" + w.getSessionId() + "\",\"senderName\":\"BOT\"}";
+				messagingTemplate.convertAndSend("/topic/chat/" + w.getSessionId(), json);
 			}
+		});
+	}
+
+	private void sendClosed(String sessionId) {
+		if (messagingTemplate != null) {
+			String json = "{\"type\":\"closed\",\"sessionId\":\"" + sessionId + "\"}";
+			messagingTemplate.convertAndSend("/topic/chat/" + sessionId, json);
+		}
+	}
+
+	private void runAfterCommit(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
 		}
 	}
 } 
\ No newline at end of file
@@ -0,0 +1,79 @@
+package aptech.be.services.chat;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker đơn giản cho nhà cung cấp LLM:
+ * - CLOSED: gọi bình thường, đếm số lần lỗi liên tiếp
+ * - OPEN: lỗi liên tiếp đạt ngưỡng → từ chối ngay (dùng fallback) trong openMillis
+ * - HALF_OPEN: hết thời gian mở → cho đúng 1 request thử; thành công thì đóng lại, lỗi thì mở tiếp
+ */
+public class LLMCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public LLMCircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, System::currentTimeMillis);
+    }
+
+    LLMCircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Có được gọi LLM không; true thì bắt buộc báo lại kết quả bằng onSuccess/onFailure
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            case OPEN:
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean isOpen() {
+        return state == State.OPEN;
+    }
+}
@@ -1,18 +1,38 @@
 package aptech.be.services.chat;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+/**
+ * Client gọi LLM (endpoint OpenAI-compatible).
+ * - 1 HttpClient dùng chung: giữ pool kết nối keep-alive, có connect timeout và timeout cho từng request
+ * - bulkhead: tối đa llm.max-concurrent request cùng lúc, vượt thì trả fallback ngay thay vì xếp hàng
+ * - circuit breaker: lỗi liên tiếp đạt ngưỡng → trả fallback ngay trong llm.circuit.open-ms, không gọi provider
+ */
 @Service
 public class LLMClient {
     
@@ -30,41 +50,82 @@ public class LLMClient {
     @Value("${llm.site}")
     private String site;
     
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Value("${llm.connect-timeout-ms:5000}")
+    private long connectTimeoutMs = 5000;
+    
+    // Thời gian chờ response (với stream: chờ tới khi nhận header)
+    @Value("${llm.read-timeout-ms:30000}")
+    private long readTimeoutMs = 30000;
+    
+    // Tổng thời gian tối đa của 1 lần stream
+    @Value("${llm.stream-timeout-ms:60000}")
+    private long streamTimeoutMs = 60000;
+    
+    @Value("${llm.max-concurrent:16}")
+    private int maxConcurrent = 16;
+    
+    @Value("${llm.circuit.failure-threshold:5}")
+    private int circuitFailureThreshold = 5;
+    
+    @Value("${llm.circuit.open-ms:30000}")
+    private long circuitOpenMs = 30000;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private static final String SSE_DATA_PREFIX = "data:";
+    private static final String SSE_DONE = "[DONE]";
+    
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private HttpClient httpClient;
+    private Semaphore bulkhead;
+    private LLMCircuitBreaker circuitBreaker;
+    private Counter circuitRejectedCounter;
+    private Counter bulkheadRejectedCounter;
+    
+    @PostConstruct
+    public void init() {
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        bulkhead = new Semaphore(maxConcurrent);
+        circuitBreaker = new LLMCircuitBreaker(circuitFailureThreshold, circuitOpenMs);
+        
+        Gauge.builder("llm.circuit.open", circuitBreaker, cb -> cb.isOpen() ? 1 : 0)
+                .description("1 khi circuit breaker của LLM đang mở")
+                .register(meterRegistry);
+        Gauge.builder("llm.inflight", this, c -> maxConcurrent - c.bulkhead.availablePermits())
+                .description("Số request LLM đang chạy")
+                .register(meterRegistry);
+        circuitRejectedCounter = Counter.builder("llm.request.rejected")
+                .tag("reason", "circuit_open")
+                .description("Request LLM bị bỏ qua, trả fallback")
+                .register(meterRegistry);
+        bulkheadRejectedCounter = Counter.builder("llm.request.rejected")
+                .tag("reason", "bulkhead_full")
+                .description("Request LLM bị bỏ qua, trả fallback")
+                .register(meterRegistry);
+    }
     
     public String generateResponse(String prompt) {
-        if (baseUrl == null || baseUrl.trim().isEmpty() || 
-            apiKey == null || apiKey.trim().isEmpty()) {
+        if (!isConfigured()) {
             logger.warn("LLM API not configured, using fallback response");
             return generateFallbackResponse(prompt);
         }
+        if (!acquire()) {
+            return generateFallbackResponse(prompt);
+        }
         
+        long startNanos = System.nanoTime();
+        boolean success = false;
         try {
-            // Prepare headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + apiKey);
-            headers.set("HTTP-Referer", site);
-            headers.set("X-Title", "Dolce Restaurant Chatbot");
-            
-            // Prepare request body
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", model);
-            requestBody.put("messages", List.of(
-                Map.of("role", "system", "content", "You are a helpful AI assistant."),
-                Map.of("role", "user", "content", prompt)
-            ));
-            requestBody.put("max_tokens", 500);
-            requestBody.put("temperature", 0.7);
-            requestBody.put("stream", false);
-            
-            // Make API call
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            ResponseEntity<String> response = restTemplate.exchange(baseUrl, HttpMethod.POST, request, String.class);
+            HttpRequest request = newRequest(prompt, false)
+                    .header("Accept", "application/json")
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
             
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                JsonNode responseJson = objectMapper.readTree(response.getBody());
+            if (response.statusCode() == 200 && response.body() != null) {
+                JsonNode responseJson = objectMapper.readTree(response.body());
                 JsonNode choices = responseJson.get("choices");
                 
                 if (choices != null && choices.isArray() && choices.size() > 0) {
@@ -75,18 +136,236 @@ public class LLMClient {
                         String content = message.get("content").asText();
                         if (content != null && !content.trim().isEmpty()) {
                             logger.info("LLM response generated successfully");
+                            success = true;
                             return content.trim();
                         }
                     }
                 }
             }
             
-            logger.warn("LLM API returned invalid response, using fallback");
+            logger.warn("LLM API returned invalid response (status " + response.statusCode() + "), using fallback");
             return generateFallbackResponse(prompt);
             
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while calling LLM API");
+            return generateFallbackResponse(prompt);
         } catch (Exception e) {
             logger.error("Error calling LLM API: " + e.getMessage(), e);
             return generateFallbackResponse(prompt);
+        } finally {
+            complete("sync", startNanos, success);
+        }
+    }
+    
+    /**
+     * Gọi LLM với "stream": true, đọc từng sự kiện SSE và chuyển delta cho onDelta ngay khi nhận được.
+     * Trả về toàn bộ câu trả lời khi stream kết thúc. Lỗi trước token đầu tiên → trả lời fallback (cũng qua onDelta).
+     */
+    public CompletableFuture<String> streamResponse(String prompt, Consumer<String> onDelta) {
+        if (!isConfigured()) {
+            logger.warn("LLM API not configured, using fallback response");
+            return CompletableFuture.completedFuture(emitFallback(prompt, onDelta));
+        }
+        if (!acquire()) {
+            return CompletableFuture.completedFuture(emitFallback(prompt, onDelta));
+        }
+        
+        long startNanos = System.nanoTime();
+        SseDeltaSubscriber subscriber = new SseDeltaSubscriber(onDelta);
+        HttpRequest request;
+        try {
+            request = newRequest(prompt, true)
+                    .header("Accept", "text/event-stream")
+                    .build();
+        } catch (Exception e) {
+            logger.error("Error building LLM stream request: " + e.getMessage(), e);
+            complete("stream", startNanos, false);
+            return CompletableFuture.completedFuture(emitFallback(prompt, onDelta));
+        }
+        
+        CompletableFuture<HttpResponse<Void>> exchange = httpClient
+                .sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(subscriber));
+        // Provider nhả token quá chậm → cắt stream, giữ phần đã gửi (hoặc fallback nếu chưa có gì)
+        CompletableFuture.delayedExecutor(streamTimeoutMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (!exchange.isDone()) {
+                logger.warn("LLM stream exceeded " + streamTimeoutMs + "ms, cancelling");
+                subscriber.close();
+                exchange.cancel(true);
+            }
+        });
+        
+        return exchange.handle((response, error) -> {
+            String text = subscriber.text();
+            boolean success = error == null && response.statusCode() == 200 && !text.isBlank();
+            complete("stream", startNanos, success);
+            if (success) {
+                logger.info("LLM stream completed");
+                return text.trim();
+            }
+            if (error != null) {
+                logger.error("Error streaming from LLM API: " + error);
+            } else {
+                logger.warn("LLM stream returned status " + response.statusCode() + " without content");
+            }
+            // Đã gửi một phần cho client thì giữ phần đó, chưa gửi gì thì dùng fallback
+            subscriber.close();
+            return subscriber.hasEmitted() ? text.trim() : emitFallback(prompt, onDelta);
+        });
+    }
+    
+    public LLMCircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+    
+    /**
+     * Giữ 1 chỗ trong bulkhead và xin phép circuit breaker; false → caller trả fallback ngay
+     */
+    private boolean acquire() {
+        if (!bulkhead.tryAcquire()) {
+            bulkheadRejectedCounter.increment();
+            logger.warn("LLM bulkhead full (" + maxConcurrent + " in flight), using fallback response");
+            return false;
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            bulkhead.release();
+            circuitRejectedCounter.increment();
+            logger.warn("LLM circuit open, using fallback response");
+            return false;
+        }
+        return true;
+    }
+    
+    private void complete(String mode, long startNanos, boolean success) {
+        bulkhead.release();
+        if (success) {
+            circuitBreaker.onSuccess();
+        } else {
+            circuitBreaker.onFailure();
+        }
+        Timer.builder("llm.request.latency")
+                .tag("mode", mode)
+                .tag("outcome", success ? "success" : "error")
+                .description("Thời gian gọi LLM")
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    private HttpRequest.Builder newRequest(String prompt, boolean stream) throws Exception {
+        return HttpRequest.newBuilder(URI.create(baseUrl))
+                .timeout(Duration.ofMillis(readTimeoutMs))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + apiKey)
+                .header("HTTP-Referer", site)
+                .header("X-Title", "Dolce Restaurant Chatbot")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(buildRequestBody(prompt, stream))));
+    }
+    
+    /**
+     * Lấy delta từ 1 dòng SSE của endpoint OpenAI-compatible:
+     * data: {"choices":[{"delta":{"content":"..."}}]}; trả về null với dòng không có nội dung / [DONE]
+     */
+    String parseSseDelta(String line) {
+        if (line == null || !line.startsWith(SSE_DATA_PREFIX)) {
+            return null;
+        }
+        String data = line.substring(SSE_DATA_PREFIX.length()).trim();
+        if (data.isEmpty() || SSE_DONE.equals(data)) {
+            return null;
+        }
+        try {
+            JsonNode choices = objectMapper.readTree(data).get("choices");
+            if (choices != null && choices.isArray() && choices.size() > 0) {
+                JsonNode content = choices.get(0).path("delta").get("content");
+                if (content != null && !content.isNull()) {
+                    return content.asText();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Skipping malformed SSE event: " + data);
+        }
+        return null;
+    }
+    
+    private Map<String, Object> buildRequestBody(String prompt, boolean stream) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", model);
+        requestBody.put("messages", List.of(
+            Map.of("role", "system", "content", "You are a helpful AI assistant."),
+            Map.of("role", "user", "content", prompt)
+        ));
+        requestBody.put("max_tokens", 500);
+        requestBody.put("temperature", 0.7);
+        requestBody.put("stream", stream);
+        return requestBody;
+    }
+    
+    private String emitFallback(String prompt, Consumer<String> onDelta) {
+        String fallback = generateFallbackResponse(prompt);
+        onDelta.accept(fallback);
+        return fallback;
+    }
+    
+    /**
+     * Nhận từng dòng của response SSE (push từ HttpClient), gom nội dung và đẩy delta ra ngoài
+     */
+    private final class SseDeltaSubscriber implements Flow.Subscriber<String> {
+        private final Consumer<String> onDelta;
+        private final StringBuilder text = new StringBuilder();
+        private volatile boolean emitted;
+        private volatile boolean closed;
+        
+        SseDeltaSubscriber(Consumer<String> onDelta) {
+            this.onDelta = onDelta;
+        }
+        
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+        
+        @Override
+        public void onNext(String line) {
+            if (closed) {
+                return;
+            }
+            String delta = parseSseDelta(line);
+            if (delta == null || delta.isEmpty()) {
+                return;
+            }
+            synchronized (text) {
+                text.append(delta);
+            }
+            emitted = true;
+            try {
+                onDelta.accept(delta);
+            } catch (Exception e) {
+                logger.warn("Error forwarding LLM delta: " + e.getMessage());
+            }
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            // Lỗi được xử lý ở CompletableFuture
+        }
+        
+        @Override
+        public void onComplete() {
+        }
+        
+        String text() {
+            synchronized (text) {
+                return text.toString();
+            }
+        }
+        
+        boolean hasEmitted() {
+            return emitted;
+        }
+        
+        // Ngừng chuyển delta ra ngoài (stream bị cắt / đã trả fallback)
+        void close() {
+            closed = true;
         }
     }
     
@@ -118,6 +397,13 @@ public class LLMClient {
         return "I'm here to help with your restaurant questions! I can assist with menu information, delivery details, pricing, and general inquiries. If you have a specific question, please let me know.";
     }
     
+    /**
+     * Câu trả lời có phải là fallback theo từ khóa (không đến từ LLM) hay không
+     */
+    public boolean isFallbackResponse(String prompt, String response) {
+        return response != null && response.equals(generateFallbackResponse(prompt));
+    }
+    
     public boolean isConfigured() {
         return baseUrl != null && !baseUrl.trim().isEmpty() && 
                apiKey != null && !apiKey.trim().isEmpty();
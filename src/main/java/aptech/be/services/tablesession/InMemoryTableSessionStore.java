@@ -0,0 +1,142 @@
+package aptech.be.services.tablesession;
+
+import aptech.be.services.TableSessionService.PaymentRequest;
+import aptech.be.services.TableSessionService.StaffCall;
+import aptech.be.services.TableSessionService.TableSession;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Lưu trong bộ nhớ của node (mất khi restart). Mục hết hạn bị bỏ qua khi đọc và dọn khi liệt kê, không cần job quét.
+ */
+@Service
+@ConditionalOnProperty(name = "app.table-session.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryTableSessionStore implements TableSessionStore {
+
+    private final Map<Long, Expiring<TableSession>> sessions = new ConcurrentHashMap<>();
+    private final Map<Long, Expiring<StaffCall>> staffCalls = new ConcurrentHashMap<>();
+    private final Map<Long, Expiring<PaymentRequest>> paymentRequests = new ConcurrentHashMap<>();
+
+    @Override
+    public void putSession(TableSession session, Duration ttl) {
+        sessions.put(session.getTableId(), new Expiring<>(session, ttl));
+    }
+
+    @Override
+    public TableSession getSession(Long tableId) {
+        return get(sessions, tableId);
+    }
+
+    @Override
+    public void putStaffCall(StaffCall call, Duration ttl) {
+        staffCalls.put(call.getTableId(), new Expiring<>(call, ttl));
+    }
+
+    @Override
+    public StaffCall getStaffCall(Long tableId) {
+        return get(staffCalls, tableId);
+    }
+
+    @Override
+    public Map<Long, StaffCall> getAllStaffCalls() {
+        return getAll(staffCalls);
+    }
+
+    @Override
+    public boolean removeStaffCall(Long tableId) {
+        return remove(staffCalls, tableId);
+    }
+
+    @Override
+    public boolean removeStaffCallIfUnchanged(Long tableId, LocalDateTime callTime) {
+        return removeIf(staffCalls, tableId, call -> call.getCallTime().equals(callTime));
+    }
+
+    @Override
+    public void putPaymentRequest(PaymentRequest request, Duration ttl) {
+        paymentRequests.put(request.getTableId(), new Expiring<>(request, ttl));
+    }
+
+    @Override
+    public PaymentRequest getPaymentRequest(Long tableId) {
+        return get(paymentRequests, tableId);
+    }
+
+    @Override
+    public Map<Long, PaymentRequest> getAllPaymentRequests() {
+        return getAll(paymentRequests);
+    }
+
+    @Override
+    public boolean removePaymentRequest(Long tableId) {
+        return remove(paymentRequests, tableId);
+    }
+
+    @Override
+    public boolean removePaymentRequestIfUnchanged(Long tableId, LocalDateTime requestTime) {
+        return removeIf(paymentRequests, tableId, request -> request.getRequestTime().equals(requestTime));
+    }
+
+    @Override
+    public void removeTable(Long tableId) {
+        sessions.remove(tableId);
+        staffCalls.remove(tableId);
+        paymentRequests.remove(tableId);
+    }
+
+    private <T> T get(Map<Long, Expiring<T>> map, Long tableId) {
+        Expiring<T> entry = map.get(tableId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            map.remove(tableId, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private <T> Map<Long, T> getAll(Map<Long, Expiring<T>> map) {
+        long now = System.currentTimeMillis();
+        Map<Long, T> result = new HashMap<>();
+        map.forEach((tableId, entry) -> {
+            if (entry.isExpired(now)) {
+                map.remove(tableId, entry);
+            } else {
+                result.put(tableId, entry.value);
+            }
+        });
+        return result;
+    }
+
+    private <T> boolean remove(Map<Long, Expiring<T>> map, Long tableId) {
+        Expiring<T> removed = map.remove(tableId);
+        return removed != null && !removed.isExpired(System.currentTimeMillis());
+    }
+
+    private <T> boolean removeIf(Map<Long, Expiring<T>> map, Long tableId, Predicate<T> matches) {
+        Expiring<T> entry = map.get(tableId);
+        return entry != null && matches.test(entry.value) && map.remove(tableId, entry);
+    }
+
+    private static final class Expiring<T> {
+        private final T value;
+        private final long expiresAt;
+
+        Expiring(T value, Duration ttl) {
+            this.value = value;
+            this.expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package aptech.be.services.tablesession;
+
+import aptech.be.services.TableSessionService.PaymentRequest;
+import aptech.be.services.TableSessionService.StaffCall;
+import aptech.be.services.TableSessionService.TableSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Lưu trên Redis, dùng chung giữa các node:
+ * - mỗi mục là 1 hash {prefix}{loại}:{tableId} có TTL (PEXPIRE) → Redis tự xóa khi hết hạn
+ * - set {prefix}{loại}s chứa tableId đang có mục để liệt kê; id mà hash đã hết hạn được dọn khi đọc
+ * - ghi / xóa bằng Lua script nên hash, TTL và set luôn thay đổi cùng nhau
+ */
+@Service
+@ConditionalOnProperty(name = "app.table-session.store", havingValue = "redis")
+public class RedisTableSessionStore implements TableSessionStore {
+
+    private static final String SESSION = "session";
+    private static final String STAFF_CALL = "staff-call";
+    private static final String PAYMENT_REQUEST = "payment-request";
+
+    // KEYS[1] = hash, KEYS[2] = set index; ARGV[1] = ttl ms, ARGV[2] = tableId, ARGV[3..] = field, value...
+    private static final DefaultRedisScript<Long> PUT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('HSET', KEYS[1], unpack(ARGV, 3)) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[1]) " +
+            "redis.call('SADD', KEYS[2], ARGV[2]) " +
+            "return 1", Long.class);
+
+    // KEYS[1] = hash, KEYS[2] = set index; ARGV[1] = tableId; trả về 1 nếu lệnh này đã xóa hash
+    private static final DefaultRedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>(
+            "local removed = redis.call('DEL', KEYS[1]) " +
+            "redis.call('SREM', KEYS[2], ARGV[1]) " +
+            "return removed", Long.class);
+
+    // Như REMOVE_SCRIPT nhưng chỉ khi field ARGV[2] của hash vẫn bằng ARGV[3]
+    private static final DefaultRedisScript<Long> REMOVE_IF_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], ARGV[2]) ~= ARGV[3] then return 0 end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('SREM', KEYS[2], ARGV[1]) " +
+            "return 1", Long.class);
+
+    // Bỏ id khỏi set nếu hash đã hết TTL (kiểm tra và xóa cùng lúc, không đụng mục vừa được tạo lại)
+    private static final DefaultRedisScript<Long> PRUNE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return redis.call('SREM', KEYS[2], ARGV[1]) end " +
+            "return 0", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String prefix;
+
+    public RedisTableSessionStore(StringRedisTemplate redisTemplate,
+                                  @Value("${app.table-session.redis-prefix:dinein:}") String prefix) {
+        this.redisTemplate = redisTemplate;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public void putSession(TableSession session, Duration ttl) {
+        put(SESSION, session.getTableId(), ttl, Map.of(
+                "sessionId", session.getSessionId(),
+                "startTime", session.getStartTime().toString()));
+    }
+
+    @Override
+    public TableSession getSession(Long tableId) {
+        return read(SESSION, tableId, h -> new TableSession(h.get("sessionId"), tableId, LocalDateTime.parse(h.get("startTime"))));
+    }
+
+    @Override
+    public void putStaffCall(StaffCall call, Duration ttl) {
+        put(STAFF_CALL, call.getTableId(), ttl, Map.of(
+                "reason", call.getReason() != null ? call.getReason() : "",
+                "callTime", call.getCallTime().toString()));
+    }
+
+    @Override
+    public StaffCall getStaffCall(Long tableId) {
+        return read(STAFF_CALL, tableId, staffCallMapper(tableId));
+    }
+
+    @Override
+    public Map<Long, StaffCall> getAllStaffCalls() {
+        return readAll(STAFF_CALL, this::staffCallMapper);
+    }
+
+    @Override
+    public boolean removeStaffCall(Long tableId) {
+        return remove(STAFF_CALL, tableId);
+    }
+
+    @Override
+    public boolean removeStaffCallIfUnchanged(Long tableId, LocalDateTime callTime) {
+        return removeIf(STAFF_CALL, tableId, "callTime", callTime.toString());
+    }
+
+    @Override
+    public void putPaymentRequest(PaymentRequest request, Duration ttl) {
+        put(PAYMENT_REQUEST, request.getTableId(), ttl, Map.of(
+                "requestTime", request.getRequestTime().toString()));
+    }
+
+    @Override
+    public PaymentRequest getPaymentRequest(Long tableId) {
+        return read(PAYMENT_REQUEST, tableId, paymentRequestMapper(tableId));
+    }
+
+    @Override
+    public Map<Long, PaymentRequest> getAllPaymentRequests() {
+        return readAll(PAYMENT_REQUEST, this::paymentRequestMapper);
+    }
+
+    @Override
+    public boolean removePaymentRequest(Long tableId) {
+        return remove(PAYMENT_REQUEST, tableId);
+    }
+
+    @Override
+    public boolean removePaymentRequestIfUnchanged(Long tableId, LocalDateTime requestTime) {
+        return removeIf(PAYMENT_REQUEST, tableId, "requestTime", requestTime.toString());
+    }
+
+    @Override
+    public void removeTable(Long tableId) {
+        remove(SESSION, tableId);
+        remove(STAFF_CALL, tableId);
+        remove(PAYMENT_REQUEST, tableId);
+    }
+
+    private Function<Map<String, String>, StaffCall> staffCallMapper(Long tableId) {
+        return h -> new StaffCall(tableId, h.get("reason"), LocalDateTime.parse(h.get("callTime")));
+    }
+
+    private Function<Map<String, String>, PaymentRequest> paymentRequestMapper(Long tableId) {
+        return h -> new PaymentRequest(tableId, LocalDateTime.parse(h.get("requestTime")));
+    }
+
+    private void put(String type, Long tableId, Duration ttl, Map<String, String> fields) {
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(Math.max(1, ttl.toMillis())));
+        args.add(tableId.toString());
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        redisTemplate.execute(PUT_SCRIPT, List.of(itemKey(type, tableId), indexKey(type)), args.toArray());
+    }
+
+    private boolean remove(String type, Long tableId) {
+        Long removed = redisTemplate.execute(REMOVE_SCRIPT, List.of(itemKey(type, tableId), indexKey(type)), tableId.toString());
+        return removed != null && removed > 0;
+    }
+
+    private boolean removeIf(String type, Long tableId, String field, String expected) {
+        Long removed = redisTemplate.execute(REMOVE_IF_SCRIPT, List.of(itemKey(type, tableId), indexKey(type)),
+                tableId.toString(), field, expected);
+        return removed != null && removed > 0;
+    }
+
+    private <T> T read(String type, Long tableId, Function<Map<String, String>, T> mapper) {
+        Map<String, String> hash = entries(itemKey(type, tableId));
+        return hash.isEmpty() ? null : mapper.apply(hash);
+    }
+
+    private <T> Map<Long, T> readAll(String type, Function<Long, Function<Map<String, String>, T>> mapperFor) {
+        Set<String> tableIds = redisTemplate.opsForSet().members(indexKey(type));
+        Map<Long, T> result = new HashMap<>();
+        if (tableIds == null) {
+            return result;
+        }
+        for (String id : tableIds) {
+            Long tableId = Long.valueOf(id);
+            Map<String, String> hash = entries(itemKey(type, tableId));
+            if (hash.isEmpty()) {
+                // Hash đã hết TTL: bỏ id khỏi set
+                redisTemplate.execute(PRUNE_SCRIPT, List.of(itemKey(type, tableId), indexKey(type)), id);
+            } else {
+                result.put(tableId, mapperFor.apply(tableId).apply(hash));
+            }
+        }
+        return result;
+    }
+
+    private Map<String, String> entries(String key) {
+        Map<String, String> hash = redisTemplate.<String, String>opsForHash().entries(key);
+        return hash != null ? hash : Map.of();
+    }
+
+    private String itemKey(String type, Long tableId) {
+        return prefix + type + ":" + tableId;
+    }
+
+    private String indexKey(String type) {
+        return prefix + type + "s";
+    }
+}
@@ -0,0 +1,49 @@
+package aptech.be.services.tablesession;
+
+import aptech.be.services.TableSessionService.PaymentRequest;
+import aptech.be.services.TableSessionService.StaffCall;
+import aptech.be.services.TableSessionService.TableSession;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Nơi lưu trạng thái phiên bàn dine-in (phiên, gọi nhân viên, yêu cầu thanh toán).
+ * app.table-session.store: memory (mặc định, 1 node) | redis (dùng chung giữa các node, còn sau khi restart).
+ * Mỗi mục có TTL, hết hạn thì tự biến mất; remove* là nguyên tử: nhiều người cùng xử lý 1 yêu cầu thì chỉ 1 người nhận true.
+ */
+public interface TableSessionStore {
+
+    void putSession(TableSession session, Duration ttl);
+
+    TableSession getSession(Long tableId);
+
+    void putStaffCall(StaffCall call, Duration ttl);
+
+    StaffCall getStaffCall(Long tableId);
+
+    Map<Long, StaffCall> getAllStaffCalls();
+
+    boolean removeStaffCall(Long tableId);
+
+    /**
+     * Chỉ xóa nếu gọi nhân viên đang lưu vẫn là lần gọi lúc callTime (không đụng lần gọi mới hơn của cùng bàn)
+     */
+    boolean removeStaffCallIfUnchanged(Long tableId, LocalDateTime callTime);
+
+    void putPaymentRequest(PaymentRequest request, Duration ttl);
+
+    PaymentRequest getPaymentRequest(Long tableId);
+
+    Map<Long, PaymentRequest> getAllPaymentRequests();
+
+    boolean removePaymentRequest(Long tableId);
+
+    boolean removePaymentRequestIfUnchanged(Long tableId, LocalDateTime requestTime);
+
+    /**
+     * Xóa phiên và mọi yêu cầu đang chờ của bàn
+     */
+    void removeTable(Long tableId);
+}
@@ -0,0 +1,3 @@
+-- Sweeper phiên chat idle: đánh dấu đã cảnh báo thay vì quét lịch sử tin nhắn
+ALTER TABLE chat_sessions ADD COLUMN IF NOT EXISTS warned_at TIMESTAMP;
+CREATE INDEX idx_chat_sessions_status_last_activity ON chat_sessions (status, last_activity_at);
@@ -0,0 +1,2 @@
+-- Outbox email: nhận email bằng UPDATE có điều kiện (state SENDING + locked_at) để nhiều node không gửi trùng
+ALTER TABLE email_outbox ADD COLUMN locked_at TIMESTAMP;
@@ -0,0 +1,9 @@
+-- Snapshot điểm: đánh dấu từng dòng ledger đã cộng vào point_balance_snapshot thay cho mốc last_ledger_id
+-- (id không tăng theo thứ tự commit nên dòng commit muộn có id nhỏ hơn mốc bị bỏ sót)
+ALTER TABLE point_ledger ADD COLUMN snapshotted BOOLEAN NOT NULL DEFAULT FALSE;
+
+-- Các dòng đã nằm dưới mốc của lần snapshot trước coi như đã được cộng
+UPDATE point_ledger l SET snapshotted = TRUE
+WHERE l.id <= (SELECT COALESCE(MAX(s.last_ledger_id), 0) FROM point_balance_snapshot s);
+
+CREATE INDEX idx_point_ledger_customer_snapshotted ON point_ledger (customer_id, snapshotted);
@@ -0,0 +1,3 @@
+-- Lưu orderCode PayOS trên đơn hàng để webhook/return tra cứu bằng unique index
+ALTER TABLE orders ADD COLUMN payment_order_code BIGINT;
+CREATE UNIQUE INDEX idx_orders_payment_order_code ON orders (payment_order_code);
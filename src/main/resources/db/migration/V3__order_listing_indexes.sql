@@ -0,0 +1,4 @@
+-- Index cho danh sách đơn hàng phân trang theo cursor (createdAt,id)
+CREATE INDEX idx_orders_created_at_id ON orders (created_at, id);
+CREATE INDEX idx_orders_status_created_at ON orders (status, created_at);
+CREATE INDEX idx_orders_customer_created_at ON orders (customer_id, created_at);
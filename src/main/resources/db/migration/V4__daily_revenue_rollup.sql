@@ -0,0 +1,25 @@
+-- Doanh thu cộng dồn theo ngày/orderType/paymentMethod cho dashboard admin
+CREATE TABLE daily_revenue_rollup (
+    revenue_date DATE NOT NULL,
+    order_type VARCHAR(50) NOT NULL,
+    payment_method VARCHAR(50) NOT NULL,
+    revenue DOUBLE PRECISION NOT NULL,
+    order_count BIGINT NOT NULL,
+    updated_at TIMESTAMP NULL,
+    PRIMARY KEY (revenue_date, order_type, payment_method)
+);
+
+-- Đánh dấu đơn đã được cộng vào rollup (mỗi đơn chỉ cộng 1 lần)
+ALTER TABLE orders ADD COLUMN revenue_recorded_at TIMESTAMP NULL;
+
+-- Backfill từ lịch sử đơn hàng (cùng điều kiện doanh thu với dashboard)
+UPDATE orders SET revenue_recorded_at = CURRENT_TIMESTAMP
+WHERE delivery_status = 'DELIVERED' OR status IN ('PAID', 'COMPLETED');
+
+INSERT INTO daily_revenue_rollup (revenue_date, order_type, payment_method, revenue, order_count, updated_at)
+SELECT CAST(created_at AS DATE), COALESCE(order_type, 'UNKNOWN'), COALESCE(payment_method, 'UNKNOWN'),
+       COALESCE(SUM(total_price), 0), COUNT(*), CURRENT_TIMESTAMP
+FROM orders
+WHERE revenue_recorded_at IS NOT NULL AND created_at IS NOT NULL
+  AND (status IS NULL OR status NOT IN ('CANCELLED', 'REJECTED'))
+GROUP BY CAST(created_at AS DATE), COALESCE(order_type, 'UNKNOWN'), COALESCE(payment_method, 'UNKNOWN');
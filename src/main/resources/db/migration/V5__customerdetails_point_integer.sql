@@ -0,0 +1,8 @@
+-- customerdetails.point: VARCHAR -> INTEGER (PostgreSQL). Giá trị rỗng / không phải số được đưa về 0
+UPDATE customerdetails SET point = '0' WHERE point IS NULL OR TRIM(point) !~ '^-?[0-9]+$';
+ALTER TABLE customerdetails ALTER COLUMN point TYPE INTEGER USING TRIM(point)::integer;
+ALTER TABLE customerdetails ALTER COLUMN point SET DEFAULT 0;
+ALTER TABLE customerdetails ALTER COLUMN point SET NOT NULL;
+
+-- Đếm VIP / trung bình điểm / bảng xếp hạng chạy trên index
+CREATE INDEX idx_customerdetails_point ON customerdetails (point);
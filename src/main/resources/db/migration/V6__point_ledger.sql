@@ -0,0 +1,26 @@
+-- Sổ cái điểm (append-only) với idempotency key cho mỗi lần cộng/trừ điểm
+CREATE TABLE point_ledger (
+    id BIGSERIAL PRIMARY KEY,
+    customer_id BIGINT NOT NULL,
+    delta INTEGER NOT NULL,
+    reason VARCHAR(50) NOT NULL,
+    idempotency_key VARCHAR(100) NOT NULL,
+    created_at TIMESTAMP NOT NULL
+);
+CREATE UNIQUE INDEX idx_point_ledger_idempotency_key ON point_ledger (idempotency_key);
+CREATE INDEX idx_point_ledger_customer_id ON point_ledger (customer_id, id);
+
+-- Số dư đã cộng dồn từ ledger tới last_ledger_id
+CREATE TABLE point_balance_snapshot (
+    customer_id BIGINT PRIMARY KEY,
+    balance BIGINT NOT NULL,
+    last_ledger_id BIGINT NOT NULL,
+    snapshot_at TIMESTAMP NOT NULL
+);
+
+-- Số dư mở đầu cho điểm có từ trước khi có sổ cái
+INSERT INTO point_ledger (customer_id, delta, reason, idempotency_key, created_at)
+SELECT customer_id, MAX(point), 'OPENING', 'OPENING:' || customer_id, CURRENT_TIMESTAMP
+FROM customerdetails
+WHERE customer_id IS NOT NULL AND point <> 0
+GROUP BY customer_id;
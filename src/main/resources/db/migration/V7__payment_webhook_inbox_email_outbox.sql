@@ -0,0 +1,36 @@
+-- Inbox webhook thanh toán (PayOS): ghi nhận ngay, worker xử lý sau
+CREATE TABLE payment_webhook_inbox (
+    id BIGSERIAL PRIMARY KEY,
+    delivery_key VARCHAR(150) NOT NULL,
+    provider VARCHAR(30) NOT NULL,
+    order_code VARCHAR(50),
+    payment_status VARCHAR(30),
+    payload TEXT,
+    state VARCHAR(20) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error VARCHAR(1000),
+    received_at TIMESTAMP NOT NULL,
+    next_attempt_at TIMESTAMP NOT NULL,
+    locked_at TIMESTAMP,
+    processed_at TIMESTAMP
+);
+CREATE UNIQUE INDEX idx_payment_webhook_inbox_delivery_key ON payment_webhook_inbox (delivery_key);
+CREATE INDEX idx_payment_webhook_inbox_state ON payment_webhook_inbox (state, next_attempt_at);
+
+-- Outbox email gửi nền
+CREATE TABLE email_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    dedup_key VARCHAR(150) NOT NULL,
+    type VARCHAR(50) NOT NULL,
+    order_id BIGINT,
+    recipient VARCHAR(255) NOT NULL,
+    points_earned INTEGER,
+    state VARCHAR(20) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error VARCHAR(1000),
+    created_at TIMESTAMP NOT NULL,
+    next_attempt_at TIMESTAMP NOT NULL,
+    sent_at TIMESTAMP
+);
+CREATE UNIQUE INDEX idx_email_outbox_dedup_key ON email_outbox (dedup_key);
+CREATE INDEX idx_email_outbox_state ON email_outbox (state, next_attempt_at);
@@ -0,0 +1,23 @@
+-- Job phát voucher hàng loạt (chạy nền, tiếp tục từ last_customer_id)
+CREATE TABLE voucher_distribution_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    voucher_id BIGINT NOT NULL,
+    mode VARCHAR(20) NOT NULL,
+    customer_ids TEXT,
+    state VARCHAR(20) NOT NULL,
+    last_customer_id BIGINT NOT NULL DEFAULT 0,
+    total_candidates BIGINT NOT NULL DEFAULT 0,
+    processed_count BIGINT NOT NULL DEFAULT 0,
+    inserted_count BIGINT NOT NULL DEFAULT 0,
+    last_error VARCHAR(1000),
+    created_by VARCHAR(255),
+    created_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP
+);
+CREATE INDEX idx_voucher_distribution_jobs_voucher ON voucher_distribution_jobs (voucher_id);
+CREATE INDEX idx_voucher_distribution_jobs_state ON voucher_distribution_jobs (state);
+
+-- Phục vụ query lọc điều kiện nhận voucher (đã có voucher / đếm voucher còn hạn)
+CREATE INDEX idx_customer_vouchers_customer_voucher ON customer_vouchers (customer_id, voucher_id);
+CREATE INDEX idx_customer_vouchers_customer_valid ON customer_vouchers (customer_id, is_used, expires_at);
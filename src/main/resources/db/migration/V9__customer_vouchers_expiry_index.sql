@@ -0,0 +1,2 @@
+-- Dọn voucher hết hạn theo lô: WHERE is_used = false AND expires_at < now
+CREATE INDEX idx_customer_vouchers_expiry ON customer_vouchers (is_used, expires_at);
@@ -0,0 +1,132 @@
+package aptech.be.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 2 "node" dùng chung Redis local (REDIS_HOST/REDIS_PORT, mặc định localhost:6379); bỏ qua nếu không có Redis
+ */
+class RedisBrokerBridgeTest {
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisMessageListenerContainer containerA;
+    private RedisMessageListenerContainer containerB;
+    private RedisBrokerBridge nodeA;
+    private RedisBrokerBridge nodeB;
+    private final BlockingQueue<Message<?>> deliveredToA = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Message<?>> deliveredToB = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String host = System.getenv().getOrDefault("REDIS_HOST", "localhost");
+        int port = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"));
+        connectionFactory = new LettuceConnectionFactory(host, port);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        boolean reachable;
+        try (var connection = connectionFactory.getConnection()) {
+            reachable = "PONG".equals(connection.ping());
+        } catch (Exception e) {
+            reachable = false;
+        }
+        assumeTrue(reachable, "Redis is not available at " + host + ":" + port);
+
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        String channel = "ws:test:" + UUID.randomUUID();
+        nodeA = new RedisBrokerBridge(redisTemplate, new ObjectMapper(), channel);
+        nodeB = new RedisBrokerBridge(redisTemplate, new ObjectMapper(), channel);
+        nodeA.setLocalBrokerChannel(capture(deliveredToA));
+        nodeB.setLocalBrokerChannel(capture(deliveredToB));
+        containerA = listen(nodeA);
+        containerB = listen(nodeB);
+        // Chờ subscription sẵn sàng trước khi publish
+        Thread.sleep(300);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (containerA != null) containerA.destroy();
+        if (containerB != null) containerB.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void messageSentOnOneNodeReachesTheOtherNode() throws Exception {
+        byte[] payload = "{\"type\":\"delta\",\"delta\":\"Xin chào\"}".getBytes(StandardCharsets.UTF_8);
+
+        Message<?> original = message("/topic/chat/abc", payload);
+        Message<?> passedThrough = nodeA.preSend(original, null);
+
+        Message<?> relayed = deliveredToB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(relayed);
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(relayed);
+        assertEquals("/topic/chat/abc", accessor.getDestination());
+        assertEquals(MimeTypeUtils.APPLICATION_JSON, accessor.getContentType());
+        assertArrayEquals(payload, (byte[]) relayed.getPayload());
+        // Node gửi vẫn tự giao cho subscriber của mình, không nhận lại bản của chính nó
+        assertEquals(original, passedThrough);
+        assertNull(deliveredToA.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void relayedMessageIsNotPublishedAgain() throws Exception {
+        nodeA.preSend(message("/topic/staff/orders", "{}".getBytes(StandardCharsets.UTF_8)), null);
+        Message<?> relayed = deliveredToB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(relayed);
+
+        nodeB.preSend(relayed, null);
+
+        assertNull(deliveredToA.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void applicationPrefixedMessagesStayLocal() throws Exception {
+        nodeA.preSend(message("/app/chat.send", "{}".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertNull(deliveredToB.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    private Message<byte[]> message(String destination, byte[] payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private MessageChannel capture(BlockingQueue<Message<?>> queue) {
+        return (message, timeout) -> queue.offer(message);
+    }
+
+    private RedisMessageListenerContainer listen(RedisBrokerBridge bridge) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(bridge, new ChannelTopic(bridge.getChannel()));
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+}
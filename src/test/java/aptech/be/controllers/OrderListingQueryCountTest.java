@@ -0,0 +1,239 @@
+package aptech.be.controllers;
+
+import aptech.be.models.Customer;
+import aptech.be.models.CustomerDetail;
+import aptech.be.models.Food;
+import aptech.be.models.OrderEntity;
+import aptech.be.models.OrderFood;
+import aptech.be.models.OrderStatusHistory;
+import aptech.be.repositories.CustomerDetailRepository;
+import aptech.be.repositories.CustomerRepository;
+import aptech.be.repositories.FoodRepository;
+import aptech.be.repositories.OrderRepository;
+import aptech.be.repositories.OrderStatusHistoryRepository;
+import aptech.be.services.AddressValidationService;
+import aptech.be.services.CustomerPointService;
+import aptech.be.services.EmailOutboxService;
+import aptech.be.services.OrderPricingService;
+import aptech.be.services.OrderService;
+import aptech.be.services.PayOSService;
+import aptech.be.services.PaymentWebhookService;
+import aptech.be.services.VipLeaderboardService;
+import aptech.be.services.VoucherService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Số câu lệnh SQL của các API danh sách đơn hàng không tăng theo số đơn:
+ * entity graph OrderEntity.details + lịch sử trạng thái nạp bằng IN (...) + batch fetch cho collection còn lại.
+ * Đếm bằng Hibernate Statistics#getPrepareStatementCount với 5 rồi 50 đơn (cả 2 đều dưới default_batch_fetch_size=100).
+ */
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureJson
+class OrderListingQueryCountTest {
+
+    private static final int CUSTOMERS = 5;
+
+    // Chỉ nạp JPA + controller cần đo; service không chạm DB trên các API danh sách được mock
+    @SpringBootConfiguration
+    @EntityScan("aptech.be.models")
+    @EnableJpaRepositories("aptech.be.repositories")
+    @Import({OrderController.class, AdminOrderController.class})
+    static class TestConfig {
+    }
+
+    @MockitoBean
+    private PayOSService payOSService;
+    @MockitoBean
+    private AddressValidationService addressValidationService;
+    @MockitoBean
+    private CustomerPointService customerPointService;
+    @MockitoBean
+    private VoucherService voucherService;
+    @MockitoBean
+    private OrderService orderService;
+    @MockitoBean
+    private OrderPricingService orderPricingService;
+    @MockitoBean
+    private PaymentWebhookService paymentWebhookService;
+    @MockitoBean
+    private EmailOutboxService emailOutboxService;
+    // CustomerPointListener (entity listener của CustomerDetail) báo điểm mới sau commit
+    @MockitoBean
+    private VipLeaderboardService vipLeaderboardService;
+
+    @Autowired
+    private OrderController orderController;
+
+    @Autowired
+    private AdminOrderController adminOrderController;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderStatusHistoryRepository orderStatusHistoryRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private CustomerDetailRepository customerDetailRepository;
+
+    @Autowired
+    private FoodRepository foodRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final List<Customer> customers = new ArrayList<>();
+    private final List<Food> foods = new ArrayList<>();
+    private int seeded;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Customer customer = new Customer();
+            customer.setFullName("Customer " + i);
+            customer.setEmail("listing" + i + "@test.local");
+            customer = customerRepository.save(customer);
+
+            CustomerDetail detail = new CustomerDetail();
+            detail.setPhoneNumber("090000000" + i);
+            detail.setCustomer(customer);
+            customerDetailRepository.save(detail);
+            customers.add(customer);
+        }
+        for (int i = 0; i < 3; i++) {
+            Food food = new Food();
+            food.setName("Food " + i);
+            food.setPrice(10 + i);
+            food.setStatus("AVAILABLE");
+            foods.add(foodRepository.save(food));
+        }
+    }
+
+    @Test
+    void listingStatementCountDoesNotGrowWithOrderCount() throws Exception {
+        seedOrders(5);
+        Map<String, Long> small = measureListings(5);
+
+        seedOrders(45);
+        Map<String, Long> large = measureListings(50);
+
+        for (String path : small.keySet()) {
+            assertEquals(small.get(path), large.get(path), path);
+        }
+    }
+
+    private Map<String, Long> measureListings(int expectedOrders) throws Exception {
+        Customer customer = customers.get(0);
+        UsernamePasswordAuthenticationToken authentication =
+                new UsernamePasswordAuthenticationToken(customer.getEmail(), "n/a");
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("GET /api/orders", statementsFor(() -> {
+            assertEquals(expectedOrders, orderController.getAllOrders().size());
+            return null;
+        }));
+        counts.put("GET /api/orders/myorder", statementsFor(() -> orderController.getMyOrders(authentication)));
+        counts.put("GET /api/orders/filter", statementsFor(() -> orderController.filterOrders(null, null)));
+        counts.put("GET /api/orders/filter?status", statementsFor(() -> orderController.filterOrders("PENDING", null)));
+        counts.put("GET /api/orders/filter?customerId",
+                statementsFor(() -> orderController.filterOrders(null, customer.getId())));
+        // API admin trả entity: đếm cả phần serialize JSON (collection lazy được nạp lúc này)
+        counts.put("GET /api/admin/orders/dine-in",
+                statementsFor(() -> toJson(adminOrderController.getDineInOrders().getBody())));
+        counts.put("GET /api/admin/orders/take-away",
+                statementsFor(() -> toJson(adminOrderController.getTakeAwayOrders().getBody())));
+        counts.put("GET /api/admin/orders/status/{status}",
+                statementsFor(() -> toJson(adminOrderController.getOrdersByStatus("PENDING").getBody())));
+        return counts;
+    }
+
+    private long statementsFor(Supplier<?> listing) {
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        listing.get();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private String toJson(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Đơn phân bổ đều cho các khách, xen kẽ DINE_IN / TAKE_AWAY, mỗi đơn 2 món và 2 dòng lịch sử trạng thái
+    private void seedOrders(int count) {
+        for (int i = 0; i < count; i++, seeded++) {
+            OrderEntity order = new OrderEntity();
+            order.setOrderNumber("L" + seeded);
+            order.setCustomer(customers.get(seeded % CUSTOMERS));
+            order.setOrderType(seeded % 2 == 0 ? "DINE_IN" : "TAKE_AWAY");
+            order.setStatus("PENDING");
+            order.setCreatedAt(LocalDateTime.now().minusMinutes(seeded));
+
+            List<OrderFood> orderFoods = new ArrayList<>();
+            for (int f = 0; f < 2; f++) {
+                OrderFood orderFood = new OrderFood();
+                orderFood.setOrder(order);
+                orderFood.setFood(foods.get((seeded + f) % foods.size()));
+                orderFood.setQuantity(1 + f);
+                orderFoods.add(orderFood);
+            }
+            order.setOrderFoods(orderFoods);
+            order.setTotalPrice(orderFoods.stream().mapToDouble(of -> of.getFood().getPrice() * of.getQuantity()).sum());
+            order = orderRepository.save(order);
+
+            addHistory(order, "PENDING");
+            addHistory(order, "CONFIRMED");
+        }
+    }
+
+    private void addHistory(OrderEntity order, String status) {
+        OrderStatusHistory history = new OrderStatusHistory();
+        history.setOrder(order);
+        history.setStatus(status);
+        history.setChangedAt(LocalDateTime.now());
+        history.setChangedBy("test");
+        orderStatusHistoryRepository.save(history);
+    }
+}
@@ -0,0 +1,110 @@
+package aptech.be.repositories;
+
+import aptech.be.models.OrderEntity;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Webhook / return URL PayOS tra đơn theo payment_order_code: 1 câu lệnh trên unique index,
+ * không phụ thuộc số đơn đang chờ thanh toán.
+ */
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class OrderPaymentCodeLookupTest {
+
+    // Cùng dạng orderCode của PayOSService: (ms << 10) | nodeId
+    private static final long CODE_BASE = 1_700_000_000_000L << 10;
+
+    @SpringBootConfiguration
+    @EntityScan("aptech.be.models")
+    @EnableJpaRepositories("aptech.be.repositories")
+    static class TestConfig {
+    }
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private int seeded;
+
+    @Test
+    void lookupIsOneStatementWhateverThePendingCount() {
+        seedPendingOrders(10);
+        long small = statementsForLookup(CODE_BASE + 7);
+
+        seedPendingOrders(990);
+        long large = statementsForLookup(CODE_BASE + 777);
+
+        assertEquals(1, small);
+        assertEquals(1, large);
+    }
+
+    @Test
+    void lookupUsesUniquePaymentOrderCodeIndex() {
+        seedPendingOrders(50);
+        String plan = String.valueOf(entityManager.getEntityManager()
+                .createNativeQuery("EXPLAIN SELECT * FROM \"orders\" WHERE \"payment_order_code\" = " + (CODE_BASE + 3))
+                .getSingleResult());
+        assertTrue(plan.toLowerCase().contains("idx_orders_payment_order_code"), plan);
+    }
+
+    @Test
+    void duplicatePaymentOrderCodeIsRejected() {
+        seedPendingOrders(1);
+        OrderEntity duplicate = pendingOrder(CODE_BASE);
+        assertThrows(DataIntegrityViolationException.class, () -> orderRepository.saveAndFlush(duplicate));
+    }
+
+    private long statementsForLookup(long paymentOrderCode) {
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        Optional<OrderEntity> order = orderRepository.findByPaymentOrderCode(paymentOrderCode);
+        assertTrue(order.isPresent());
+        assertEquals(paymentOrderCode, order.get().getPaymentOrderCode());
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void seedPendingOrders(int count) {
+        for (int i = 0; i < count; i++, seeded++) {
+            orderRepository.save(pendingOrder(CODE_BASE + seeded));
+        }
+    }
+
+    private OrderEntity pendingOrder(long paymentOrderCode) {
+        OrderEntity order = new OrderEntity();
+        order.setOrderNumber("P" + paymentOrderCode);
+        order.setOrderType("DELIVERY");
+        order.setStatus("WAITING_PAYMENT");
+        order.setPaymentMethod("QR_BANKING");
+        order.setTotalPrice(20.0);
+        order.setCreatedAt(LocalDateTime.now());
+        order.setPaymentOrderCode(paymentOrderCode);
+        return order;
+    }
+}
@@ -0,0 +1,66 @@
+package aptech.be.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpirySchedulerTest {
+
+    private ExpiryScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new ExpiryScheduler();
+        ReflectionTestUtils.setField(scheduler, "meterRegistry", new SimpleMeterRegistry());
+        scheduler.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    void firesEachItemAtItsDeadlineInOrder() throws Exception {
+        long now = System.currentTimeMillis();
+        List<String> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+
+        scheduler.schedule("c", now + 300, () -> { fired.add("c"); done.countDown(); });
+        scheduler.schedule("a", now + 100, () -> { fired.add("a"); done.countDown(); });
+        scheduler.schedule("b", now + 200, () -> { fired.add("b"); done.countDown(); });
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("a", "b", "c"), fired);
+        // Không chạy trước deadline
+        assertTrue(System.currentTimeMillis() >= now + 300);
+        assertFalse(scheduler.isScheduled("c"));
+    }
+
+    @Test
+    void rescheduleReplacesAndCancelDropsPendingItem() throws Exception {
+        long now = System.currentTimeMillis();
+        List<String> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        scheduler.schedule("call:1", now + 100, () -> fired.add("old"));
+        scheduler.schedule("call:1", now + 250, () -> { fired.add("new"); done.countDown(); });
+        scheduler.schedule("call:2", now + 100, () -> fired.add("cancelled"));
+        scheduler.cancel("call:2");
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(List.of("new"), fired);
+    }
+}
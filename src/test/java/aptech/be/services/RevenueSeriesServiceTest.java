@@ -0,0 +1,186 @@
+package aptech.be.services;
+
+import aptech.be.dto.dashboard.RevenueDataPoint;
+import aptech.be.models.OrderEntity;
+import aptech.be.repositories.DailyRevenueRollupRepository;
+import aptech.be.repositories.OrderRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * RevenueSeriesService trên H2 với đơn hàng thật qua nhiều ngày / tuần:
+ * mỗi lần getSeries chỉ chạy 1 câu lệnh GROUP BY (đếm bằng Hibernate Statistics),
+ * tổng theo bucket đúng và tăng trưởng so với kỳ trước đã căn theo ranh giới ngày.
+ * Dữ liệu chỉ vài trăm đơn (không phải 1 triệu): số câu lệnh không phụ thuộc số đơn.
+ */
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RevenueSeriesServiceTest {
+
+    // Thứ 2; dữ liệu từ 2 tuần trước tới hết 2 tuần sau
+    private static final LocalDate BASE = LocalDate.of(2024, 3, 4);
+    private static final int DAYS_BEFORE = 14;
+    private static final int DAYS_AFTER = 14;
+
+    // Chỉ nạp JPA + service cần test (không kéo CommandLineRunner / security của BeApplication)
+    @SpringBootConfiguration
+    @EntityScan("aptech.be.models")
+    @EnableJpaRepositories("aptech.be.repositories")
+    @Import({RevenueSeriesService.class, RevenueRollupService.class})
+    static class TestConfig {
+    }
+
+    @Autowired
+    private RevenueSeriesService revenueSeriesService;
+
+    @Autowired
+    private RevenueRollupService revenueRollupService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private DailyRevenueRollupRepository dailyRevenueRollupRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAllInBatch();
+        dailyRevenueRollupRepository.deleteAllInBatch();
+        for (int d = -DAYS_BEFORE; d < DAYS_AFTER; d++) {
+            LocalDate day = BASE.plusDays(d);
+            saveOrder(day.atTime(12, 0), "DINE_IN", "PAID", dineInRevenue(day));
+            saveOrder(day.atTime(18, 30), "DELIVERY", "COMPLETED", 5.0);
+            // Không tính vào doanh thu
+            saveOrder(day.atTime(20, 0), "TAKE_AWAY", "PENDING", 1000.0);
+        }
+        // Rollup được cộng qua OrderRevenueListener sau commit; đối soát lại để không phụ thuộc thứ tự
+        revenueRollupService.reconcile(BASE.minusDays(DAYS_BEFORE), BASE.plusDays(DAYS_AFTER - 1));
+    }
+
+    @Test
+    void daySeriesUsesOneStatementAndDayAlignedPreviousWindow() {
+        // Bắt đầu giữa ngày: kỳ hiện tại vẫn là 7 ngày trọn BASE..BASE+6, kỳ trước là BASE-7..BASE-1
+        LocalDateTime start = BASE.atTime(15, 0);
+        LocalDateTime end = BASE.plusDays(6).atTime(10, 0);
+
+        RevenueSeriesService.RevenueSeries series = statementCount(1,
+                () -> revenueSeriesService.getSeries(start, end, RevenueSeriesService.Granularity.DAY));
+
+        List<RevenueDataPoint> points = series.getPoints();
+        assertEquals(7, points.size());
+        for (int i = 0; i < points.size(); i++) {
+            LocalDate day = BASE.plusDays(i);
+            RevenueDataPoint point = points.get(i);
+            assertEquals(day.atStartOfDay(), point.getBucketStart());
+            assertAmount(dayRevenue(day), point.getRevenue());
+            assertAmount(dineInRevenue(day), point.getDineInRevenue());
+            assertAmount(5.0, point.getDeliveryRevenue());
+            assertEquals(2, point.getOrderCount());
+        }
+
+        double current = sumRevenue(BASE, 7);
+        double previous = sumRevenue(BASE.minusDays(7), 7);
+        assertAmount(current, series.getCurrentTotal());
+        assertAmount(previous, series.getPreviousTotal());
+        assertEquals(0, RevenueSeriesService.growthPercent(BigDecimal.valueOf(current), BigDecimal.valueOf(previous))
+                .compareTo(series.getGrowthPercent()));
+    }
+
+    @Test
+    void weekSeriesUsesOneStatement() {
+        LocalDateTime start = BASE.atStartOfDay();
+        LocalDateTime end = BASE.plusDays(13).atTime(20, 0);
+
+        RevenueSeriesService.RevenueSeries series = statementCount(1,
+                () -> revenueSeriesService.getSeries(start, end, RevenueSeriesService.Granularity.WEEK));
+
+        List<RevenueDataPoint> points = series.getPoints();
+        assertEquals(2, points.size());
+        assertAmount(sumRevenue(BASE, 7), points.get(0).getRevenue());
+        assertAmount(sumRevenue(BASE.plusDays(7), 7), points.get(1).getRevenue());
+        assertAmount(sumRevenue(BASE, 14), series.getCurrentTotal());
+        assertAmount(sumRevenue(BASE.minusDays(14), 14), series.getPreviousTotal());
+    }
+
+    @Test
+    void hourSeriesUsesOneStatement() {
+        LocalDateTime start = BASE.atStartOfDay();
+        LocalDateTime end = BASE.atTime(23, 0);
+
+        RevenueSeriesService.RevenueSeries series = statementCount(1,
+                () -> revenueSeriesService.getSeries(start, end, RevenueSeriesService.Granularity.HOUR));
+
+        assertEquals(24, series.getPoints().size());
+        assertAmount(dineInRevenue(BASE), series.getPoints().get(12).getRevenue());
+        assertAmount(5.0, series.getPoints().get(18).getRevenue());
+        assertAmount(dayRevenue(BASE), series.getCurrentTotal());
+        // Kỳ trước theo giờ: 23 giờ ngay trước BASE (01:00 hôm trước trở đi)
+        assertAmount(dayRevenue(BASE.minusDays(1)), series.getPreviousTotal());
+    }
+
+    private <T> T statementCount(long expected, Supplier<T> call) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        T result = call.get();
+        assertEquals(expected, statistics.getPrepareStatementCount());
+        return result;
+    }
+
+    private void saveOrder(LocalDateTime createdAt, String orderType, String status, double totalPrice) {
+        OrderEntity order = new OrderEntity();
+        order.setOrderNumber(orderType + createdAt);
+        order.setOrderType(orderType);
+        order.setStatus(status);
+        order.setPaymentMethod("CASH");
+        order.setTotalPrice(totalPrice);
+        order.setCreatedAt(createdAt);
+        orderRepository.save(order);
+    }
+
+    // Khác nhau theo ngày để tăng trưởng giữa 2 kỳ khác 0
+    private static double dineInRevenue(LocalDate day) {
+        return 10.0 * (day.getDayOfMonth() % 7 + 1);
+    }
+
+    private static double dayRevenue(LocalDate day) {
+        return dineInRevenue(day) + 5.0;
+    }
+
+    private static double sumRevenue(LocalDate from, int days) {
+        double total = 0;
+        for (int i = 0; i < days; i++) {
+            total += dayRevenue(from.plusDays(i));
+        }
+        return total;
+    }
+
+    private static void assertAmount(double expected, BigDecimal actual) {
+        assertEquals(0, BigDecimal.valueOf(expected).compareTo(actual), () -> "expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,173 @@
+package aptech.be.services;
+
+import aptech.be.models.Customer;
+import aptech.be.models.CustomerVoucher;
+import aptech.be.models.Voucher;
+import aptech.be.models.VoucherType;
+import aptech.be.repositories.CustomerRepository;
+import aptech.be.repositories.CustomerVoucherRepository;
+import aptech.be.repositories.VoucherRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chạy VoucherRedemptionService + UPDATE used_quantity có điều kiện thật trên H2 với hàng trăm thread:
+ * used_quantity không bao giờ vượt total_quantity, kể cả khi một phần transaction bị rollback.
+ * Không dùng transaction của test (NOT_SUPPORTED) để mỗi thread commit riêng như request thật.
+ */
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        // Migration viết cho PostgreSQL; H2 coi VALUE, NUMBER... là từ khóa nên quote mọi tên cột
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class VoucherRedemptionServiceTest {
+
+    private static final int TOTAL_QUANTITY = 50;
+    private static final int THREADS = 300;
+
+    // Chỉ nạp JPA + service cần test (không kéo CommandLineRunner / security của BeApplication)
+    @SpringBootConfiguration
+    @EntityScan("aptech.be.models")
+    @EnableJpaRepositories("aptech.be.repositories")
+    @Import(VoucherRedemptionService.class)
+    static class TestConfig {
+    }
+
+    @Autowired
+    private VoucherRedemptionService voucherRedemptionService;
+
+    @Autowired
+    private VoucherRepository voucherRepository;
+
+    @Autowired
+    private CustomerVoucherRepository customerVoucherRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentRedemptionsNeverExceedTotalQuantity() throws Exception {
+        Voucher voucher = createVoucher();
+        List<CustomerVoucher> claims = createClaims(voucher);
+        AtomicInteger redeemed = new AtomicInteger();
+
+        runConcurrently(claims, (claim, index) -> {
+            voucherRedemptionService.redeem(claim, (long) index);
+            redeemed.incrementAndGet();
+        });
+
+        Voucher reloaded = voucherRepository.findById(voucher.getId()).orElseThrow();
+        assertTrue(reloaded.getUsedQuantity() <= reloaded.getTotalQuantity());
+        // Mỗi lượt trừ thành công ứng với đúng 1 CustomerVoucher đã dùng
+        assertEquals(redeemed.get(), reloaded.getUsedQuantity());
+        assertEquals(redeemed.get(), countUsed(voucher));
+        assertTrue(redeemed.get() > 0);
+    }
+
+    @Test
+    void rolledBackRedemptionsDoNotConsumeQuantity() throws Exception {
+        Voucher voucher = createVoucher();
+        List<CustomerVoucher> claims = createClaims(voucher);
+        AtomicInteger committed = new AtomicInteger();
+
+        // Mỗi request thứ 3 bị rollback sau khi đã trừ lượt (VD: lưu đơn lỗi)
+        runConcurrently(claims, (claim, index) -> {
+            boolean rollback = index % 3 == 0;
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                voucherRedemptionService.redeem(claim, (long) index);
+                if (rollback) {
+                    status.setRollbackOnly();
+                }
+            });
+            if (!rollback) {
+                committed.incrementAndGet();
+            }
+        });
+
+        Voucher reloaded = voucherRepository.findById(voucher.getId()).orElseThrow();
+        assertTrue(reloaded.getUsedQuantity() <= reloaded.getTotalQuantity());
+        assertEquals(committed.get(), reloaded.getUsedQuantity());
+        assertEquals(committed.get(), countUsed(voucher));
+    }
+
+    private Voucher createVoucher() {
+        Voucher voucher = new Voucher(UUID.randomUUID().toString().replace("-", "").substring(0, 10).toUpperCase(),
+                "Stress test", null, VoucherType.FIXED_AMOUNT, 5.0);
+        voucher.setTotalQuantity(TOTAL_QUANTITY);
+        return voucherRepository.save(voucher);
+    }
+
+    private List<CustomerVoucher> createClaims(Voucher voucher) {
+        Customer customer = new Customer();
+        customer.setFullName("Stress Customer");
+        customer.setEmail(voucher.getCode().toLowerCase() + "@test.local");
+        customer = customerRepository.save(customer);
+
+        List<CustomerVoucher> claims = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            claims.add(new CustomerVoucher(customer, voucher));
+        }
+        return customerVoucherRepository.saveAll(claims);
+    }
+
+    private long countUsed(Voucher voucher) {
+        return customerVoucherRepository.findAll().stream()
+                .filter(cv -> cv.getVoucher().getId().equals(voucher.getId()) && cv.getIsUsed())
+                .count();
+    }
+
+    private interface Redemption {
+        void run(CustomerVoucher claim, int index);
+    }
+
+    // Mỗi thread dùng 1 CustomerVoucher riêng; hết lượt / lỗi khóa → RuntimeException, coi như bị từ chối
+    private static void runConcurrently(List<CustomerVoucher> claims, Redemption redemption) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(claims.size());
+        for (int i = 0; i < claims.size(); i++) {
+            CustomerVoucher claim = claims.get(i);
+            int index = i;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    redemption.run(claim, index);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    // bị từ chối
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,141 @@
+package aptech.be.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoucherReservationPoolTest {
+
+    private static final Long VOUCHER_ID = 42L;
+    private static final int TOTAL_QUANTITY = 100;
+    private static final int THREADS = 500;
+
+    /**
+     * Giả lập dòng vouchers: UPDATE ... SET used_quantity = used_quantity + 1 WHERE used_quantity < total_quantity
+     */
+    private static final class VoucherRow {
+        private int usedQuantity;
+        private final AtomicInteger updateStatements = new AtomicInteger();
+
+        synchronized int incrementUsedQuantity() {
+            updateStatements.incrementAndGet();
+            if (usedQuantity < TOTAL_QUANTITY) {
+                usedQuantity++;
+                return 1;
+            }
+            return 0;
+        }
+
+        synchronized int remaining() {
+            return TOTAL_QUANTITY - usedQuantity;
+        }
+    }
+
+    @Test
+    void concurrentRedemptionsNeverExceedTotalQuantity() throws Exception {
+        VoucherReservationPool pool = new VoucherReservationPool(16, 60_000);
+        VoucherRow row = new VoucherRow();
+        AtomicInteger redeemed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        runConcurrently(() -> {
+            if (!pool.tryReserve(VOUCHER_ID, row::remaining)) {
+                rejected.incrementAndGet();
+                return;
+            }
+            if (row.incrementUsedQuantity() == 0) {
+                pool.markSoldOut(VOUCHER_ID);
+                rejected.incrementAndGet();
+                return;
+            }
+            redeemed.incrementAndGet();
+        });
+
+        assertEquals(TOTAL_QUANTITY, redeemed.get());
+        assertEquals(THREADS - TOTAL_QUANTITY, rejected.get());
+        assertEquals(TOTAL_QUANTITY, row.usedQuantity);
+        // Lượt bị từ chối được chặn trong bộ nhớ, không tạo thêm UPDATE
+        assertEquals(TOTAL_QUANTITY, row.updateStatements.get());
+    }
+
+    @Test
+    void rolledBackReservationsAreReturned() throws Exception {
+        VoucherReservationPool pool = new VoucherReservationPool(16, 60_000);
+        VoucherRow row = new VoucherRow();
+        AtomicInteger attempt = new AtomicInteger();
+        AtomicInteger redeemed = new AtomicInteger();
+
+        // Mỗi request thứ 3 bị rollback sau khi đã giữ chỗ
+        runConcurrently(() -> {
+            if (!pool.tryReserve(VOUCHER_ID, row::remaining)) {
+                return;
+            }
+            if (attempt.incrementAndGet() % 3 == 0) {
+                pool.release(VOUCHER_ID);
+                return;
+            }
+            if (row.incrementUsedQuantity() == 0) {
+                pool.markSoldOut(VOUCHER_ID);
+                return;
+            }
+            redeemed.incrementAndGet();
+        });
+
+        // Lượt bị rollback quay lại pool: bộ nhớ và DB luôn khớp nhau, không vượt totalQuantity
+        assertTrue(redeemed.get() <= TOTAL_QUANTITY);
+        assertEquals(redeemed.get(), row.usedQuantity);
+        assertEquals(TOTAL_QUANTITY - redeemed.get(), pool.available(VOUCHER_ID));
+    }
+
+    @Test
+    void staleCounterIsCorrectedByDatabaseGuard() throws Exception {
+        VoucherReservationPool pool = new VoucherReservationPool(16, 60_000);
+        VoucherRow row = new VoucherRow();
+        // Instance khác đã dùng gần hết lượt sau khi pool nạp số lượng
+        assertTrue(pool.tryReserve(VOUCHER_ID, row::remaining));
+        pool.release(VOUCHER_ID);
+        for (int i = 0; i < TOTAL_QUANTITY - 10; i++) {
+            row.incrementUsedQuantity();
+        }
+        AtomicInteger redeemed = new AtomicInteger();
+
+        runConcurrently(() -> {
+            if (pool.tryReserve(VOUCHER_ID, row::remaining) && row.incrementUsedQuantity() == 1) {
+                redeemed.incrementAndGet();
+            } else {
+                pool.markSoldOut(VOUCHER_ID);
+            }
+        });
+
+        assertEquals(10, redeemed.get());
+        assertEquals(TOTAL_QUANTITY, row.usedQuantity);
+    }
+
+    private static void runConcurrently(Runnable task) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,185 @@
+package aptech.be.services.chat;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LLMClientResilienceTest {
+
+    private static final String OK_BODY = "{\"choices\":[{\"message\":{\"content\":\"Pizza ngon!\"}}]}";
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicLong delayMs = new AtomicLong();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private SimpleMeterRegistry meterRegistry;
+    private LLMClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // Trả lời sau delayMs, dùng để giả lập provider bị treo
+        server.createContext("/chat", exchange -> {
+            hits.incrementAndGet();
+            try {
+                Thread.sleep(delayMs.get());
+                byte[] body = OK_BODY.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (Exception e) {
+                exchange.close();
+            }
+        });
+        // Stream giữ kết nối cho tới khi test cho phép kết thúc
+        server.createContext("/hold", exchange -> {
+            hits.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("data: {\"choices\":[{\"delta\":{\"content\":\"Xin chào\"}}]}\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                release.await(5, TimeUnit.SECONDS);
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        client = new LLMClient();
+        ReflectionTestUtils.setField(client, "apiKey", "test-key");
+        ReflectionTestUtils.setField(client, "model", "test-model");
+        ReflectionTestUtils.setField(client, "site", "http://localhost");
+        ReflectionTestUtils.setField(client, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(client, "readTimeoutMs", 300L);
+        ReflectionTestUtils.setField(client, "circuitFailureThreshold", 2);
+        ReflectionTestUtils.setField(client, "circuitOpenMs", 60_000L);
+        ReflectionTestUtils.setField(client, "maxConcurrent", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void slowProviderTimesOutToFallback() {
+        client.init();
+        ReflectionTestUtils.setField(client, "baseUrl", url("/chat"));
+        delayMs.set(2_000);
+
+        long start = System.nanoTime();
+        String text = client.generateResponse("what are your opening hours");
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(text.contains("10:00 AM"));
+        assertTrue(elapsedMs < 1_500, "should give up after the read timeout, took " + elapsedMs + "ms");
+        assertEquals(1, meterRegistry.get("llm.request.latency").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    void circuitOpensAfterConsecutiveFailuresAndSkipsProvider() {
+        client.init();
+        ReflectionTestUtils.setField(client, "baseUrl", url("/chat"));
+        delayMs.set(1_000);
+
+        client.generateResponse("menu");
+        client.generateResponse("menu");
+        assertEquals(LLMCircuitBreaker.State.OPEN, client.getCircuitState());
+        assertEquals(2, hits.get());
+
+        // Provider đã khỏe lại nhưng circuit còn mở → fallback ngay, không gọi provider
+        delayMs.set(0);
+        long start = System.nanoTime();
+        String text = client.generateResponse("menu");
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(text.contains("Margherita"));
+        assertTrue(elapsedMs < 100, "open circuit should not wait on the provider, took " + elapsedMs + "ms");
+        assertEquals(2, hits.get());
+        assertEquals(1.0, meterRegistry.get("llm.request.rejected").tag("reason", "circuit_open").counter().count());
+        assertEquals(1.0, meterRegistry.get("llm.circuit.open").gauge().value());
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondMaxConcurrent() throws Exception {
+        ReflectionTestUtils.setField(client, "readTimeoutMs", 5_000L);
+        client.init();
+        ReflectionTestUtils.setField(client, "baseUrl", url("/hold"));
+
+        List<String> firstDeltas = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> first = client.streamResponse("hello", firstDeltas::add);
+        waitFor(() -> !firstDeltas.isEmpty());
+
+        List<String> secondDeltas = new CopyOnWriteArrayList<>();
+        String second = client.streamResponse("what are your opening hours", secondDeltas::add).get(1, TimeUnit.SECONDS);
+
+        assertTrue(second.contains("10:00 AM"));
+        assertEquals(List.of(second), secondDeltas);
+        assertEquals(1, hits.get());
+        assertEquals(1.0, meterRegistry.get("llm.request.rejected").tag("reason", "bulkhead_full").counter().count());
+
+        release.countDown();
+        assertEquals("Xin chào", first.get(5, TimeUnit.SECONDS));
+        assertEquals(LLMCircuitBreaker.State.CLOSED, client.getCircuitState());
+        assertEquals(0.0, meterRegistry.get("llm.inflight").gauge().value());
+    }
+
+    @Test
+    void halfOpenAllowsSingleTrialThenCloses() {
+        AtomicLong now = new AtomicLong();
+        LLMCircuitBreaker breaker = new LLMCircuitBreaker(1, 1_000, now::get);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertFalse(breaker.tryAcquire());
+
+        now.set(1_000);
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess();
+
+        assertEquals(LLMCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    private void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
@@ -0,0 +1,99 @@
+package aptech.be.services.chat;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LLMClientStreamingTest {
+
+    private HttpServer server;
+    private LLMClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stream", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (String token : List.of("Xin ", "chào", "!")) {
+                    String event = "data: {\"choices\":[{\"delta\":{\"content\":\"" + token + "\"}}]}\n\n";
+                    out.write(event.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(20);
+                }
+                out.write(": keep-alive\n\n".getBytes(StandardCharsets.UTF_8));
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.createContext("/error", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+
+        client = new LLMClient();
+        ReflectionTestUtils.setField(client, "apiKey", "test-key");
+        ReflectionTestUtils.setField(client, "model", "test-model");
+        ReflectionTestUtils.setField(client, "site", "http://localhost");
+        ReflectionTestUtils.setField(client, "meterRegistry", new SimpleMeterRegistry());
+        client.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void forwardsEachSseDeltaAsItArrives() throws Exception {
+        ReflectionTestUtils.setField(client, "baseUrl", url("/stream"));
+        List<String> deltas = new CopyOnWriteArrayList<>();
+
+        String text = client.streamResponse("hello", deltas::add).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("Xin ", "chào", "!"), deltas);
+        assertEquals("Xin chào!", text);
+    }
+
+    @Test
+    void fallsBackWhenProviderFailsBeforeFirstToken() throws Exception {
+        ReflectionTestUtils.setField(client, "baseUrl", url("/error"));
+        List<String> deltas = new CopyOnWriteArrayList<>();
+
+        String text = client.streamResponse("what are your opening hours", deltas::add).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, deltas.size());
+        assertEquals(deltas.get(0), text);
+        assertTrue(text.contains("10:00 AM"));
+    }
+
+    @Test
+    void ignoresNonContentEvents() {
+        assertEquals("a", client.parseSseDelta("data: {\"choices\":[{\"delta\":{\"content\":\"a\"}}]}"));
+        assertEquals(null, client.parseSseDelta("data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}"));
+        assertEquals(null, client.parseSseDelta("data: [DONE]"));
+        assertEquals(null, client.parseSseDelta(": keep-alive"));
+        assertFalse("".equals(client.parseSseDelta("data: {\"choices\":[{\"delta\":{\"content\":\" \"}}]}")));
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
@@ -0,0 +1,157 @@
+package aptech.be.services.tablesession;
+
+import aptech.be.services.TableSessionService.PaymentRequest;
+import aptech.be.services.TableSessionService.StaffCall;
+import aptech.be.services.TableSessionService.TableSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Cùng 1 bộ kiểm tra cho cả 2 store; phần Redis chạy với Redis local (REDIS_HOST/REDIS_PORT), bỏ qua nếu không có
+ */
+class TableSessionStoreTest {
+
+    private LettuceConnectionFactory connectionFactory;
+    private String prefix;
+
+    @AfterEach
+    void tearDown() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    void inMemoryStoreRoundTripsAndExpires() throws Exception {
+        roundTripsAndExpires(new InMemoryTableSessionStore());
+    }
+
+    @Test
+    void inMemoryStoreResolvesEachCallOnce() throws Exception {
+        resolvesEachCallOnce(new InMemoryTableSessionStore());
+    }
+
+    @Test
+    void redisStoreRoundTripsAndExpires() throws Exception {
+        roundTripsAndExpires(redisStore());
+    }
+
+    @Test
+    void redisStoreResolvesEachCallOnce() throws Exception {
+        resolvesEachCallOnce(redisStore());
+    }
+
+    @Test
+    void redisStoreIsSharedBetweenInstances() {
+        TableSessionStore nodeA = redisStore();
+        TableSessionStore nodeB = new RedisTableSessionStore(new StringRedisTemplate(connectionFactory), prefix);
+
+        nodeA.putStaffCall(new StaffCall(7L, "Thêm nước", LocalDateTime.now()), Duration.ofMinutes(1));
+
+        StaffCall seenByB = nodeB.getStaffCall(7L);
+        assertNotNull(seenByB);
+        assertEquals("Thêm nước", seenByB.getReason());
+        assertTrue(nodeB.removeStaffCall(7L));
+        assertNull(nodeA.getStaffCall(7L));
+    }
+
+    private void roundTripsAndExpires(TableSessionStore store) throws Exception {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        store.putSession(new TableSession("s-1", 1L, now), Duration.ofMinutes(5));
+        store.putStaffCall(new StaffCall(1L, "Need water", now), Duration.ofMillis(300));
+        store.putStaffCall(new StaffCall(2L, "Need menu", now), Duration.ofMinutes(5));
+        store.putPaymentRequest(new PaymentRequest(1L, now), Duration.ofMinutes(5));
+
+        assertEquals("s-1", store.getSession(1L).getSessionId());
+        assertEquals(now, store.getStaffCall(1L).getCallTime());
+        assertEquals(2, store.getAllStaffCalls().size());
+        assertEquals(1, store.getAllPaymentRequests().size());
+
+        Thread.sleep(600);
+
+        // Gọi nhân viên của bàn 1 tự hết hạn, không cần job quét
+        assertNull(store.getStaffCall(1L));
+        assertEquals(1, store.getAllStaffCalls().size());
+        assertEquals("Need menu", store.getAllStaffCalls().get(2L).getReason());
+
+        // Hết hạn chỉ gỡ đúng lần gọi đã hẹn, không đụng lần gọi mới hơn của cùng bàn
+        assertFalse(store.removeStaffCallIfUnchanged(2L, now.minusMinutes(1)));
+        assertTrue(store.removeStaffCallIfUnchanged(2L, now));
+        assertNull(store.getStaffCall(2L));
+        assertFalse(store.removePaymentRequestIfUnchanged(1L, now.minusMinutes(1)));
+        store.putStaffCall(new StaffCall(2L, "Need menu", now), Duration.ofMinutes(5));
+
+        store.removeTable(1L);
+        assertNull(store.getSession(1L));
+        assertNull(store.getPaymentRequest(1L));
+        assertNotNull(store.getStaffCall(2L));
+    }
+
+    private void resolvesEachCallOnce(TableSessionStore store) throws Exception {
+        int threads = 16;
+        store.putStaffCall(new StaffCall(3L, "Bill", LocalDateTime.now()), Duration.ofMinutes(1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Callable<Boolean> resolve = () -> {
+                start.await();
+                return store.removeStaffCall(3L);
+            };
+            results.add(executor.submit(resolve));
+        }
+        start.countDown();
+
+        int winners = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(5, TimeUnit.SECONDS)) {
+                winners++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(1, winners);
+        assertFalse(store.getAllStaffCalls().containsKey(3L));
+    }
+
+    private TableSessionStore redisStore() {
+        if (connectionFactory == null) {
+            String host = System.getenv().getOrDefault("REDIS_HOST", "localhost");
+            int port = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"));
+            connectionFactory = new LettuceConnectionFactory(host, port);
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            boolean reachable;
+            try (var connection = connectionFactory.getConnection()) {
+                reachable = "PONG".equals(connection.ping());
+            } catch (Exception e) {
+                reachable = false;
+            }
+            assumeTrue(reachable, "Redis is not available at " + host + ":" + port);
+            prefix = "test:dinein:" + UUID.randomUUID() + ":";
+        }
+        return new RedisTableSessionStore(new StringRedisTemplate(connectionFactory), prefix);
+    }
+}